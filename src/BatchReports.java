@@ -0,0 +1,280 @@
+import database.BackupManager;
+import database.DatabaseHelper;
+import models.CalendarLevel;
+import utils.CSVExporter;
+import utils.CSVImporter;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Headless entry point for scheduled reports: runs imports and analytics exports without JavaFX,
+// so it starts without a toolkit and runs on a server with no display. Only the javafx-base
+// properties of the row models are needed on the classpath.
+//
+//   java BatchReports [--products file.csv] [--sales file.csv] [--snapshot] [--list-snapshots]
+//                     [--restore time folder] [--jobs n] reports.properties...
+//
+// --list-snapshots prints the database snapshots and --restore copies the latest snapshot taken at or
+// before time (yyyy-MM-dd for the end of that day, or yyyy-MM-ddTHH:mm) into a new folder, leaving
+// the live database alone; both run before anything else. Imports run next, in the order given, and
+// --snapshot then takes a snapshot of the live database. Every reports file then defines one or more reports as
+// <name>.<key> entries, and all reports run side by side on their own connections:
+//
+//   weekly.type=period            analytics (default) or period
+//   weekly.from=today-28          yyyy-MM-dd, today, yesterday or today-N
+//   weekly.to=yesterday
+//   weekly.categories=Beer,Wine   default ALL
+//   weekly.subcategories=ALL      analytics only
+//   weekly.level=FISCAL_WEEK      period only, a CalendarLevel name
+//   weekly.output=/srv/reports/weekly-{date}.csv.gz
+//
+// {date} in the output path is the run date. Exits with status 1 when any import file is missing or
+// fails, or any report, snapshot or restore fails.
+public class BatchReports {
+
+    private record Report(String name, String type, LocalDate fromDate, LocalDate toDate, List<String> categories,
+                          List<String> subcategories, CalendarLevel level, File output) {
+    }
+
+    public static void main(String[] args) {
+        List<String[]> imports = new ArrayList<>();
+        List<String> reportFiles = new ArrayList<>();
+        boolean snapshot = false;
+        boolean listSnapshots = false;
+        String[] restore = null;
+        int jobs = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--products", "--sales" -> {
+                    if (i + 1 == args.length) usage("Missing file after " + args[i]);
+                    imports.add(new String[]{args[i], args[++i]});
+                }
+                case "--snapshot" -> snapshot = true;
+                case "--list-snapshots" -> listSnapshots = true;
+                case "--restore" -> {
+                    if (i + 2 >= args.length) usage("--restore needs a time and a target folder");
+                    restore = new String[]{args[++i], args[++i]};
+                }
+                case "--jobs" -> {
+                    try {
+                        jobs = Math.max(1, Integer.parseInt(args[++i]));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        usage("--jobs needs a number");
+                    }
+                }
+                default -> {
+                    if (args[i].startsWith("--")) usage("Unknown option " + args[i]);
+                    reportFiles.add(args[i]);
+                }
+            }
+        }
+        if (imports.isEmpty() && reportFiles.isEmpty() && !snapshot && !listSnapshots && restore == null) usage(null);
+
+        LocalDate today = LocalDate.now();
+        List<Report> reports = new ArrayList<>();
+        for (String path : reportFiles) {
+            List<Report> defined = readReports(new File(path), today);
+            if (defined == null) System.exit(1);
+            reports.addAll(defined);
+        }
+
+        boolean failed = false;
+        if (listSnapshots) {
+            for (File folder : BackupManager.listSnapshots()) {
+                System.out.println(folder.getName() + "  " + folder);
+            }
+        }
+        if (restore != null && !restore(restore[0], new File(restore[1]))) failed = true;
+        if (imports.isEmpty() && reportFiles.isEmpty() && !snapshot) System.exit(failed ? 1 : 0);
+
+        DatabaseHelper.initializeDatabase();
+        DatabaseHelper.createTables();
+
+        for (String[] source : imports) {
+            File file = new File(source[1]);
+            if (!file.isFile()) {
+                System.err.println("Import file not found: " + file);
+                failed = true;
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            boolean imported = "--products".equals(source[0])
+                    ? CSVImporter.importProductsCSV(file.getAbsolutePath())
+                    : CSVImporter.importSalesCSV(file.getAbsolutePath());
+            if (!imported) {
+                System.err.println("Import of " + file.getName() + " failed");
+                failed = true;
+                continue;
+            }
+            System.out.println("Imported " + file.getName() + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        if (snapshot) {
+            try {
+                BackupManager.snapshot();
+            } catch (java.sql.SQLException | IOException e) {
+                System.err.println("Snapshot failed: " + e.getMessage());
+                failed = true;
+            }
+        }
+
+        if (!runReports(reports, jobs)) failed = true;
+        System.exit(failed ? 1 : 0);
+    }
+
+    // Restores the latest snapshot taken at or before time into target; false (after printing why)
+    // when time is invalid, there is no such snapshot or the restore fails.
+    private static boolean restore(String time, File target) {
+        LocalDateTime pointInTime;
+        try {
+            pointInTime = time.contains("T") ? LocalDateTime.parse(time) : LocalDate.parse(time).atTime(LocalTime.MAX);
+        } catch (RuntimeException e) {
+            System.err.println("Restore time must be yyyy-MM-dd or yyyy-MM-ddTHH:mm: " + time);
+            return false;
+        }
+        File snapshot = BackupManager.findSnapshot(pointInTime);
+        if (snapshot == null) {
+            System.err.println("No snapshot taken at or before " + time);
+            return false;
+        }
+        try {
+            BackupManager.restore(snapshot, target);
+            return true;
+        } catch (java.sql.SQLException | IOException e) {
+            System.err.println("Restore of snapshot " + snapshot.getName() + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Runs all reports on a pool of jobs threads; returns false when any of them failed.
+    private static boolean runReports(List<Report> reports, int jobs) {
+        if (reports.isEmpty()) return true;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, reports.size()));
+        Map<Report, Future<Long>> results = new LinkedHashMap<>();
+        long start = System.currentTimeMillis();
+        for (Report report : reports) {
+            results.put(report, pool.submit(() -> export(report)));
+        }
+        pool.shutdown();
+
+        boolean ok = true;
+        for (Map.Entry<Report, Future<Long>> result : results.entrySet()) {
+            Report report = result.getKey();
+            try {
+                long rows = result.getValue().get();
+                System.out.println(report.name() + ": " + rows + " rows -> " + report.output());
+            } catch (ExecutionException e) {
+                System.err.println(report.name() + " failed: " + e.getCause().getMessage());
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        System.out.println(reports.size() + " reports in " + (System.currentTimeMillis() - start) + " ms");
+        return ok;
+    }
+
+    private static long export(Report report) throws IOException, java.sql.SQLException {
+        File parent = report.output().getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        CSVExporter exporter = new CSVExporter();
+        if ("period".equals(report.type())) {
+            return exporter.exportByPeriod(report.output(), report.fromDate(), report.toDate(), report.categories(),
+                    report.level(), rows -> { });
+        }
+        return exporter.exportAnalytics(report.output(), report.fromDate(), report.toDate(), report.categories(),
+                report.subcategories(), List.of(), rows -> { });
+    }
+
+    // Reports defined in file, in name order; null (after printing why) when the file is unreadable
+    // or a definition is invalid.
+    private static List<Report> readReports(File file, LocalDate today) {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            System.err.println("Cannot read reports file " + file + ": " + e.getMessage());
+            return null;
+        }
+        Set<String> names = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot > 0) names.add(key.substring(0, dot));
+        }
+
+        List<Report> reports = new ArrayList<>();
+        for (String name : names) {
+            String prefix = name + ".";
+            String type = properties.getProperty(prefix + "type", "analytics").trim();
+            LocalDate fromDate = parseDate(properties.getProperty(prefix + "from"), today);
+            LocalDate toDate = parseDate(properties.getProperty(prefix + "to"), today);
+            String output = properties.getProperty(prefix + "output");
+            String error = null;
+            if (!type.equals("analytics") && !type.equals("period")) {
+                error = "unknown type " + type;
+            } else if (fromDate == null || toDate == null) {
+                error = "from and to must be yyyy-MM-dd, today, yesterday or today-N";
+            } else if (fromDate.isAfter(toDate)) {
+                error = "from is after to";
+            } else if (output == null || output.isBlank()) {
+                error = "no output file";
+            }
+            CalendarLevel level = CalendarLevel.FISCAL_WEEK;
+            try {
+                level = CalendarLevel.valueOf(properties.getProperty(prefix + "level", level.name()).trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                if (error == null) error = "unknown level " + properties.getProperty(prefix + "level");
+            }
+            if (error != null) {
+                System.err.println("Report " + name + " in " + file + ": " + error);
+                return null;
+            }
+            reports.add(new Report(name, type, fromDate, toDate,
+                    parseList(properties.getProperty(prefix + "categories")),
+                    parseList(properties.getProperty(prefix + "subcategories")),
+                    level, new File(output.trim().replace("{date}", today.toString()))));
+        }
+        return reports;
+    }
+
+    private static LocalDate parseDate(String value, LocalDate today) {
+        if (value == null) return null;
+        String text = value.trim().toLowerCase();
+        try {
+            if (text.equals("today")) return today;
+            if (text.equals("yesterday")) return today.minusDays(1);
+            if (text.startsWith("today-")) return today.minusDays(Long.parseLong(text.substring(6)));
+            return LocalDate.parse(text);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Comma separated values; empty or missing means ALL.
+    private static List<String> parseList(String value) {
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String part : value.split(",")) {
+                if (!part.isBlank()) values.add(part.trim());
+            }
+        }
+        return values.isEmpty() ? List.of("ALL") : values;
+    }
+
+    private static void usage(String error) {
+        if (error != null) System.err.println(error);
+        System.err.println("Usage: BatchReports [--products file.csv] [--sales file.csv] [--snapshot] [--list-snapshots] " +
+                "[--restore time folder] [--jobs n] reports.properties...");
+        System.exit(2);
+    }
+}
@@ -1,9 +1,12 @@
+import database.BackupManager;
 import database.DatabaseHelper;
+import database.RetentionJob;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.TabPane;
 import javafx.stage.Stage;
+import services.WriteBehindQueue;
 
 import java.io.IOException;
 import java.net.URL;
@@ -14,6 +17,8 @@ public class Main extends Application {
     public void start(Stage primaryStage) throws IOException {
         DatabaseHelper.initializeDatabase();
         DatabaseHelper.createTables();
+        RetentionJob.start();
+        BackupManager.startSchedule();
 
         URL fxmlUrl = getClass().getResource("/views/ProductView.fxml");
         if (fxmlUrl == null) {
@@ -31,6 +36,12 @@ public class Main extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        WriteBehindQueue.flushAll();
+        BackupManager.stopSchedule();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,25 +1,40 @@
 package controllers;
 
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import models.AnalyticsData;
+import models.CalendarLevel;
 import models.Category;
+import models.PeriodComparison;
+import models.RankMetric;
+import models.SalesSummary;
+import models.Store;
 import services.AnalyticsService;
 import services.CategoryService;
+import services.DashboardContext;
+import services.DashboardContext.Dimension;
+import services.DashboardContext.Filter;
+import services.RollupAggregator;
+import services.SnapshotService;
+import services.StoreService;
+import utils.CSVExporter;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
 public class AnalyticsController {
@@ -28,6 +43,17 @@ public class AnalyticsController {
     @FXML private DatePicker toDatePicker;
     @FXML private ComboBox<String> categoryDropdown;
     @FXML private ComboBox<String> subcategoryDropdown;
+    @FXML private ComboBox<String> storeDropdown;
+    @FXML private CheckBox cbGroupByStore;
+    @FXML private CheckBox cbApproximate;
+    @FXML private Label summaryLabel;
+    @FXML private Label selectionLabel;
+    @FXML private ComboBox<CalendarLevel> periodDropdown;
+    @FXML private ComboBox<String> viewDropdown;
+    @FXML private ComboBox<RankMetric> metricDropdown;
+    @FXML private TextField tfTopN;
+    @FXML private ComboBox<String> compareDropdown;
+    @FXML private TableView<PeriodComparison> comparisonTable;
     @FXML private TableView<AnalyticsData> analyticsTable;
     @FXML private TableColumn<AnalyticsData, Integer> colItemNumber;
     @FXML private TableColumn<AnalyticsData, String> colLabel;
@@ -39,20 +65,85 @@ public class AnalyticsController {
     @FXML private TableColumn<AnalyticsData, Double> colTotalRetail;
     @FXML private TableColumn<AnalyticsData, Integer> colQuantity;
     @FXML private TableColumn<AnalyticsData, Double> colMargin;
+    @FXML private TableColumn<AnalyticsData, Double> colVelocity7;
+    @FXML private TableColumn<AnalyticsData, Double> colVelocity28;
+    @FXML private TableColumn<AnalyticsData, Double> colForecast7;
+    @FXML private TableColumn<AnalyticsData, Double> colForecast28;
+
+
+    @FXML private ProgressBar exportProgress;
+    @FXML private Label exportStatus;
 
 
     private final AnalyticsService analyticsService = new AnalyticsService();
+    private final CSVExporter csvExporter = new CSVExporter();
+    private final SnapshotService snapshotService = new SnapshotService();
     private final CategoryService categoryService = new CategoryService();
+    private final StoreService storeService = new StoreService();
+    private final DashboardContext dashboard = DashboardContext.shared();
     private final ObservableList<String> selectedCategories = FXCollections.observableArrayList();
     private final ObservableList<String> selectedSubcategories = FXCollections.observableArrayList();
     private final List<CheckBox> categoryCheckBoxes = new ArrayList<>();
     private final List<CheckBox> subcategoryCheckBoxes = new ArrayList<>();
+    private final ObservableList<String> selectedStores = FXCollections.observableArrayList();
+    private final List<CheckBox> storeCheckBoxes = new ArrayList<>();
+    private final Map<String, Integer> storeIds = new HashMap<>();
+
+    private static final String VIEW_ALL = "All Items";
+    private static final String VIEW_TOP = "Top N";
+    private static final String VIEW_ABC = "ABC Classes";
+    private static final String VIEW_COMPARE = "Compare Periods";
+    private static final String COMPARE_PREVIOUS = "vs Previous Period";
+    private static final String COMPARE_LAST_YEAR = "vs Last Year";
+    private static final String COMPARE_BOTH = "vs Previous and Last Year";
+    private static final String COMPARE_LAST_4 = "Last 4 Periods";
 
     @FXML
     public void initialize() {
         setupColumns();
         setupCategoryDropdown();
         setupSubcategoryDropdown();
+        setupStoreDropdown();
+        periodDropdown.getItems().setAll(CalendarLevel.values());
+        periodDropdown.setValue(CalendarLevel.FISCAL_WEEK);
+        viewDropdown.getItems().setAll(VIEW_ALL, VIEW_TOP, VIEW_ABC, VIEW_COMPARE);
+        viewDropdown.setValue(VIEW_ALL);
+        metricDropdown.getItems().setAll(RankMetric.values());
+        metricDropdown.setValue(RankMetric.QUANTITY);
+        tfTopN.setText("50");
+        tfTopN.disableProperty().bind(viewDropdown.valueProperty().isNotEqualTo(VIEW_TOP));
+        metricDropdown.disableProperty().bind(viewDropdown.valueProperty().isNotEqualTo(VIEW_TOP)
+                .and(viewDropdown.valueProperty().isNotEqualTo(VIEW_ABC)));
+        compareDropdown.getItems().setAll(COMPARE_PREVIOUS, COMPARE_LAST_YEAR, COMPARE_BOTH, COMPARE_LAST_4);
+        compareDropdown.setValue(COMPARE_PREVIOUS);
+        compareDropdown.visibleProperty().bind(viewDropdown.valueProperty().isEqualTo(VIEW_COMPARE));
+        compareDropdown.managedProperty().bind(compareDropdown.visibleProperty());
+        comparisonTable.managedProperty().bind(comparisonTable.visibleProperty());
+        analyticsTable.managedProperty().bind(analyticsTable.visibleProperty());
+        analyticsTable.visibleProperty().bind(comparisonTable.visibleProperty().not());
+        analyticsTable.setOnMouseClicked(e -> {
+            AnalyticsData row = analyticsTable.getSelectionModel().getSelectedItem();
+            if (e.getClickCount() == 2 && row != null && row.getItemNumber() != -1) {
+                dashboard.toggle(Dimension.PRODUCT, row.getLabel());
+            }
+        });
+        dashboard.addListener(this::onSelectionChanged);
+    }
+
+    // Cross-filter changes re-run the item views from the cached slice; the other views are left
+    // until the next Apply Filters.
+    private void onSelectionChanged() {
+        selectionLabel.setText(dashboard.describeSelection());
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        if (fromDate == null || toDate == null || !VIEW_ALL.equals(viewDropdown.getValue())) return;
+        if (selectedCategories.isEmpty() || selectedSubcategories.isEmpty()) return;
+        if (dashboard.isLoaded(fromDate, toDate)) showItemRows(toDate);
+    }
+
+    @FXML
+    private void clearSelection() {
+        dashboard.clearSelection();
     }
 
     private void setupColumns() {
@@ -65,6 +156,10 @@ public class AnalyticsController {
         colTotalCost.setCellValueFactory(data -> data.getValue().totalCostProperty().asObject());
         colTotalRetail.setCellValueFactory(data -> data.getValue().totalRetailProperty().asObject());
         colQuantity.setCellValueFactory(data -> data.getValue().quantityProperty().asObject());
+        colVelocity7.setCellValueFactory(data -> data.getValue().velocity7Property().asObject());
+        colVelocity28.setCellValueFactory(data -> data.getValue().velocity28Property().asObject());
+        colForecast7.setCellValueFactory(data -> data.getValue().forecast7Property().asObject());
+        colForecast28.setCellValueFactory(data -> data.getValue().forecast28Property().asObject());
         colMargin.setCellValueFactory(data -> {
             double margin = data.getValue().getRetail() - data.getValue().getCost();
             double rounded = Math.round(margin * 100.0) / 100.0;
@@ -90,6 +185,20 @@ public class AnalyticsController {
         setupMultiSelectDropdown(categoryDropdown, categories, categoryCheckBoxes, selectedCategories, "Categories");
     }
 
+    private void setupStoreDropdown() {
+        storeIds.clear();
+        for (Store store : storeService.getAllStores()) {
+            storeIds.putIfAbsent(store.getStoreName(), store.getId());
+        }
+        List<String> stores = storeIds.keySet().stream().sorted().collect(Collectors.toList());
+        setupMultiSelectDropdown(storeDropdown, stores, storeCheckBoxes, selectedStores, "Stores");
+    }
+
+    // Ids of the selected stores; nothing selected means all stores.
+    private List<Integer> getSelectedStoreIds() {
+        return selectedStores.stream().map(storeIds::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
     private void setupSubcategoryDropdown() {
         subcategoryDropdown.setPromptText("Select Subcategories");
         subcategoryDropdown.setEditable(false);
@@ -236,12 +345,238 @@ public class AnalyticsController {
         if (fromDate == null || toDate == null) return;
         if (selectedCategories.isEmpty() || selectedSubcategories.isEmpty()) return;
 
-        List<AnalyticsData> data = analyticsService.getAnalyticsData(fromDate, toDate, selectedCategories, selectedSubcategories);
+        showSummary(fromDate, toDate);
+        comparisonTable.setVisible(VIEW_COMPARE.equals(viewDropdown.getValue()));
+        if (VIEW_COMPARE.equals(viewDropdown.getValue())) {
+            showComparison(fromDate, toDate, compareDropdown.getValue());
+            return;
+        }
+        if (VIEW_TOP.equals(viewDropdown.getValue())) {
+            int n;
+            try {
+                n = Integer.parseInt(tfTopN.getText().trim());
+            } catch (NumberFormatException e) {
+                showAlert("Invalid Top N", "Please enter the number of items to show.");
+                return;
+            }
+            // Sketches only count quantities and are not split by category
+            boolean approximate = cbApproximate.isSelected() && metricDropdown.getValue() == RankMetric.QUANTITY
+                    && selectedCategories.contains("ALL") && selectedSubcategories.contains("ALL");
+            List<AnalyticsData> top = approximate
+                    ? analyticsService.getTopItemsApproximate(fromDate, toDate, getSelectedStoreIds(), n)
+                    : analyticsService.getTopItems(fromDate, toDate, selectedCategories,
+                    selectedSubcategories, getSelectedStoreIds(), metricDropdown.getValue(), n);
+            analyticsService.addVelocity(top, toDate, getSelectedStoreIds());
+            analyticsService.addForecasts(top);
+            showAnalytics(top);
+            return;
+        }
+        if (VIEW_ABC.equals(viewDropdown.getValue())) {
+            Map<String, List<AnalyticsData>> byClass = analyticsService.getAbcClasses(fromDate, toDate, selectedCategories,
+                    selectedSubcategories, getSelectedStoreIds(), metricDropdown.getValue(), Set.of("A", "B", "C"));
+            byClass.values().forEach(rows -> {
+                analyticsService.addVelocity(rows, toDate, getSelectedStoreIds());
+                analyticsService.addForecasts(rows);
+            });
+            showAnalytics(flattenByClass(byClass));
+            return;
+        }
+        if (!dashboard.load(fromDate, toDate)) return;
+        showItemRows(toDate);
+    }
+
+    // The All Items view (per store when grouped), aggregated from the dashboard slice.
+    private void showItemRows(LocalDate toDate) {
+        Filter filter = new Filter(selectedCategories, selectedSubcategories, getSelectedStoreIds());
+        if (cbGroupByStore.isSelected()) {
+            Map<String, List<AnalyticsData>> byStore = dashboard.getItemRowsByStore(filter);
+            byStore.forEach((store, rows) -> {
+                Integer storeId = storeIds.get(store);
+                if (storeId != null) analyticsService.addVelocity(rows, toDate, List.of(storeId));
+            });
+            // Forecasts cover all stores, so they are left out of the per-store rows
+            showAnalytics(flattenByStore(byStore));
+            return;
+        }
+        List<AnalyticsData> data = dashboard.getItemRows(filter);
+        analyticsService.addVelocity(data, toDate, getSelectedStoreIds());
+        analyticsService.addForecasts(data);
+        showAnalytics(data);
+    }
+
+    // Range summary above the table; approximate figures are shown with their error bounds.
+    private void showSummary(LocalDate fromDate, LocalDate toDate) {
+        SalesSummary summary = analyticsService.getSalesSummary(fromDate, toDate, selectedCategories,
+                selectedSubcategories, getSelectedStoreIds(), cbApproximate.isSelected());
+        if (summary == null) {
+            summaryLabel.setText("");
+            return;
+        }
+        String distinct = summary.isApproximate()
+                ? String.format("~%,d items (\u00B1%.1f%%)", summary.getDistinctItems(), summary.getDistinctItemsError() * 100)
+                : String.format("%,d items", summary.getDistinctItems());
+        StringBuilder text = new StringBuilder(summary.isApproximate() ? "Approximate: " : "Exact: ")
+                .append(distinct)
+                .append(String.format(", %,d units, $%,.2f", summary.getQuantity(), summary.getRevenue()));
+        for (String measure : List.of("qty/day", "price")) {
+            text.append(" | ").append(measure);
+            for (int i = 0; i < SalesSummary.QUANTILES.length; i++) {
+                double value = measure.equals("price") ? summary.getPriceQuantile(i) : summary.getQuantityQuantile(i);
+                text.append(String.format(" p%d %.2f", Math.round(SalesSummary.QUANTILES[i] * 100), value));
+            }
+        }
+        if (summary.isApproximate()) text.append(" (quantiles from t-digest)");
+        text.append(String.format(" \u2014 %d ms", summary.getMillis()));
+        summaryLabel.setText(text.toString());
+    }
+
+    // One "Store:" header row carrying the store's grand total, followed by that store's rows.
+    private List<AnalyticsData> flattenByStore(Map<String, List<AnalyticsData>> byStore) {
+        List<AnalyticsData> rows = new ArrayList<>();
+        byStore.forEach((store, storeRows) -> {
+            if (storeRows.isEmpty()) return;
+            AnalyticsData total = storeRows.get(storeRows.size() - 1);
+            rows.add(new AnalyticsData(-1, "Store: " + store, "", "", 0.0, 0.0,
+                    total.getTotalCost(), total.getTotalRetail(), total.getQuantity()));
+            rows.addAll(storeRows.subList(0, storeRows.size() - 1));
+        });
+        return rows;
+    }
+
+    // One "Class X" header row carrying the class totals, followed by that class's items.
+    private List<AnalyticsData> flattenByClass(Map<String, List<AnalyticsData>> byClass) {
+        List<AnalyticsData> rows = new ArrayList<>();
+        byClass.forEach((abcClass, classRows) -> {
+            if (classRows.isEmpty()) return;
+            rows.add(new AnalyticsData(-1, "Class " + abcClass, "", "", 0.0, 0.0,
+                    Math.round(classRows.stream().mapToDouble(AnalyticsData::getTotalCost).sum() * 100.0) / 100.0,
+                    Math.round(classRows.stream().mapToDouble(AnalyticsData::getTotalRetail).sum() * 100.0) / 100.0,
+                    classRows.stream().mapToInt(AnalyticsData::getQuantity).sum()));
+            rows.addAll(classRows);
+        });
+        return rows;
+    }
+
+    // Period 0 is the selected range; the others have the same length and end before it (previous
+    // periods) or start 52 weeks earlier, so weekdays line up (last year).
+    private void showComparison(LocalDate fromDate, LocalDate toDate, String mode) {
+        long length = toDate.toEpochDay() - fromDate.toEpochDay() + 1;
+        List<LocalDate> starts = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        starts.add(fromDate);
+        names.add("Current");
+        if (COMPARE_PREVIOUS.equals(mode) || COMPARE_BOTH.equals(mode)) {
+            starts.add(fromDate.minusDays(length));
+            names.add("Previous");
+        }
+        if (COMPARE_LAST_YEAR.equals(mode) || COMPARE_BOTH.equals(mode)) {
+            starts.add(fromDate.minusWeeks(52));
+            names.add("Last Year");
+        }
+        if (COMPARE_LAST_4.equals(mode)) {
+            for (int i = 1; i < 4; i++) {
+                starts.add(fromDate.minusDays(length * i));
+                names.add("Period -" + i);
+            }
+        }
+
+        comparisonTable.getColumns().setAll(List.of(
+                comparisonColumn("Item Number", row -> row.getItemNumber() == -1 ? null : row.getItemNumber()),
+                comparisonColumn("Label", PeriodComparison::getLabel),
+                comparisonColumn("Category", row -> row.getSubcategory().isEmpty()
+                        ? row.getCategory() : row.getCategory() + " - " + row.getSubcategory())));
+        for (int i = 0; i < starts.size(); i++) {
+            int period = i;
+            String name = names.get(i);
+            comparisonTable.getColumns().add(comparisonColumn("Qty " + name, row -> row.getQuantity(period)));
+            comparisonTable.getColumns().add(comparisonColumn("Revenue " + name, row -> row.getRevenue(period)));
+            comparisonTable.getColumns().add(comparisonColumn("Margin " + name, row -> row.getMargin(period)));
+        }
+        for (int i = 1; i < starts.size(); i++) {
+            int period = i;
+            String name = names.get(i);
+            comparisonTable.getColumns().add(comparisonColumn("\u0394 Qty vs " + name, row -> row.getQuantityDelta(period)));
+            comparisonTable.getColumns().add(comparisonColumn("Qty Growth % vs " + name, row -> row.getQuantityGrowth(period)));
+            comparisonTable.getColumns().add(comparisonColumn("\u0394 Revenue vs " + name, row -> row.getRevenueDelta(period)));
+            comparisonTable.getColumns().add(comparisonColumn("Revenue Growth % vs " + name, row -> row.getRevenueGrowth(period)));
+            comparisonTable.getColumns().add(comparisonColumn("\u0394 Margin vs " + name, row -> row.getMarginDelta(period)));
+        }
+
+        comparisonTable.setItems(FXCollections.observableArrayList(analyticsService.comparePeriods(fromDate, toDate, starts,
+                selectedCategories, selectedSubcategories, getSelectedStoreIds())));
+        comparisonTable.setRowFactory(tv -> new TableRow<PeriodComparison>() {{
+            itemProperty().addListener((obs, oldItem, newItem) -> {
+                if (newItem != null && RollupAggregator.SUB_TOTAL.equals(newItem.getLabel())) {
+                    setStyle("-fx-background-color: #d4fcd4;");
+                } else if (newItem != null && newItem.getItemNumber() == -1) {
+                    setStyle("-fx-background-color: #b8ecb8; -fx-font-weight: bold;");
+                } else {
+                    setStyle("");
+                }
+            });
+        }});
+    }
+
+    private static <T> TableColumn<PeriodComparison, T> comparisonColumn(String title,
+                                                                        Function<PeriodComparison, T> value) {
+        TableColumn<PeriodComparison, T> column = new TableColumn<>(title);
+        column.setCellValueFactory(data -> new SimpleObjectProperty<>(value.apply(data.getValue())));
+        return column;
+    }
+
+    private void showAnalytics(List<AnalyticsData> data) {
+        comparisonTable.setVisible(false);
         analyticsTable.setItems(FXCollections.observableArrayList(data));
         analyticsTable.setRowFactory(tv -> new TableRow<AnalyticsData>() {{
-            itemProperty().addListener((obs, oldItem, newItem) -> setStyle(newItem != null && "Sub Total".equals(newItem.getLabel()) ? "-fx-background-color: #d4fcd4;" : ""));
+            itemProperty().addListener((obs, oldItem, newItem) -> {
+                if (newItem != null && RollupAggregator.SUB_TOTAL.equals(newItem.getLabel())) {
+                    setStyle("-fx-background-color: #d4fcd4;");
+                } else if (newItem != null && RollupAggregator.isTotal(newItem)) {
+                    setStyle("-fx-background-color: #b8ecb8; -fx-font-weight: bold;");
+                } else if (newItem != null && newItem.getItemNumber() == -1) {
+                    setStyle("-fx-background-color: #d4e4fc; -fx-font-weight: bold;");
+                } else {
+                    setStyle("");
+                }
+            });
         }});
+    }
 
+    @FXML
+    private void saveSnapshot() {
+        if (analyticsTable.getItems().isEmpty() || fromDatePicker.getValue() == null || toDatePicker.getValue() == null) {
+            showAlert("No data to save", "Please apply filters and generate data before saving a snapshot.");
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Analytics Snapshot");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Snapshot Files", "*.snap"));
+        File file = fileChooser.showSaveDialog(null);
+        if (file != null) {
+            try {
+                snapshotService.saveAnalytics(file, fromDatePicker.getValue(), toDatePicker.getValue(), analyticsTable.getItems());
+            } catch (IOException e) {
+                showAlert("Snapshot Error", "Error saving snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    @FXML
+    private void openSnapshot() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Analytics Snapshot");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Snapshot Files", "*.snap"));
+        File file = fileChooser.showOpenDialog(null);
+        if (file != null) {
+            try {
+                LocalDate[] range = snapshotService.getSnapshotRange(file);
+                showAnalytics(snapshotService.openAnalytics(file));
+                fromDatePicker.setValue(range[0]);
+                toDatePicker.setValue(range[1]);
+            } catch (IOException e) {
+                showAlert("Snapshot Error", "Error opening snapshot: " + e.getMessage());
+            }
+        }
     }
 
 
@@ -250,110 +585,99 @@ public class AnalyticsController {
 
     @FXML
     private void exportToCSV() {
-        ObservableList<AnalyticsData> currentData = analyticsTable.getItems();
-        if (currentData.isEmpty()) {
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+        if (fromDate == null || toDate == null || selectedCategories.isEmpty() || selectedSubcategories.isEmpty()) {
             showAlert("No data to export", "Please apply filters and generate data before exporting.");
             return;
         }
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Save Analytics Report");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
-        File file = fileChooser.showSaveDialog(null);
+        File file = chooseExportFile("Save Analytics Report");
         if (file != null) {
-            try (FileWriter writer = new FileWriter(file, false)) {
-                writer.write("\uFEFF");
-                writer.write("\"Item Number\",\"Label\",\"Category\",\"Cost\",\"Quantity\",\"Sales\"\n");
-                for (AnalyticsData data : currentData) {
-                    writer.write(String.format("\"%d\",\"%s\",\"%s\",\"%.2f\",\"%d\",\"%.2f\"\n",
-                            data.getItemNumber(),
-                            data.getLabel().replace("\"", "\"\""),
-                            (data.getCategory() + " - " + data.getSubcategory()).replace("\"", "\"\""),
-                            data.getRetail(),    // Assuming cost is retail in this context
-                            data.getQuantity(),
-                            data.getRetail() * data.getQuantity()));
-                }
-                showAlert("Export Successful", "CSV file has been saved successfully.");
-            } catch (IOException e) {
-                showAlert("Export Error", "Error exporting CSV: " + e.getMessage());
+            // The rows the All Items table shows: same slice, store selection and cross-filter. This
+            // writes the in-memory rows rather than streaming from the cursor as BatchReports does.
+            if (!dashboard.load(fromDate, toDate)) {
+                showAlert("Export Failed", "The sales data could not be read.");
+                return;
             }
+            List<AnalyticsData> rows = dashboard.getItemRows(
+                    new Filter(selectedCategories, selectedSubcategories, getSelectedStoreIds()));
+            long items = rows.stream().filter(row -> !RollupAggregator.isTotal(row)).count();
+            runExport("CSV file has been saved successfully.", items, progress ->
+                    csvExporter.exportAnalytics(file, rows, progress));
         }
     }
 
 
     @FXML
-    private void exportWeeklyCSV() {
+    private void exportPeriodCSV() {
         LocalDate fromDate = fromDatePicker.getValue();
         LocalDate toDate = toDatePicker.getValue();
+        CalendarLevel level = periodDropdown.getValue();
 
         if (fromDate == null || toDate == null) {
             showAlert("Invalid Date Range", "Please select a valid date range.");
             return;
         }
 
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Save Weekly Analytics Report");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
-        File file = fileChooser.showSaveDialog(null);
-
+        File file = chooseExportFile("Save " + level + " Analytics Report");
         if (file != null) {
-            try (FileWriter writer = new FileWriter(file, false)) {
-                writer.write("\uFEFF"); // UTF-8 BOM for Excel compatibility
-
-                List<String> weekRanges = getWeekRanges(fromDate, toDate);
+            List<String> categories = List.copyOf(selectedCategories);
+            runExport(level + " CSV file has been saved successfully.", -1, progress ->
+                    csvExporter.exportByPeriod(file, fromDate, toDate, categories, level, progress));
+        }
+    }
 
-                List<AnalyticsData> weeklyData = analyticsService.getWeeklyAnalyticsData(fromDate, toDate, selectedCategories, weekRanges);
+    private File chooseExportFile(String title) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+                new FileChooser.ExtensionFilter("Compressed CSV Files", "*.csv.gz"));
+        return fileChooser.showSaveDialog(null);
+    }
 
-                writer.write("\"Item Number\",\"Label\",\"Category\"");
-                for (String week : weekRanges) {
-                    writer.write(",\"" + week + "\",\"\",\"\"");
-                }
-                writer.write("\n");
+    // Runs an export on a background thread; the status label counts the rows written. The progress
+    // bar fills up when the number of rows is known in advance (totalRows > 0) and is indeterminate
+    // otherwise.
+    private void runExport(String successMessage, long totalRows, ExportJob job) {
+        Task<Long> task = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                return job.run(rows -> {
+                    updateMessage(rows + " rows exported");
+                    if (totalRows > 0) updateProgress(rows, totalRows);
+                });
+            }
+        };
+        exportProgress.progressProperty().bind(task.progressProperty());
+        exportStatus.textProperty().bind(task.messageProperty());
+        exportProgress.setVisible(true);
+
+        task.setOnSucceeded(e -> {
+            finishExport();
+            showAlert("Export Successful", successMessage);
+        });
+        task.setOnFailed(e -> {
+            finishExport();
+            Throwable error = task.getException();
+            System.err.println("Error exporting CSV: " + error.getMessage());
+            showAlert("Export Error", "Error exporting CSV: " + error.getMessage());
+        });
 
-                writer.write("\"\",\"\",\"\",");
-                for (int i = 0; i < weekRanges.size(); i++) {
-                    writer.write("\"Price\",\"Quantity\",\"Sales\",");
-                }
-                writer.write("\n");
-
-                for (AnalyticsData data : weeklyData) {
-                    writer.write(String.format("\"%d\",\"%s\",\"%s\"",
-                            data.getItemNumber(),
-                            data.getLabel().replace("\"", "\"\""),
-                            (data.getCategory() + " - " + data.getSubcategory()).replace("\"", "\"\"")));
-
-                    for (String week : weekRanges) {
-                        if (data.getWeeklySales().containsKey(week)) {
-                            double price = data.getRetail();
-                            int quantity = data.getWeeklySales().get(week);
-                            double sales = price * quantity;
-                            writer.write(String.format(",\"%.2f\",\"%d\",\"%.2f\"", price, quantity, sales));
-                        } else {
-                            writer.write(",\"0.00\",\"0\",\"0.00\"");
-                        }
-                    }
-                    writer.write("\n");
-                }
+        Thread thread = new Thread(task, "analytics-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-                showAlert("Export Successful", "Weekly CSV file has been saved successfully.");
-            } catch (IOException e) {
-                showAlert("Export Error", "Error exporting CSV: " + e.getMessage());
-                System.err.println("Error exporting CSV: " + e.getMessage());
-            }
-        }
+    private void finishExport() {
+        exportProgress.progressProperty().unbind();
+        exportStatus.textProperty().unbind();
+        exportProgress.setVisible(false);
     }
 
-    private List<String> getWeekRanges(LocalDate startDate, LocalDate endDate) {
-        List<String> weekRanges = new ArrayList<>();
-        LocalDate currentStart = startDate;
-        while (!currentStart.isAfter(endDate)) {
-            LocalDate currentEnd = currentStart.plusDays(6);
-            if (currentEnd.isAfter(endDate)) {
-                currentEnd = endDate;
-            }
-            weekRanges.add(currentStart + " to " + currentEnd);
-            currentStart = currentEnd.plusDays(1);
-        }
-        return weekRanges;
+    @FunctionalInterface
+    private interface ExportJob {
+        long run(LongConsumer progress) throws Exception;
     }
 
     private void showAlert(String title, String message) {
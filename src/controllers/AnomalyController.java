@@ -0,0 +1,117 @@
+package controllers;
+
+import database.AnomalyDetector;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import models.SalesAnomaly;
+import services.AnomalyService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnomalyController {
+    private static final String ALL_METRICS = "All Metrics";
+    private static final String QUANTITY = "Quantity";
+    private static final String PRICE = "Price";
+    private static final String DAY_TOTAL = "Day Total";
+    private static final String DUPLICATE = "Duplicate";
+
+    @FXML private TableView<SalesAnomaly> anomalyTable;
+    @FXML private TableColumn<SalesAnomaly, String> colDate;
+    @FXML private TableColumn<SalesAnomaly, Number> colItemNumber;
+    @FXML private TableColumn<SalesAnomaly, String> colLabel;
+    @FXML private TableColumn<SalesAnomaly, String> colStore;
+    @FXML private TableColumn<SalesAnomaly, String> colMetric;
+    @FXML private TableColumn<SalesAnomaly, Number> colValue;
+    @FXML private TableColumn<SalesAnomaly, Number> colExpected;
+    @FXML private TableColumn<SalesAnomaly, Number> colScore;
+    @FXML private TableColumn<SalesAnomaly, Boolean> colReviewed;
+    @FXML private ComboBox<String> metricDropdown;
+    @FXML private CheckBox cbShowReviewed;
+
+    private final AnomalyService anomalyService = new AnomalyService();
+
+    @FXML
+    public void initialize() {
+        colDate.setCellValueFactory(data -> data.getValue().dateProperty());
+        colItemNumber.setCellValueFactory(data -> data.getValue().itemNumberProperty());
+        colLabel.setCellValueFactory(data -> data.getValue().labelProperty());
+        colStore.setCellValueFactory(data -> data.getValue().storeProperty());
+        colMetric.setCellValueFactory(data -> data.getValue().metricProperty());
+        colMetric.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(String metric, boolean empty) {
+                super.updateItem(metric, empty);
+                setText(empty || metric == null ? null : metricName(metric));
+            }
+        });
+        colValue.setCellValueFactory(data -> data.getValue().valueProperty());
+        colExpected.setCellValueFactory(data -> data.getValue().expectedProperty());
+        colScore.setCellValueFactory(data -> data.getValue().scoreProperty());
+        colReviewed.setCellValueFactory(data -> data.getValue().reviewedProperty());
+
+        anomalyTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        metricDropdown.setItems(FXCollections.observableArrayList(ALL_METRICS, QUANTITY, PRICE, DAY_TOTAL, DUPLICATE));
+        metricDropdown.setValue(ALL_METRICS);
+        metricDropdown.valueProperty().addListener((obs, oldVal, newVal) -> loadAnomalies());
+        cbShowReviewed.selectedProperty().addListener((obs, oldVal, newVal) -> loadAnomalies());
+
+        loadAnomalies();
+    }
+
+    @FXML
+    private void loadAnomalies() {
+        String metric = switch (metricDropdown.getValue()) {
+            case QUANTITY -> AnomalyDetector.QUANTITY;
+            case PRICE -> AnomalyDetector.PRICE;
+            case DAY_TOTAL -> AnomalyDetector.DAY_TOTAL;
+            case DUPLICATE -> AnomalyDetector.DUPLICATE;
+            default -> null;
+        };
+        anomalyTable.setItems(FXCollections.observableArrayList(
+                anomalyService.getAnomalies(cbShowReviewed.isSelected(), metric)));
+    }
+
+    @FXML
+    private void markReviewed() {
+        setSelectedReviewed(true);
+    }
+
+    @FXML
+    private void reopenSelected() {
+        setSelectedReviewed(false);
+    }
+
+    private void setSelectedReviewed(boolean reviewed) {
+        List<SalesAnomaly> selected = new ArrayList<>(anomalyTable.getSelectionModel().getSelectedItems());
+        if (selected.isEmpty()) {
+            showAlert("No Selection", "Select one or more anomalies first.");
+            return;
+        }
+        if (!anomalyService.setReviewed(selected, reviewed)) {
+            showAlert("Error", "Could not update the selected anomalies.");
+            return;
+        }
+        if (!cbShowReviewed.isSelected()) loadAnomalies();
+    }
+
+    private static String metricName(String metric) {
+        return switch (metric) {
+            case AnomalyDetector.QUANTITY -> "Quantity / Day";
+            case AnomalyDetector.PRICE -> PRICE;
+            case AnomalyDetector.DAY_TOTAL -> DAY_TOTAL;
+            case AnomalyDetector.DUPLICATE -> DUPLICATE;
+            default -> metric;
+        };
+    }
+
+    private void showAlert(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+}
@@ -1,5 +1,6 @@
 package controllers;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -10,6 +11,7 @@ import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.stage.FileChooser;
 import models.Category;
 import services.CategoryService;
+import services.WriteBehindQueue;
 import utils.CSVImporter;
 
 import java.io.File;
@@ -26,10 +28,23 @@ public class CategoryController {
     @FXML private TableColumn<Category, String> colSubcategory;
     @FXML private TextField tfCategoryFilter;
     @FXML private TextField tfSubcategoryFilter;
+    @FXML private Label lblSaveStatus;
 
     private final int PAGE_SIZE = 1000;
     private int currentOffset = 0;
     private final CategoryService categoryService = new CategoryService();
+    private final WriteBehindQueue<Integer, Category> categoryEdits = new WriteBehindQueue<>("category", 500,
+            categoryService::updateCategories, new WriteBehindQueue.Listener<>() {
+        @Override
+        public void saved(int count) {
+            Platform.runLater(() -> showSaveStatus(count + " category change(s) saved.", false));
+        }
+
+        @Override
+        public void failed(List<Category> rows, String message) {
+            Platform.runLater(() -> showSaveStatus(message, true));
+        }
+    });
     private ObservableList<Category> categoryList = FXCollections.observableArrayList();
     private FilteredList<Category> filteredCategories;
     private final List<Category> newCategories = new ArrayList<>();
@@ -60,27 +75,27 @@ public class CategoryController {
         });
     }
 
+    // New rows are inserted right away; edits to existing rows go through the write-behind queue,
+    // so the page is not reloaded after every cell.
     private void attemptSaveCategory(Category cat) {
         if (cat.getCategory().isEmpty() || cat.getSubcategory().isEmpty()) return;
 
-        boolean success;
         if (newCategories.contains(cat)) {
-            success = categoryService.insertCategory(cat);
-            if (success) {
+            if (categoryService.insertCategory(cat)) {
                 newCategories.remove(cat);
-                showAlert("Success", "Category added successfully.");
+                showSaveStatus("Category added.", false);
             } else {
-                showAlert("Save Error", "Failed to add new category.");
+                showSaveStatus("Failed to add new category.", true);
             }
         } else {
-            success = categoryService.updateCategory(cat);
-            if (success) {
-                showAlert("Success", "Category updated successfully.");
-            } else {
-                showAlert("Save Error", "Failed to update category.");
-            }
+            categoryEdits.submit(cat.getId(), cat.copy());
+            showSaveStatus(categoryEdits.getPendingCount() + " change(s) pending...", false);
         }
-        loadInitialCategories();
+    }
+
+    private void showSaveStatus(String message, boolean error) {
+        lblSaveStatus.setText(message);
+        lblSaveStatus.setStyle(error ? "-fx-text-fill: red;" : "");
     }
 
     private void loadInitialCategories() {
@@ -4,12 +4,18 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
+import models.CalendarLevel;
 import models.Category;
 import services.AnalyticsService;
 import services.CategoryService;
+import services.DashboardContext;
+import services.DashboardContext.Dimension;
+import services.DashboardContext.Filter;
+import utils.ChartSampler;
 
 import java.time.LocalDate;
 import java.util.*;
@@ -22,13 +28,29 @@ public class ChartsController {
     @FXML private ComboBox<String> subcategoryDropdown;
     @FXML private ComboBox<String> viewByPieChart;
     @FXML private ComboBox<String> viewByLineChart;
+    @FXML private CheckBox cbForecast;
+    @FXML private Label selectionLabel;
     @FXML private PieChart pieChart;
     @FXML private LineChart<String, Number> lineChart;
     @FXML private CategoryAxis xAxis;
     @FXML private NumberAxis yAxis;
 
+    private static final int FORECAST_DAYS = 28;
+    private static final double POINT_SPACING = 3;
+    private static final double DEFAULT_WIDTH = 800;
+    private static final int MAX_POINTS = 5000;
+    private static final int MIN_POINTS = 20;
+    // Symbols are one node per point; beyond this the lines are drawn without them
+    private static final int MAX_SYMBOLS = 500;
+    private static final double DIMMED = 0.35;
+    private static final String FORECAST_SUFFIX = " (forecast)";
+
     private final AnalyticsService analyticsService = new AnalyticsService();
     private final CategoryService categoryService = new CategoryService();
+    private final DashboardContext dashboard = DashboardContext.shared();
+    // Forecast lines of the last request, so cross-filter clicks do not query them again
+    private String forecastKey;
+    private Map<String, Map<String, Integer>> forecastLines = Map.of();
 
     private final List<CheckBox> categoryCheckBoxes = new ArrayList<>();
     private final List<CheckBox> subcategoryCheckBoxes = new ArrayList<>();
@@ -40,13 +62,15 @@ public class ChartsController {
         setupCategoryDropdown();
         setupSubcategoryDropdown();
 
-        viewByPieChart.setItems(FXCollections.observableArrayList("Category", "Subcategory"));
+        viewByPieChart.setItems(FXCollections.observableArrayList("Category", "Subcategory", "Store"));
         viewByPieChart.setValue("Category");
         viewByPieChart.valueProperty().addListener((obs, oldVal, newVal) -> applyFilters());
 
-        viewByLineChart.setItems(FXCollections.observableArrayList("Category", "Subcategory", "Product"));
+        viewByLineChart.setItems(FXCollections.observableArrayList("Category", "Subcategory", "Product", "Store"));
         viewByLineChart.setValue("Category");
         viewByLineChart.valueProperty().addListener((obs, oldVal, newVal) -> applyFilters());
+        cbForecast.selectedProperty().addListener((obs, oldVal, newVal) -> applyLineChart());
+        dashboard.addListener(this::applyFilters);
     }
 
     private void setupCategoryDropdown() {
@@ -147,37 +171,74 @@ public class ChartsController {
         dropdown.setPromptText(list.isEmpty() ? dropdown.getId() : String.join(", ", list));
     }
 
-    @FXML
     private void applyFilters() {
+        LocalDate fromDate = fromDatePicker.getValue();
+        LocalDate toDate = toDatePicker.getValue();
+
+        if (fromDate == null || toDate == null || !dashboard.load(fromDate, toDate)) return;
         applyPieChart();
         applyLineChart();
+        selectionLabel.setText(dashboard.describeSelection());
     }
 
-    private void applyPieChart() {
-        LocalDate fromDate = fromDatePicker.getValue();
-        LocalDate toDate = toDatePicker.getValue();
+    @FXML
+    private void refresh() {
+        forecastKey = null;
+        applyFilters();
+    }
+
+    @FXML
+    private void clearSelection() {
+        dashboard.clearSelection();
+    }
 
-        if (fromDate == null || toDate == null) return;
+    private void applyPieChart() {
+        if (!dashboard.isLoaded(fromDatePicker.getValue(), toDatePicker.getValue())) return;
 
         String viewBy = viewByPieChart.getValue();
+        Dimension dimension = Dimension.of(viewBy);
         Map<String, Integer> data;
 
         if ("Subcategory".equals(viewBy)) {
             if (selectedSubcategories.isEmpty() || selectedCategories.isEmpty()) return;
-            List<String> selectedPairs = new ArrayList<>();
-            for (String cat : selectedCategories) {
-                for (String sub : selectedSubcategories) {
-                    selectedPairs.add(cat + " - " + sub);
-                }
-            }
-            data = analyticsService.getQuantityBySubcategory(fromDate, toDate, selectedPairs);
+            data = dashboard.getQuantityBy(dimension, new Filter(selectedCategories, selectedSubcategories, List.of()));
         } else {
             if (selectedCategories.isEmpty()) return;
-            data = analyticsService.getQuantityByCategory(fromDate, toDate, selectedCategories);
+            data = dashboard.getQuantityBy(dimension, new Filter(selectedCategories, List.of("ALL"), List.of()));
         }
 
-        pieChart.getData().clear();
-        data.forEach((key, value) -> pieChart.getData().add(new PieChart.Data(key, value)));
+        updatePieChart(data);
+        for (PieChart.Data slice : pieChart.getData()) {
+            bindSelection(slice.getNode(), dimension, slice.getName());
+        }
+    }
+
+    // Clicking node toggles value in the cross-filter; while its dimension has a selection, nodes
+    // that are not selected are dimmed.
+    private void bindSelection(Node node, Dimension dimension, String value) {
+        if (node == null) return;
+        node.setOnMouseClicked(e -> dashboard.toggle(dimension, value));
+        node.setOpacity(!dashboard.hasSelection(dimension) || dashboard.isSelected(dimension, value) ? 1 : DIMMED);
+    }
+
+    // Brings the pie in line with data: slices that are gone are removed, changed values are set on
+    // the existing slices (which animate to their new size) and only new slices are added.
+    private void updatePieChart(Map<String, Integer> data) {
+        ObservableList<PieChart.Data> slices = pieChart.getData();
+        slices.removeIf(slice -> !data.containsKey(slice.getName()));
+        Map<String, PieChart.Data> current = new HashMap<>();
+        for (PieChart.Data slice : slices) current.put(slice.getName(), slice);
+
+        List<PieChart.Data> added = new ArrayList<>();
+        data.forEach((name, value) -> {
+            PieChart.Data slice = current.get(name);
+            if (slice == null) {
+                added.add(new PieChart.Data(name, value));
+            } else if (slice.getPieValue() != value) {
+                slice.setPieValue(value);
+            }
+        });
+        if (!added.isEmpty()) slices.addAll(added);
     }
 
 
@@ -185,38 +246,131 @@ public class ChartsController {
         LocalDate fromDate = fromDatePicker.getValue();
         LocalDate toDate = toDatePicker.getValue();
 
-        if (fromDate == null || toDate == null) return;
+        if (!dashboard.isLoaded(fromDate, toDate)) return;
 
         String viewBy = viewByLineChart.getValue();
-        lineChart.getData().clear();
+        Dimension dimension = Dimension.of(viewBy);
+        Map<String, Map<String, Integer>> lines = new LinkedHashMap<>();
+
+        if ("Subcategory".equals(viewBy)) {
+            lines.putAll(dashboard.getTrendBy(dimension, new Filter(List.of("ALL"), selectedSubcategories, List.of())));
+        } else {
+            lines.putAll(dashboard.getTrendBy(dimension, new Filter(selectedCategories, List.of("ALL"), List.of())));
+        }
 
-        if ("Category".equals(viewBy)) {
-            for (String cat : selectedCategories) {
-                Map<String, Map<String, Integer>> trends = analyticsService.getSalesTrendByCategory(fromDate, toDate, cat);
-                plotLineChart(trends);
+        // Forecasts are per item over all stores, so there is no store forecast line
+        if (cbForecast.isSelected() && !"Store".equals(viewBy)) {
+            List<String> names = "Subcategory".equals(viewBy) ? selectedSubcategories : selectedCategories;
+            String key = viewBy + names;
+            if (!key.equals(forecastKey)) {
+                forecastLines = analyticsService.getForecastTrend(viewBy, names, FORECAST_DAYS);
+                forecastKey = key;
             }
-        } else if ("Subcategory".equals(viewBy)) {
-            for (String sub : selectedSubcategories) {
-                Map<String, Map<String, Integer>> trends = analyticsService.getSalesTrendBySubcategory(fromDate, toDate, sub);
-                plotLineChart(trends);
+            lines.putAll(forecastLines);
+        }
+        plotLineChart(lines, ChartSampler.granularityFor(fromDate, toDate));
+        for (XYChart.Series<String, Number> series : lineChart.getData()) {
+            String name = series.getName();
+            if (name.endsWith(FORECAST_SUFFIX)) name = name.substring(0, name.length() - FORECAST_SUFFIX.length());
+            bindSelection(series.getNode(), dimension, name);
+        }
+    }
+
+    // Plots the daily lines regrouped to level and thinned to the point budget of the plot width.
+    // The x axis gets the sorted union of the kept buckets, so lines that skip a bucket stay in
+    // date order.
+    private void plotLineChart(Map<String, Map<String, Integer>> data, CalendarLevel level) {
+        Map<String, TreeMap<String, Integer>> grouped = new LinkedHashMap<>();
+        TreeSet<String> buckets = new TreeSet<>();
+        data.forEach((name, daily) -> {
+            TreeMap<String, Integer> line = ChartSampler.regroup(daily, level);
+            grouped.put(name, line);
+            buckets.addAll(line.keySet());
+        });
+        List<String> axis = new ArrayList<>(buckets);
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < axis.size(); i++) position.put(axis.get(i), i);
+
+        int budget = pointBudget(grouped.size());
+        Map<String, Map<String, Integer>> sampled = new LinkedHashMap<>();
+        TreeSet<String> shown = new TreeSet<>();
+        int points = 0;
+        for (Map.Entry<String, TreeMap<String, Integer>> entry : grouped.entrySet()) {
+            List<Map.Entry<String, Integer>> line = new ArrayList<>(entry.getValue().entrySet());
+            double[] x = new double[line.size()];
+            double[] y = new double[line.size()];
+            for (int i = 0; i < line.size(); i++) {
+                x[i] = position.get(line.get(i).getKey());
+                y[i] = line.get(i).getValue();
             }
-        } else {
-            for (String cat : selectedCategories) {
-                Map<String, Map<String, Integer>> trends = analyticsService.getSalesTrendByLabel(fromDate, toDate, cat);
-                plotLineChart(trends);
+            Map<String, Integer> kept = new LinkedHashMap<>();
+            for (int i : ChartSampler.lttb(x, y, budget)) {
+                kept.put(line.get(i).getKey(), line.get(i).getValue());
             }
+            shown.addAll(kept.keySet());
+            points += kept.size();
+            sampled.put(entry.getKey(), kept);
         }
+
+        xAxis.setAutoRanging(false);
+        if (!xAxis.getCategories().equals(new ArrayList<>(shown))) {
+            xAxis.setCategories(FXCollections.observableArrayList(shown));
+        }
+        lineChart.setCreateSymbols(points <= MAX_SYMBOLS);
+        updateLineChart(sampled);
+    }
+
+    // Brings the plotted series in line with lines, a map of series name to its points. Series that
+    // are gone are removed and new ones added; a series that is still there keeps its node and only
+    // the points that differ are removed, updated or added, so toggling one category leaves the
+    // other lines untouched.
+    private void updateLineChart(Map<String, Map<String, Integer>> lines) {
+        ObservableList<XYChart.Series<String, Number>> plotted = lineChart.getData();
+        plotted.removeIf(series -> !lines.containsKey(series.getName()));
+        Map<String, XYChart.Series<String, Number>> current = new HashMap<>();
+        for (XYChart.Series<String, Number> series : plotted) current.put(series.getName(), series);
+
+        List<XYChart.Series<String, Number>> added = new ArrayList<>();
+        lines.forEach((name, points) -> {
+            XYChart.Series<String, Number> series = current.get(name);
+            if (series == null) {
+                series = new XYChart.Series<>();
+                series.setName(name);
+                for (Map.Entry<String, Integer> point : points.entrySet()) {
+                    series.getData().add(new XYChart.Data<>(point.getKey(), point.getValue()));
+                }
+                added.add(series);
+            } else {
+                updateSeries(series, points);
+            }
+        });
+        if (!added.isEmpty()) plotted.addAll(added);
     }
 
-    private void plotLineChart(Map<String, Map<String, Integer>> data) {
-        for (Map.Entry<String, Map<String, Integer>> entry : data.entrySet()) {
-            XYChart.Series<String, Number> series = new XYChart.Series<>();
-            series.setName(entry.getKey());
-            entry.getValue().entrySet().stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .forEach(e -> series.getData().add(new XYChart.Data<>(e.getKey(), e.getValue())));
-            lineChart.getData().add(series);
+    private static void updateSeries(XYChart.Series<String, Number> series, Map<String, Integer> points) {
+        ObservableList<XYChart.Data<String, Number>> data = series.getData();
+        data.removeIf(point -> !points.containsKey(point.getXValue()));
+        Set<String> present = new HashSet<>();
+        for (XYChart.Data<String, Number> point : data) {
+            present.add(point.getXValue());
+            Integer value = points.get(point.getXValue());
+            if (point.getYValue().intValue() != value) point.setYValue(value);
         }
+        List<XYChart.Data<String, Number>> added = new ArrayList<>();
+        points.forEach((x, y) -> {
+            if (!present.contains(x)) added.add(new XYChart.Data<>(x, y));
+        });
+        if (!added.isEmpty()) data.addAll(added);
+    }
+
+    // Points per line: one per POINT_SPACING pixels of plot width, shared out so that all lines
+    // together stay under MAX_POINTS.
+    private int pointBudget(int lines) {
+        double width = xAxis.getWidth() > 0 ? xAxis.getWidth()
+                : lineChart.getWidth() > 0 ? lineChart.getWidth() : DEFAULT_WIDTH;
+        int perLine = (int) (width / POINT_SPACING);
+        if (lines > 0) perLine = Math.min(perLine, MAX_POINTS / lines);
+        return Math.max(MIN_POINTS, perLine);
     }
 
     private void showAlert(String title, String message) {
@@ -12,6 +12,7 @@ public class MainController {
     @FXML private Tab salesTab;
     @FXML private Tab analyticsTab;
     @FXML private Tab chartsTab;
+    @FXML private Tab anomalyTab;
     @FXML private Tab storeTab;
 
 
@@ -1,5 +1,6 @@
 package controllers;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
@@ -14,6 +15,7 @@ import models.Category;
 import models.Product;
 import services.CategoryService;
 import services.ProductService;
+import services.WriteBehindQueue;
 import utils.CSVImporter;
 import javafx.scene.control.cell.PropertyValueFactory;
 import java.io.File;
@@ -42,11 +44,25 @@ public class ProductController {
     @FXML private TextField tfStatusFilter;
     @FXML private ComboBox<String> cbPriceComparator;
     @FXML private TextField tfPriceFilter;
+    @FXML private Label lblSaveStatus;
 
     private final int PAGE_SIZE = 1000;
     private int currentOffset = 0;
 
     private final ProductService productService = new ProductService();
+    private final WriteBehindQueue<Integer, Product> productEdits = new WriteBehindQueue<>("product", 500,
+            productService::updateProducts, new WriteBehindQueue.Listener<>() {
+        @Override
+        public void saved(int count) {
+            Platform.runLater(() -> showSaveStatus(count + " product change(s) saved.", false));
+        }
+
+        @Override
+        public void failed(List<Product> rows, String message) {
+            String items = rows.stream().map(p -> String.valueOf(p.getItemNumber())).collect(Collectors.joining(", "));
+            Platform.runLater(() -> showSaveStatus(message + " Items: " + items, true));
+        }
+    });
     private final CategoryService categoryService = new CategoryService();
     private final ObservableList<Product> productsList = FXCollections.observableArrayList();
     private final List<Product> newProducts = new ArrayList<>();
@@ -60,6 +76,7 @@ public class ProductController {
     @FXML
     public void initialize() {
         productTable.setEditable(true);
+        productTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         setupMultiSelectDropdown();
         setupTableColumns();
         loadInitialProducts();
@@ -255,7 +272,7 @@ public class ProductController {
         StringBuilder sb = new StringBuilder();
         if (!searchField.getText().trim().isEmpty()) sb.append(" AND lower(p.label) LIKE ?");
         if (!selectedCategories.isEmpty()) sb.append(" AND lower(c.category) IN (").append("?,".repeat(selectedCategories.size() - 1)).append("?)");
-        if (!selectedSubcategories.isEmpty()) sb.append(" AND lower(p.subcategory) IN (").append("?,".repeat(selectedSubcategories.size() - 1)).append("?)");
+        if (!selectedSubcategories.isEmpty()) sb.append(" AND lower(c.subcategory) IN (").append("?,".repeat(selectedSubcategories.size() - 1)).append("?)");
         return sb.toString();
     }
 
@@ -303,47 +320,26 @@ public class ProductController {
         });
     }
 
-//    private void attemptSaveProduct(Product p) {
-//        if (p.getLabel().isEmpty() || p.getProductClass().isEmpty()) return;
-//        if (p.getItemNumber() == 0 || newProducts.contains(p)) {
-//            if (productService.insertProduct(p)) {
-//                newProducts.remove(p);
-//                showAlert("Success", "Product added successfully.");
-//            } else {
-//                showAlert("Save Error", "Failed to add new product.");
-//            }
-//        } else {
-//            productService.updateProduct(p);
-//            showAlert("Success", "Product updated successfully.");
-//        }
-//        loadInitialProducts();
-//    }
-
+    // New rows are inserted right away; edits to existing rows go through the write-behind queue.
     private void attemptSaveProduct(Product p) {
         if (p.getLabel().isEmpty() || p.getProductClass().isEmpty()) return;
 
-        boolean success;
         if (p.getItemNumber() == 0 || newProducts.contains(p)) {
-            success = productService.insertProduct(p);
-            if (success) {
+            if (productService.insertProduct(p)) {
                 newProducts.remove(p);
-                showAlert("Success", "Product added successfully.");
+                showSaveStatus("Product added.", false);
             } else {
-                showAlert("Save Error", "Failed to add new product.");
+                showSaveStatus("Failed to add new product.", true);
             }
         } else {
-            success = productService.updateProduct(p);
-            if (success) {
-                showAlert("Success", "Product updated successfully.");
-            } else {
-                showAlert("Save Error", "Failed to update product.");
-            }
+            productEdits.submit(p.getItemNumber(), p.copy());
+            showSaveStatus(productEdits.getPendingCount() + " change(s) pending...", false);
         }
+    }
 
-        // ✅ Refresh table only if update was successful
-        if (success) {
-            productTable.refresh(); // Just redraws the table, no data reload
-        }
+    private void showSaveStatus(String message, boolean error) {
+        lblSaveStatus.setText(message);
+        lblSaveStatus.setStyle(error ? "-fx-text-fill: red;" : "");
     }
 
 
@@ -360,13 +356,128 @@ public class ProductController {
 
     @FXML
     private void deleteProduct() {
-        Product selected = productTable.getSelectionModel().getSelectedItem();
-        if (selected != null && productService.deleteProduct(selected.getItemNumber())) {
-            productsList.remove(selected);
-            newProducts.remove(selected);
+        List<Product> selected = new ArrayList<>(productTable.getSelectionModel().getSelectedItems());
+        List<Product> unsaved = selected.stream().filter(newProducts::contains).collect(Collectors.toList());
+        if (!unsaved.isEmpty()) {
+            // Unsaved rows only exist in the table
+            productsList.removeAll(unsaved);
+            newProducts.removeAll(unsaved);
+            selected.removeAll(unsaved);
+            if (selected.isEmpty()) return;
+        }
+
+        Boolean useSelection = chooseBulkScope(selected, "Delete");
+        if (useSelection == null) return;
+        if (!confirm("Delete Products", useSelection
+                ? "Delete " + selected.size() + " selected product(s)?"
+                : "Delete all " + productService.countProductsMatching(buildFilterQuery(), buildFilterParameters())
+                        + " product(s) matching the current filters?")) return;
+
+        productEdits.flush();
+        int deleted = useSelection
+                ? productService.deleteProducts(itemNumbersOf(selected))
+                : productService.deleteProductsMatching(buildFilterQuery(), buildFilterParameters());
+        finishBulkOperation(deleted, "deleted");
+    }
+
+    @FXML
+    private void adjustPrices() {
+        List<Product> selected = new ArrayList<>(productTable.getSelectionModel().getSelectedItems());
+        selected.removeIf(newProducts::contains);
+        Boolean useSelection = chooseBulkScope(selected, "Adjust Prices");
+        if (useSelection == null) return;
+
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Adjust Prices");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Change (e.g. 5%, -10% or -0.25):");
+        Optional<String> input = dialog.showAndWait();
+        if (input.isEmpty() || input.get().isBlank()) return;
+
+        String text = input.get().trim();
+        boolean percent = text.endsWith("%");
+        double amount;
+        try {
+            amount = Double.parseDouble((percent ? text.substring(0, text.length() - 1) : text).replace("$", "").trim());
+        } catch (NumberFormatException e) {
+            showAlert("Invalid Value", "Could not read a price change from \"" + text + "\".");
+            return;
+        }
+
+        productEdits.flush();
+        int updated = useSelection
+                ? productService.adjustPricesForItems(itemNumbersOf(selected), amount, percent)
+                : productService.adjustPricesMatching(buildFilterQuery(), buildFilterParameters(), amount, percent);
+        finishBulkOperation(updated, "repriced");
+    }
+
+    @FXML
+    private void setStatus() {
+        List<Product> selected = new ArrayList<>(productTable.getSelectionModel().getSelectedItems());
+        selected.removeIf(newProducts::contains);
+        Boolean useSelection = chooseBulkScope(selected, "Set Status");
+        if (useSelection == null) return;
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<>("Active", "Active", "Inactive", "Discontinued");
+        dialog.setTitle("Set Status");
+        dialog.setHeaderText(null);
+        dialog.setContentText("New status:");
+        Optional<String> status = dialog.showAndWait();
+        if (status.isEmpty()) return;
+
+        productEdits.flush();
+        int updated = useSelection
+                ? productService.setStatusForItems(itemNumbersOf(selected), status.get())
+                : productService.setStatusMatching(buildFilterQuery(), buildFilterParameters(), status.get());
+        finishBulkOperation(updated, "updated");
+    }
+
+    // Returns true to act on the selected rows, false for everything matching the filters, null if cancelled.
+    // The filter scope is only offered while a filter is set, so a bulk action never silently covers
+    // the whole catalog.
+    private Boolean chooseBulkScope(List<Product> selected, String title) {
+        if (selected.size() == 1) return true;
+        String selectionChoice = "Selected products (" + selected.size() + ")";
+        int matching = buildFilterQuery().isEmpty() ? 0
+                : productService.countProductsMatching(buildFilterQuery(), buildFilterParameters());
+        String filterChoice = "All products matching the current filters (" + matching + ")";
+        if (selected.isEmpty() && matching <= 0) {
+            showAlert(title, buildFilterQuery().isEmpty()
+                    ? "Select products or set a search or category filter first."
+                    : "No products match the current filters.");
+            return null;
+        }
+
+        List<String> choices = new ArrayList<>();
+        if (!selected.isEmpty()) choices.add(selectionChoice);
+        if (matching > 0) choices.add(filterChoice);
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(choices.get(0), choices);
+        dialog.setTitle(title);
+        dialog.setHeaderText(null);
+        dialog.setContentText("Apply to:");
+        Optional<String> choice = dialog.showAndWait();
+        return choice.map(selectionChoice::equals).orElse(null);
+    }
+
+    private List<Integer> itemNumbersOf(List<Product> products) {
+        return products.stream().map(Product::getItemNumber).collect(Collectors.toList());
+    }
+
+    private void finishBulkOperation(int count, String verb) {
+        if (count < 0) {
+            showSaveStatus("Bulk operation failed; no products were changed.", true);
         } else {
-            showAlert("Delete Error", "Could not delete product.");
+            showSaveStatus(count + " product(s) " + verb + ".", false);
         }
+        loadInitialProducts();
+    }
+
+    private boolean confirm(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        return alert.showAndWait().filter(ButtonType.OK::equals).isPresent();
     }
 
     @FXML
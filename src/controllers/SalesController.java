@@ -1,17 +1,18 @@
 package controllers;
 
 import javafx.collections.FXCollections;
-import javafx.collections.transformation.FilteredList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import models.Sale;
+import models.SalesBatch;
 import services.SalesService;
+import services.SnapshotService;
 import utils.CSVImporter;
 import javafx.stage.FileChooser;
 import java.io.File;
+import java.io.IOException;
 import java.time.LocalDate;
-import java.util.List;
 
 public class SalesController {
     @FXML private Button btnImportSales;
@@ -32,7 +33,8 @@ public class SalesController {
     @FXML private TextField tfStoreFilter;
 
     private final SalesService salesService = new SalesService();
-    private FilteredList<Sale> filteredSales;
+    private final SnapshotService snapshotService = new SnapshotService();
+    private SalesBatch salesBatch;
 
     @FXML
     public void initialize() {
@@ -46,10 +48,10 @@ public class SalesController {
         setupFilters();
     }
 
+    @FXML
     private void loadSales() {
-        List<Sale> sales = salesService.getAllSales();
-        filteredSales = new FilteredList<>(FXCollections.observableArrayList(sales), s -> true);
-        salesTable.setItems(filteredSales);
+        salesBatch = salesService.getSalesBatch();
+        updateFilters();
     }
 
     private void setupFilters() {
@@ -64,72 +66,71 @@ public class SalesController {
 
     }
 
+    // Filters run over the batch columns; only rows the table actually shows become Sale objects.
     private void updateFilters() {
-        filteredSales.setPredicate(sale -> {
-            boolean matchesItem = true;
-            String itemFilter = tfSalesItemNumberFilter.getText().trim();
-            if (!itemFilter.isEmpty()) {
-                try {
-                    int filterVal = Integer.parseInt(itemFilter);
-                    matchesItem = sale.getItemNumber() == filterVal;
-                } catch (NumberFormatException e) {
-                    matchesItem = false;
-                }
-            }
-            boolean matchesQuantity = true;
-            String qtyFilter = tfQuantityFilter.getText().trim();
-            if (!qtyFilter.isEmpty()) {
-                try {
-                    int filterQty = Integer.parseInt(qtyFilter);
-                    matchesQuantity = sale.getQuantity() == filterQty;
-                } catch (NumberFormatException e) {
-                    matchesQuantity = false;
-                }
-            }
-            boolean matchesPrice = true;
-            String priceFilter = tfSalesPriceFilter.getText().trim();
-            if (!priceFilter.isEmpty()) {
-                try {
-                    double filterPrice = Double.parseDouble(priceFilter);
-                    matchesPrice = sale.getPrice() == filterPrice;
-                } catch (NumberFormatException e) {
-                    matchesPrice = false;
-                }
-            }
-            boolean matchesFromDate = true;
-            LocalDate filterFrom = dpFromDateFilter.getValue();
-            String fromComparator = cbFromDateComparator.getValue();
-            if (fromComparator == null || fromComparator.isEmpty()) {
-                fromComparator = "=";
-            }
-            if (filterFrom != null) {
-                switch (fromComparator) {
-                    case ">": matchesFromDate = sale.getFromDate().isAfter(filterFrom); break;
-                    case "<": matchesFromDate = sale.getFromDate().isBefore(filterFrom); break;
-                    case "=": matchesFromDate = sale.getFromDate().equals(filterFrom); break;
-                }
-            }
-            boolean matchesToDate = true;
-            LocalDate filterTo = dpToDateFilter.getValue();
-            String toComparator = cbToDateComparator.getValue();
-            if (toComparator == null || toComparator.isEmpty()) {
-                toComparator = "=";
-            }
-            if (filterTo != null) {
-                switch (toComparator) {
-                    case ">": matchesToDate = sale.getToDate().isAfter(filterTo); break;
-                    case "<": matchesToDate = sale.getToDate().isBefore(filterTo); break;
-                    case "=": matchesToDate = sale.getToDate().equals(filterTo); break;
-                }
-            }
+        if (salesBatch == null) return;
 
-            String storeFilter = tfStoreFilter.getText().trim().toLowerCase();
-            boolean matchesStore = storeFilter.isEmpty() ||
-                    (sale.getStore() != null && sale.getStore().toLowerCase().contains(storeFilter));
+        Integer itemFilter = null;
+        Integer qtyFilter = null;
+        Double priceFilter = null;
+        try {
+            String itemText = tfSalesItemNumberFilter.getText().trim();
+            if (!itemText.isEmpty()) itemFilter = Integer.parseInt(itemText);
+            String qtyText = tfQuantityFilter.getText().trim();
+            if (!qtyText.isEmpty()) qtyFilter = Integer.parseInt(qtyText);
+            String priceText = tfSalesPriceFilter.getText().trim();
+            if (!priceText.isEmpty()) priceFilter = Double.parseDouble(priceText);
+        } catch (NumberFormatException e) {
+            salesTable.setItems(FXCollections.observableArrayList());
+            return;
+        }
 
+        LocalDate filterFrom = dpFromDateFilter.getValue();
+        LocalDate filterTo = dpToDateFilter.getValue();
+        int fromDay = filterFrom == null ? 0 : (int) filterFrom.toEpochDay();
+        int toDay = filterTo == null ? 0 : (int) filterTo.toEpochDay();
+        String fromComparator = comparatorOrDefault(cbFromDateComparator.getValue());
+        String toComparator = comparatorOrDefault(cbToDateComparator.getValue());
 
-            return matchesItem && matchesQuantity && matchesPrice && matchesFromDate && matchesToDate && matchesStore;
-        });
+        String storeFilter = tfStoreFilter.getText().trim().toLowerCase();
+        if (itemFilter == null && qtyFilter == null && priceFilter == null && filterFrom == null && filterTo == null
+                && storeFilter.isEmpty()) {
+            salesTable.setItems(FXCollections.observableList(salesBatch.asList()));
+            return;
+        }
+
+        // Store names are dictionary-encoded, so the text match runs once per distinct store.
+        boolean[] storeMatches = new boolean[salesBatch.getStoreCount()];
+        for (int code = 0; code < storeMatches.length; code++) {
+            storeMatches[code] = storeFilter.isEmpty() || salesBatch.decodeStore(code).toLowerCase().contains(storeFilter);
+        }
+
+        int[] rows = new int[salesBatch.size()];
+        int count = 0;
+        for (int row = 0; row < salesBatch.size(); row++) {
+            if (itemFilter != null && salesBatch.getItemNumber(row) != itemFilter) continue;
+            if (qtyFilter != null && salesBatch.getQuantity(row) != qtyFilter) continue;
+            if (priceFilter != null && salesBatch.getPrice(row) != priceFilter) continue;
+            if (filterFrom != null && !compareDays(salesBatch.getFromDay(row), fromDay, fromComparator)) continue;
+            if (filterTo != null && !compareDays(salesBatch.getToDay(row), toDay, toComparator)) continue;
+            if (!storeMatches[salesBatch.getStoreCode(row)]) continue;
+            rows[count++] = row;
+        }
+
+        salesTable.setItems(FXCollections.observableList(salesBatch.asList(rows, count)));
+    }
+
+    private String comparatorOrDefault(String comparator) {
+        return (comparator == null || comparator.isEmpty()) ? "=" : comparator;
+    }
+
+    private boolean compareDays(int day, int filterDay, String comparator) {
+        switch (comparator) {
+            case ">": return day > filterDay;
+            case "<": return day < filterDay;
+            case "=": return day == filterDay;
+            default: return true;
+        }
     }
 
     @FXML
@@ -143,4 +144,68 @@ public class SalesController {
             loadSales();
         }
     }
+
+    // Saves the sales between the From Date and To Date filters, or every sale in the table when
+    // either is empty, as a columnar snapshot.
+    @FXML
+    private void saveSalesSnapshot() {
+        LocalDate fromDate = dpFromDateFilter.getValue();
+        LocalDate toDate = dpToDateFilter.getValue();
+        if (fromDate == null || toDate == null) {
+            if (salesBatch == null || salesBatch.size() == 0) {
+                showAlert("No data to save", "There are no sales to save.");
+                return;
+            }
+            int minDay = Integer.MAX_VALUE;
+            int maxDay = Integer.MIN_VALUE;
+            for (int row = 0; row < salesBatch.size(); row++) {
+                minDay = Math.min(minDay, salesBatch.getFromDay(row));
+                maxDay = Math.max(maxDay, salesBatch.getToDay(row));
+            }
+            fromDate = LocalDate.ofEpochDay(minDay);
+            toDate = LocalDate.ofEpochDay(maxDay);
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Sales Snapshot");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Snapshot Files", "*.snap"));
+        File file = fileChooser.showSaveDialog(null);
+        if (file != null) {
+            try {
+                int rows = snapshotService.saveSales(file, fromDate, toDate);
+                showAlert("Snapshot Saved", rows + " sales from " + fromDate + " to " + toDate + " saved to " + file.getName() + ".");
+            } catch (IOException e) {
+                showAlert("Snapshot Error", "Error saving snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    // Shows the sales of a snapshot instead of the live ones; only the range between the date
+    // filters is read when both are set. Live Sales switches back.
+    @FXML
+    private void openSalesSnapshot() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Sales Snapshot");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Snapshot Files", "*.snap"));
+        File file = fileChooser.showOpenDialog(null);
+        if (file != null) {
+            LocalDate fromDate = dpFromDateFilter.getValue();
+            LocalDate toDate = dpToDateFilter.getValue();
+            try {
+                salesBatch = fromDate != null && toDate != null
+                        ? snapshotService.openSales(file, fromDate, toDate)
+                        : snapshotService.openSales(file);
+                updateFilters();
+            } catch (IOException e) {
+                showAlert("Snapshot Error", "Error opening snapshot: " + e.getMessage());
+            }
+        }
+    }
+
+    private void showAlert(String title, String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(title);
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
 }
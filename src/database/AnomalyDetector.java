@@ -0,0 +1,350 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Streaming outlier detection for imported sales. Every item and store keeps three running
+// statistics in the SalesAnomalyState table: the daily quantity rate of a sale, its unit price and
+// the total quantity of each day. Each statistic is an exponentially weighted mean and variance
+// (exact Welford until the weight reaches ALPHA) plus a stochastic median and median absolute
+// deviation. A value is scored against the history before it is folded in, so an import is checked
+// in the same pass that writes it. Both scores must exceed the threshold (setting
+// "anomaly_threshold"), which keeps a single noisy estimate from raising a flag. A sale that repeats
+// an earlier one (same item, store, days and quantity) is flagged as a duplicate. Flags go to the
+// SalesAnomaly table for review.
+public class AnomalyDetector {
+    public static final String QUANTITY = "quantity";
+    public static final String PRICE = "price";
+    public static final String DAY_TOTAL = "day_total";
+    public static final String DUPLICATE = "duplicate";
+
+    private static final double ALPHA = 0.1;
+    private static final int MIN_HISTORY = 4;
+    // Days without sales between two imports are scored as zero days, up to this many
+    private static final int MAX_GAP = 14;
+    private static final String THRESHOLD = "anomaly_threshold";
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS SalesAnomalyState (" +
+                "item_number INTEGER, " +
+                "store_id INTEGER, " +
+                "last_day INTEGER, " +
+                "quantity BLOB, " +
+                "price BLOB, " +
+                "day_total BLOB, " +
+                "PRIMARY KEY (item_number, store_id)" +
+                ")");
+        stmt.execute("CREATE TABLE IF NOT EXISTS SalesAnomaly (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "sale_id INTEGER, " +
+                "item_number INTEGER, " +
+                "store_id INTEGER, " +
+                "day INTEGER, " +
+                "metric TEXT, " +
+                "value REAL, " +
+                "expected REAL, " +
+                "score REAL, " +
+                "reviewed INTEGER DEFAULT 0, " +
+                "detected_at TEXT" +
+                ")");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_sales_anomaly_reviewed ON SalesAnomaly(reviewed, day)");
+    }
+
+    // Running statistics of one metric. floor is the smallest deviation that counts as spread, so
+    // a series of identical values does not turn every small change into an outlier.
+    static class Stat {
+        static final int BYTES = Long.BYTES + 4 * Double.BYTES;
+
+        private final double floor;
+        private long n;
+        private double mean;
+        private double variance;
+        private double median;
+        private double mad;
+
+        Stat(double floor) {
+            this.floor = floor;
+        }
+
+        // Score of x against the values seen so far: the smaller of its z-score and its robust
+        // score |x - median| / (1.4826 * MAD). Zero while the history is too short.
+        double score(double x) {
+            if (n < MIN_HISTORY) return 0;
+            double deviation = Math.abs(x - mean);
+            double z = deviation == 0 ? 0 : deviation / Math.max(Math.sqrt(variance), floor);
+            double robust = Math.abs(x - median) / (1.4826 * Math.max(mad, floor));
+            return Math.min(z, robust);
+        }
+
+        // Folds x into the statistics; outliers enter the mean and variance clamped to the threshold
+        // so one bad value does not widen the band for the values after it.
+        void add(double x, double threshold) {
+            n++;
+            double alpha = Math.max(ALPHA, 1.0 / n);
+            if (n == 1) {
+                mean = x;
+                median = x;
+                return;
+            }
+            double spread = threshold * Math.max(Math.sqrt(variance), floor);
+            double clamped = n > MIN_HISTORY ? Math.max(mean - spread, Math.min(mean + spread, x)) : x;
+            double delta = clamped - mean;
+            mean += alpha * delta;
+            variance = (1 - alpha) * (variance + alpha * delta * delta);
+
+            // Median and MAD move a step towards x, scaled to the current spread
+            double step = alpha * Math.max(mad, Math.max(floor, Math.abs(median) * 0.05));
+            median += step * Math.signum(x - median);
+            mad = Math.max(0, mad + step * Math.signum(Math.abs(x - median) - mad));
+        }
+
+        double expected() {
+            return median;
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putLong(n).putDouble(mean).putDouble(variance).putDouble(median).putDouble(mad);
+        }
+
+        void read(byte[] bytes) {
+            if (bytes == null || bytes.length < BYTES) return;
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            n = buffer.getLong();
+            mean = buffer.getDouble();
+            variance = buffer.getDouble();
+            median = buffer.getDouble();
+            mad = buffer.getDouble();
+        }
+
+        byte[] toBytes() {
+            ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+            write(buffer);
+            return buffer.array();
+        }
+    }
+
+    // Statistics of one item and store, plus the day totals of the running import.
+    private static class State {
+        final Stat quantity = new Stat(1.0);
+        final Stat price = new Stat(0.01);
+        final Stat dayTotal = new Stat(1.0);
+        final TreeMap<Integer, Long> days = new TreeMap<>();
+        Integer lastDay;
+    }
+
+    // One detection run over an import. Sales are checked as they are added; day totals are
+    // checked in apply, once the import has seen every sale of those days, and all state is
+    // written back on the importing connection so it commits or rolls back with the import.
+    public static class Batch {
+        private final Map<Long, State> states = new HashMap<>();
+        private final List<Object[]> flags = new ArrayList<>();
+        private final double threshold;
+        private final boolean recordFlags;
+        private PreparedStatement select;
+        private PreparedStatement duplicates;
+
+        public Batch() {
+            this(readThreshold(), true);
+        }
+
+        private Batch(double threshold, boolean recordFlags) {
+            this.threshold = threshold;
+            this.recordFlags = recordFlags;
+        }
+
+        public void add(Connection conn, long saleId, int itemNumber, Integer storeId, int fromDay,
+                        int quantity, double price, long[] dailyQuantities) throws SQLException {
+            int store = storeId == null ? 0 : storeId;
+            State state = state(conn, itemNumber, store);
+            double rate = (double) quantity / Math.max(1, dailyQuantities.length);
+            check(state.quantity, rate, saleId, itemNumber, store, fromDay, QUANTITY);
+            check(state.price, price, saleId, itemNumber, store, fromDay, PRICE);
+            if (recordFlags) checkDuplicate(conn, saleId, itemNumber, storeId, fromDay, fromDay + dailyQuantities.length - 1, quantity);
+            for (int i = 0; i < dailyQuantities.length; i++) {
+                state.days.merge(fromDay + i, dailyQuantities[i], Long::sum);
+            }
+        }
+
+        // Scores the new day totals, writes the states and the flags. Days up to the last day an
+        // earlier import already scored are scored again with their whole total in the live
+        // SalesDaily, this import included, but not folded in a second time; a re-imported day
+        // shows up as a day total above its usual level. Returns the number of flags.
+        public int apply(Connection conn) throws SQLException {
+            closeStatements();
+            if (states.isEmpty()) return 0;
+            try (PreparedStatement upsert = conn.prepareStatement("INSERT OR REPLACE INTO SalesAnomalyState " +
+                    "(item_number, store_id, last_day, quantity, price, day_total) VALUES (?, ?, ?, ?, ?, ?)");
+                 PreparedStatement dayTotal = conn.prepareStatement("SELECT SUM(quantity) FROM SalesDaily " +
+                    "WHERE item_number = ? AND store_id IS ? AND day = ?")) {
+                for (Map.Entry<Long, State> entry : states.entrySet()) {
+                    int itemNumber = (int) (entry.getKey() >> 32);
+                    int store = (int) entry.getKey().longValue();
+                    State state = entry.getValue();
+                    for (Map.Entry<Integer, Long> day : state.days.entrySet()) {
+                        if (state.lastDay != null && day.getKey() <= state.lastDay) {
+                            dayTotal.setInt(1, itemNumber);
+                            dayTotal.setObject(2, store == 0 ? null : store);
+                            dayTotal.setInt(3, day.getKey());
+                            try (ResultSet rs = dayTotal.executeQuery()) {
+                                long total = rs.next() ? rs.getLong(1) : day.getValue();
+                                score(state.dayTotal, total, null, itemNumber, store, day.getKey(), DAY_TOTAL);
+                            }
+                            continue;
+                        }
+                        if (state.lastDay != null && day.getKey() - state.lastDay - 1 <= MAX_GAP) {
+                            for (int empty = state.lastDay + 1; empty < day.getKey(); empty++) {
+                                check(state.dayTotal, 0, null, itemNumber, store, empty, DAY_TOTAL);
+                            }
+                        }
+                        check(state.dayTotal, day.getValue(), null, itemNumber, store, day.getKey(), DAY_TOTAL);
+                        state.lastDay = day.getKey();
+                    }
+                    state.days.clear();
+
+                    upsert.setInt(1, itemNumber);
+                    upsert.setInt(2, store);
+                    upsert.setObject(3, state.lastDay);
+                    upsert.setBytes(4, state.quantity.toBytes());
+                    upsert.setBytes(5, state.price.toBytes());
+                    upsert.setBytes(6, state.dayTotal.toBytes());
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+
+            int flagged = flags.size();
+            if (flagged > 0) {
+                String now = LocalDateTime.now().withNano(0).toString();
+                try (PreparedStatement insert = conn.prepareStatement("INSERT INTO SalesAnomaly " +
+                        "(sale_id, item_number, store_id, day, metric, value, expected, score, detected_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                    for (Object[] flag : flags) {
+                        for (int i = 0; i < flag.length; i++) insert.setObject(i + 1, flag[i]);
+                        insert.setString(9, now);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }
+            states.clear();
+            flags.clear();
+            return flagged;
+        }
+
+        private void check(Stat stat, double value, Long saleId, int itemNumber, int store, int day, String metric) {
+            score(stat, value, saleId, itemNumber, store, day, metric);
+            stat.add(value, threshold);
+        }
+
+        // Flags value when it scores above the threshold, without adding it to the statistics.
+        private void score(Stat stat, double value, Long saleId, int itemNumber, int store, int day, String metric) {
+            double score = stat.score(value);
+            if (recordFlags && score > threshold) {
+                flags.add(new Object[]{saleId, itemNumber, store == 0 ? null : store, day, metric,
+                        value, stat.expected(), Math.round(score * 100.0) / 100.0});
+            }
+        }
+
+        // Flags a sale that repeats an earlier one; the value is the number of earlier copies. The sale
+        // has just been written, so copies within the same file are caught as well.
+        private void checkDuplicate(Connection conn, long saleId, int itemNumber, Integer storeId, int fromDay,
+                                    int toDay, int quantity) throws SQLException {
+            if (duplicates == null) {
+                duplicates = conn.prepareStatement("SELECT COUNT(*) FROM Sales WHERE store_id IS ? AND from_day = ? " +
+                        "AND item_number = ? AND to_day = ? AND quantity = ? AND id < ?");
+            }
+            duplicates.setObject(1, storeId);
+            duplicates.setInt(2, fromDay);
+            duplicates.setInt(3, itemNumber);
+            duplicates.setInt(4, toDay);
+            duplicates.setInt(5, quantity);
+            duplicates.setLong(6, saleId);
+            try (ResultSet rs = duplicates.executeQuery()) {
+                int copies = rs.next() ? rs.getInt(1) : 0;
+                if (copies > 0) {
+                    flags.add(new Object[]{saleId, itemNumber, storeId, fromDay, DUPLICATE, copies, 0, null});
+                }
+            }
+        }
+
+        private State state(Connection conn, int itemNumber, int store) throws SQLException {
+            long key = ((long) itemNumber << 32) | (store & 0xffffffffL);
+            State state = states.get(key);
+            if (state != null) return state;
+
+            state = new State();
+            if (select == null) {
+                select = conn.prepareStatement("SELECT last_day, quantity, price, day_total FROM SalesAnomalyState " +
+                        "WHERE item_number = ? AND store_id = ?");
+            }
+            select.setInt(1, itemNumber);
+            select.setInt(2, store);
+            try (ResultSet rs = select.executeQuery()) {
+                if (rs.next()) {
+                    int lastDay = rs.getInt(1);
+                    state.lastDay = rs.wasNull() ? null : lastDay;
+                    state.quantity.read(rs.getBytes(2));
+                    state.price.read(rs.getBytes(3));
+                    state.dayTotal.read(rs.getBytes(4));
+                }
+            }
+            states.put(key, state);
+            return state;
+        }
+
+        private void closeStatements() throws SQLException {
+            if (select != null) {
+                select.close();
+                select = null;
+            }
+            if (duplicates != null) {
+                duplicates.close();
+                duplicates = null;
+            }
+        }
+    }
+
+    // Warms the statistics up from the live sales history without raising flags; used when the
+    // state table is new, so the first import is checked against what is already there.
+    static int rebuild(Connection conn) throws SQLException {
+        Batch batch = new Batch(readThreshold(), false);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, item_number, store_id, from_day, to_day, quantity, price " +
+                     "FROM Sales WHERE from_day IS NOT NULL ORDER BY from_day, id")) {
+            while (rs.next()) {
+                int storeId = rs.getInt(3);
+                Integer store = rs.wasNull() ? null : storeId;
+                int fromDay = rs.getInt(4);
+                int quantity = rs.getInt(6);
+                long[] daily = DailyFacts.splitQuantity(quantity, rs.getInt(5) - fromDay + 1);
+                batch.add(conn, rs.getLong(1), rs.getInt(2), store, fromDay, quantity, rs.getDouble(7), daily);
+            }
+            int states = batch.states.size();
+            batch.apply(conn);
+            conn.commit();
+            return states;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static double readThreshold() {
+        try {
+            double threshold = Double.parseDouble(DatabaseHelper.getSetting(THRESHOLD, "4"));
+            return threshold > 0 ? threshold : 4;
+        } catch (NumberFormatException e) {
+            return 4;
+        }
+    }
+}
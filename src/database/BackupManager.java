@@ -0,0 +1,208 @@
+package database;
+
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+// Online snapshots of the live database and its year shards through the SQLite backup API, so the
+// app keeps running while a copy is taken. Pages are copied in small steps with a pause after each
+// step, which keeps interactive queries responsive. Snapshots go to db/backups/<yyyyMMdd-HHmmss>/
+// with the same layout as the db folder; restore() copies one back into a fresh folder (see
+// BatchReports --restore).
+public class BackupManager {
+    private static final int PAGES_PER_STEP = 64;
+    private static final int PAUSE_MILLIS = 10;
+    private static final int BUSY_SLEEP_MILLIS = 50;
+    private static final int BUSY_RETRIES = 200;
+    private static final String DATABASE_FILE = "product_database.db";
+    private static final String INTERVAL_HOURS = "backup_interval_hours";
+    private static final String KEEP = "backup_keep";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "backup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static ScheduledFuture<?> schedule;
+
+    public static File getBackupFolder() {
+        return new File(DatabaseHelper.getDatabaseFolder(), "backups");
+    }
+
+    // Copies the live database and every shard into a new snapshot folder and returns the folder.
+    // Archiving is held off meanwhile, so no sale is copied twice or missed between the files.
+    public static synchronized File snapshot() throws SQLException, IOException {
+        File folder = new File(getBackupFolder(), LocalDateTime.now().format(NAME_FORMAT));
+        Files.createDirectories(new File(folder, "shards").toPath());
+
+        RetentionJob.ARCHIVING.lock();
+        try (Connection conn = DatabaseHelper.connect()) {
+            DB db = ((SQLiteConnection) conn).getDatabase();
+            copy(db, true, "main", new File(folder, DATABASE_FILE));
+            for (int year : ShardManager.getShardYears()) {
+                ShardManager.attach(conn, year);
+                try {
+                    copy(db, true, "shard_" + year, new File(folder, "shards/" + ShardManager.getShardFile(year).getName()));
+                } finally {
+                    ShardManager.detach(conn, year);
+                }
+            }
+        } finally {
+            RetentionJob.ARCHIVING.unlock();
+        }
+        System.out.println("Database snapshot written to " + folder);
+        return folder;
+    }
+
+    // Snapshot folders, newest first.
+    public static List<File> listSnapshots() {
+        File[] folders = getBackupFolder().listFiles(file ->
+                file.isDirectory() && new File(file, DATABASE_FILE).exists() && getSnapshotTime(file) != null);
+        if (folders == null) return new ArrayList<>();
+        List<File> snapshots = new ArrayList<>(Arrays.asList(folders));
+        snapshots.sort(Comparator.comparing(File::getName).reversed());
+        return snapshots;
+    }
+
+    public static LocalDateTime getSnapshotTime(File snapshot) {
+        try {
+            return LocalDateTime.parse(snapshot.getName(), NAME_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Latest snapshot taken at or before the given time, or null.
+    public static File findSnapshot(LocalDateTime pointInTime) {
+        for (File snapshot : listSnapshots()) {
+            if (!getSnapshotTime(snapshot).isAfter(pointInTime)) return snapshot;
+        }
+        return null;
+    }
+
+    // Restores a snapshot into targetFolder, which must not exist yet, leaving the live database
+    // untouched. Returns the restored main database file.
+    public static File restore(File snapshot, File targetFolder) throws SQLException, IOException {
+        if (targetFolder.exists()) {
+            throw new IOException("Restore target already exists: " + targetFolder);
+        }
+        Files.createDirectories(new File(targetFolder, "shards").toPath());
+
+        File target = new File(targetFolder, DATABASE_FILE);
+        restoreFile(new File(snapshot, DATABASE_FILE), target);
+        File[] shards = new File(snapshot, "shards").listFiles((dir, name) -> name.endsWith(".db"));
+        if (shards != null) {
+            for (File shard : shards) {
+                restoreFile(shard, new File(targetFolder, "shards/" + shard.getName()));
+            }
+        }
+        System.out.println("Snapshot " + snapshot.getName() + " restored to " + targetFolder);
+        return target;
+    }
+
+    // Takes a snapshot every interval (hours, stored as a setting) and keeps the newest ones. The
+    // first run is due one interval after the latest existing snapshot.
+    public static synchronized void startSchedule() {
+        if (schedule != null) return;
+        long intervalMinutes = Math.max(1, readSetting(INTERVAL_HOURS, 24)) * 60L;
+        int keep = Math.max(1, readSetting(KEEP, 7));
+
+        long delayMinutes = 0;
+        List<File> snapshots = listSnapshots();
+        if (!snapshots.isEmpty()) {
+            long sinceLast = Duration.between(getSnapshotTime(snapshots.get(0)), LocalDateTime.now()).toMinutes();
+            delayMinutes = Math.max(0, intervalMinutes - sinceLast);
+        }
+        schedule = EXECUTOR.scheduleAtFixedRate(() -> {
+            try {
+                snapshot();
+                prune(keep);
+            } catch (SQLException | IOException e) {
+                System.err.println("Scheduled snapshot failed: " + e.getMessage());
+            }
+        }, delayMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stopSchedule() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    private static void restoreFile(File source, File target) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + target.getPath())) {
+            copy(((SQLiteConnection) conn).getDatabase(), false, "main", source);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+                if (!rs.next() || !"ok".equalsIgnoreCase(rs.getString(1))) {
+                    throw new IOException("Restored file failed the integrity check: " + target);
+                }
+            }
+        }
+    }
+
+    // backup = copy database dbName of db into file; otherwise copy file into database dbName.
+    // The observer runs after every step, which is where the copy is throttled.
+    private static void copy(DB db, boolean backup, String dbName, File file) throws SQLException {
+        DB.ProgressObserver throttle = (remaining, pageCount) -> {
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(PAUSE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        int rc = backup
+                ? db.backup(dbName, file.getPath(), throttle, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP)
+                : db.restore(dbName, file.getPath(), throttle, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+        if (rc != 0 && rc != 101) { // SQLITE_OK, SQLITE_DONE
+            throw new SQLException((backup ? "Backup" : "Restore") + " of " + file.getName() + " failed with code " + rc);
+        }
+    }
+
+    private static void prune(int keep) {
+        List<File> snapshots = listSnapshots();
+        for (int i = keep; i < snapshots.size(); i++) {
+            deleteRecursively(snapshots.get(i));
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        if (!file.delete()) {
+            System.err.println("Could not delete old snapshot file " + file);
+        }
+    }
+
+    private static int readSetting(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(DatabaseHelper.getSetting(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package database;
+
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.Map;
+
+// The Calendar dimension: one row per epoch day with its ISO week, month, fiscal week, period,
+// quarter and year and holiday flags, so analytics can group SalesDaily by any level through a
+// join on the day key instead of building and parsing date strings.
+//
+// The fiscal year is a 52/53-week retail year of Monday-based weeks. It starts on the Monday
+// nearest to the first of the start month (setting "fiscal_start_month", default 1) and is named
+// after the year of that first day. Weeks are grouped into 12 periods by the quarter pattern
+// (setting "fiscal_pattern": 445, 454 or 544); a 53rd week belongs to period 12.
+public class CalendarDimension {
+    private static final String START_MONTH = "fiscal_start_month";
+    private static final String PATTERN = "fiscal_pattern";
+    private static final String BUILT_FOR = "calendar_built_for";
+    private static final int YEARS_AHEAD = 10;
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS Calendar (" +
+                "day INTEGER PRIMARY KEY, " +
+                "date TEXT, " +
+                "day_of_week INTEGER, " +
+                "is_weekend INTEGER, " +
+                "iso_year INTEGER, " +
+                "iso_week INTEGER, " +
+                "iso_week_key TEXT, " +
+                "month TEXT, " +
+                "fiscal_year INTEGER, " +
+                "fiscal_quarter INTEGER, " +
+                "fiscal_period INTEGER, " +
+                "fiscal_week INTEGER, " +
+                "fiscal_year_key TEXT, " +
+                "fiscal_quarter_key TEXT, " +
+                "fiscal_period_key TEXT, " +
+                "fiscal_week_key TEXT, " +
+                "is_holiday INTEGER, " +
+                "holiday TEXT" +
+                ")");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_calendar_fiscal_week ON Calendar(fiscal_week_key, day)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_calendar_fiscal_period ON Calendar(fiscal_period_key, day)");
+    }
+
+    // Fills the table from the year before the first sale through YEARS_AHEAD years from now, and
+    // rebuilds it when the fiscal settings changed since it was built. Returns the rows written.
+    static int populate(Connection conn) throws SQLException {
+        int startMonth = readStartMonth();
+        int[] pattern = readPattern();
+        String builtFor = startMonth + "/" + pattern[0] + pattern[1] + pattern[2];
+
+        int firstYear = LocalDate.now().getYear() - 1;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(from_day) FROM Sales")) {
+            if (rs.next() && rs.getObject(1) != null) {
+                firstYear = Math.min(firstYear, LocalDate.ofEpochDay(rs.getLong(1)).getYear() - 1);
+            }
+        }
+        int lastYear = LocalDate.now().getYear() + YEARS_AHEAD;
+        long firstDay = fiscalYearStart(firstYear, startMonth).toEpochDay();
+        long lastDay = fiscalYearStart(lastYear + 1, startMonth).toEpochDay() - 1;
+
+        boolean rebuild = !builtFor.equals(DatabaseHelper.getSetting(BUILT_FOR, null));
+        if (!rebuild) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM Calendar WHERE day BETWEEN ? AND ?")) {
+                pstmt.setLong(1, firstDay);
+                pstmt.setLong(2, lastDay);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next() && rs.getLong(1) == lastDay - firstDay + 1) return 0;
+                }
+            }
+        }
+
+        int written = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement insert = conn.prepareStatement("INSERT OR IGNORE INTO Calendar (day, date, day_of_week, " +
+                     "is_weekend, iso_year, iso_week, iso_week_key, month, fiscal_year, fiscal_quarter, fiscal_period, " +
+                     "fiscal_week, fiscal_year_key, fiscal_quarter_key, fiscal_period_key, fiscal_week_key, is_holiday, holiday) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            if (rebuild) stmt.execute("DELETE FROM Calendar");
+            for (int year = firstYear; year <= lastYear; year++) {
+                written += addFiscalYear(insert, year, startMonth, pattern);
+            }
+            try (PreparedStatement setting = conn.prepareStatement("INSERT OR REPLACE INTO Setting (key, value) VALUES (?, ?)")) {
+                setting.setString(1, BUILT_FOR);
+                setting.setString(2, builtFor);
+                setting.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return written;
+    }
+
+    // First day of fiscal year: the Monday nearest to the first of the start month.
+    public static LocalDate fiscalYearStart(int fiscalYear, int startMonth) {
+        LocalDate first = LocalDate.of(fiscalYear, startMonth, 1);
+        LocalDate monday = first.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return first.toEpochDay() - monday.toEpochDay() <= 3 ? monday : monday.plusWeeks(1);
+    }
+
+    private static int addFiscalYear(PreparedStatement insert, int fiscalYear, int startMonth, int[] pattern) throws SQLException {
+        LocalDate start = fiscalYearStart(fiscalYear, startMonth);
+        LocalDate next = fiscalYearStart(fiscalYear + 1, startMonth);
+
+        // Period of every week of the year; the 53rd week, if any, falls into the last period
+        int weeks = (int) ((next.toEpochDay() - start.toEpochDay()) / 7);
+        int[] periodOfWeek = new int[weeks];
+        int week = 0;
+        for (int period = 1; period <= 12; period++) {
+            for (int i = 0; i < pattern[(period - 1) % 3] && week < weeks; i++) {
+                periodOfWeek[week++] = period;
+            }
+        }
+        while (week < weeks) periodOfWeek[week++] = 12;
+
+        Map<LocalDate, String> holidays = new HashMap<>();
+        for (int year = start.getYear(); year <= next.getYear(); year++) {
+            holidays.putAll(getHolidays(year));
+        }
+
+        int written = 0;
+        for (LocalDate date = start; date.isBefore(next); date = date.plusDays(1)) {
+            int fiscalWeek = (int) ((date.toEpochDay() - start.toEpochDay()) / 7) + 1;
+            int fiscalPeriod = periodOfWeek[fiscalWeek - 1];
+            int fiscalQuarter = (fiscalPeriod - 1) / 3 + 1;
+            int isoYear = date.get(IsoFields.WEEK_BASED_YEAR);
+            int isoWeek = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            String holiday = holidays.get(date);
+
+            insert.setLong(1, date.toEpochDay());
+            insert.setString(2, date.toString());
+            insert.setInt(3, date.getDayOfWeek().getValue());
+            insert.setInt(4, date.getDayOfWeek().getValue() >= 6 ? 1 : 0);
+            insert.setInt(5, isoYear);
+            insert.setInt(6, isoWeek);
+            insert.setString(7, String.format("%d-W%02d", isoYear, isoWeek));
+            insert.setString(8, date.toString().substring(0, 7));
+            insert.setInt(9, fiscalYear);
+            insert.setInt(10, fiscalQuarter);
+            insert.setInt(11, fiscalPeriod);
+            insert.setInt(12, fiscalWeek);
+            insert.setString(13, "FY" + fiscalYear);
+            insert.setString(14, "FY" + fiscalYear + "-Q" + fiscalQuarter);
+            insert.setString(15, String.format("FY%d-P%02d", fiscalYear, fiscalPeriod));
+            insert.setString(16, String.format("FY%d-W%02d", fiscalYear, fiscalWeek));
+            insert.setInt(17, holiday == null ? 0 : 1);
+            insert.setString(18, holiday);
+            insert.addBatch();
+            written++;
+        }
+        insert.executeBatch();
+        return written;
+    }
+
+    // US holidays that move store traffic.
+    static Map<LocalDate, String> getHolidays(int year) {
+        Map<LocalDate, String> holidays = new HashMap<>();
+        holidays.put(LocalDate.of(year, 1, 1), "New Year's Day");
+        holidays.put(nthWeekday(year, Month.JANUARY, DayOfWeek.MONDAY, 3), "Martin Luther King Jr. Day");
+        holidays.put(nthWeekday(year, Month.FEBRUARY, DayOfWeek.MONDAY, 3), "Presidents' Day");
+        holidays.put(easterSunday(year), "Easter Sunday");
+        holidays.put(LocalDate.of(year, 5, 31).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), "Memorial Day");
+        holidays.put(LocalDate.of(year, 6, 19), "Juneteenth");
+        holidays.put(LocalDate.of(year, 7, 4), "Independence Day");
+        holidays.put(nthWeekday(year, Month.SEPTEMBER, DayOfWeek.MONDAY, 1), "Labor Day");
+        holidays.put(LocalDate.of(year, 11, 11), "Veterans Day");
+        LocalDate thanksgiving = nthWeekday(year, Month.NOVEMBER, DayOfWeek.THURSDAY, 4);
+        holidays.put(thanksgiving, "Thanksgiving");
+        holidays.put(thanksgiving.plusDays(1), "Black Friday");
+        holidays.put(LocalDate.of(year, 12, 24), "Christmas Eve");
+        holidays.put(LocalDate.of(year, 12, 25), "Christmas Day");
+        holidays.put(LocalDate.of(year, 12, 31), "New Year's Eve");
+        return holidays;
+    }
+
+    private static LocalDate nthWeekday(int year, Month month, DayOfWeek dayOfWeek, int n) {
+        return LocalDate.of(year, month, 1).with(TemporalAdjusters.dayOfWeekInMonth(n, dayOfWeek));
+    }
+
+    // Anonymous Gregorian algorithm.
+    private static LocalDate easterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, month, day);
+    }
+
+    private static int readStartMonth() {
+        try {
+            int month = Integer.parseInt(DatabaseHelper.getSetting(START_MONTH, "1"));
+            return month >= 1 && month <= 12 ? month : 1;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static int[] readPattern() {
+        String value = DatabaseHelper.getSetting(PATTERN, "445");
+        if (value.matches("445|454|544")) {
+            return new int[]{value.charAt(0) - '0', value.charAt(1) - '0', value.charAt(2) - '0'};
+        }
+        return new int[]{4, 4, 5};
+    }
+}
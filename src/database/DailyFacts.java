@@ -0,0 +1,147 @@
+package database;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The SalesDaily fact table: every sale expanded into one row per day of its from_day..to_day
+// window. Quantity and revenue (in cents) are split with the largest remainder method, so the
+// daily values are integers that add up exactly to the sale. Day, week, month or fiscal buckets
+// are then plain range sums over the day index instead of being re-split at query time.
+public class DailyFacts {
+    public static final String INSERT = "INSERT INTO %s (sale_id, day, item_number, store_id, quantity, sales_cents) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    static String createTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "sale_id INTEGER, " +
+                "day INTEGER, " +
+                "item_number INTEGER, " +
+                "store_id INTEGER, " +
+                "quantity INTEGER, " +
+                "sales_cents INTEGER, " +
+                "PRIMARY KEY (sale_id, day)" +
+                ")";
+    }
+
+    static void createIndexes(Statement stmt, String schema) throws SQLException {
+        String prefix = schema == null ? "" : schema + ".";
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + prefix + "idx_sales_daily_day ON SalesDaily(day)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + prefix + "idx_sales_daily_item ON SalesDaily(item_number, day)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + prefix + "idx_sales_daily_store ON SalesDaily(store_id, day)");
+    }
+
+    // Splits total into parts proportional to weights that sum exactly to total. Each part gets the
+    // floor of its exact share and the leftover units go to the largest fractional remainders,
+    // earlier parts first on ties. All-zero weights split evenly.
+    public static long[] distribute(long total, long[] weights) {
+        int n = weights.length;
+        long[] parts = new long[n];
+        if (n == 0) return parts;
+
+        long weightSum = 0;
+        for (long weight : weights) weightSum += weight;
+        if (weightSum == 0) {
+            long[] even = new long[n];
+            Arrays.fill(even, 1);
+            return distribute(total, even);
+        }
+
+        long sign = total < 0 ? -1 : 1;
+        long absTotal = Math.abs(total);
+        long assigned = 0;
+        long[] remainders = new long[n];
+        for (int i = 0; i < n; i++) {
+            // absTotal * weight can overflow for extreme values, so split the product
+            long whole = absTotal / weightSum * weights[i];
+            long rest = absTotal % weightSum * weights[i];
+            parts[i] = whole + rest / weightSum;
+            remainders[i] = rest % weightSum;
+            assigned += parts[i];
+        }
+
+        long leftover = absTotal - assigned;
+        while (leftover > 0) {
+            int best = 0;
+            for (int i = 1; i < n; i++) {
+                if (remainders[i] > remainders[best]) best = i;
+            }
+            parts[best]++;
+            remainders[best] = -1;
+            leftover--;
+        }
+
+        for (int i = 0; i < n; i++) parts[i] *= sign;
+        return parts;
+    }
+
+    // Daily quantities of a sale spread evenly over days.
+    public static long[] splitQuantity(int quantity, int days) {
+        long[] equal = new long[Math.max(1, days)];
+        Arrays.fill(equal, 1);
+        return distribute(quantity, equal);
+    }
+
+    // Daily revenue in cents of a sale, in proportion to its daily quantities.
+    public static long[] splitCents(long[] quantities, int quantity, double price) {
+        long[] weights = new long[quantities.length];
+        for (int i = 0; i < quantities.length; i++) weights[i] = Math.abs(quantities[i]);
+        return distribute(Math.round(quantity * price * 100), weights);
+    }
+
+    // Adds the daily rows of one sale through a prepared INSERT (see INSERT) as a batch and returns
+    // the daily quantities.
+    public static long[] addSale(PreparedStatement insert, long saleId, int itemNumber, Integer storeId,
+                               int fromDay, int toDay, int quantity, double price) throws SQLException {
+        int days = Math.max(1, toDay - fromDay + 1);
+        long[] quantities = splitQuantity(quantity, days);
+        long[] cents = splitCents(quantities, quantity, price);
+
+        for (int i = 0; i < days; i++) {
+            insert.setLong(1, saleId);
+            insert.setInt(2, fromDay + i);
+            insert.setInt(3, itemNumber);
+            insert.setObject(4, storeId);
+            insert.setLong(5, quantities[i]);
+            insert.setLong(6, cents[i]);
+            insert.addBatch();
+        }
+        return quantities;
+    }
+
+    // Expands every sale in salesTable that has no rows in dailyTable yet, in one transaction.
+    // Returns the number of sales expanded.
+    static int backfill(Connection conn, String salesTable, String dailyTable) throws SQLException {
+        List<Object[]> pending = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT s.id, s.item_number, s.store_id, s.from_day, s.to_day, s.quantity, s.price " +
+                     "FROM " + salesTable + " s WHERE s.from_day IS NOT NULL " +
+                     "AND NOT EXISTS (SELECT 1 FROM " + dailyTable + " d WHERE d.sale_id = s.id)")) {
+            while (rs.next()) {
+                int storeId = rs.getInt(3);
+                Integer store = rs.wasNull() ? null : storeId;
+                pending.add(new Object[]{rs.getLong(1), rs.getInt(2), store,
+                        rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getDouble(7)});
+            }
+        }
+        if (pending.isEmpty()) return 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement(String.format(INSERT, dailyTable))) {
+            for (Object[] sale : pending) {
+                addSale(insert, (Long) sale[0], (Integer) sale[1], (Integer) sale[2],
+                        (Integer) sale[3], (Integer) sale[4], (Integer) sale[5], (Double) sale[6]);
+            }
+            insert.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return pending.size();
+    }
+}
@@ -5,13 +5,21 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.sqlite.SQLiteConfig;
+
 public class DatabaseHelper {
     private static final String DB_FOLDER = System.getProperty("user.home") + "/IdeaProjects/Scottys/db/";
     private static final String DB_PATH = DB_FOLDER + "product_database.db";
 
+    public static File getDatabaseFolder() {
+        return new File(DB_FOLDER);
+    }
+
     public static void initializeDatabase() {
         File dbFile = new File(DB_PATH);
         if (!dbFile.exists()) {
@@ -35,7 +43,17 @@ public class DatabaseHelper {
         return conn;
     }
 
+    // Read-only connection for ReadConnectionPool; waits instead of failing while a writer holds a lock.
+    static Connection connectReadOnly() throws SQLException {
+        initializeDatabase();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(5000);
+        return DriverManager.getConnection("jdbc:sqlite:" + DB_PATH, config.toProperties());
+    }
+
     public static void createTables() {
+        enableWriteAheadLog();
         try (Connection conn = connect();
              Statement stmt = conn.createStatement()) {
 
@@ -50,6 +68,18 @@ public class DatabaseHelper {
             createProductTable();
             createSalesTable();
             createStoreTable();
+            createSettingTable();
+            dropSalesMonthlyTable();
+            migrateProductCategoryIds();
+            migrateSalesStoreIds();
+            migrateSalesDays();
+            createSalesDailyTable();
+            createCalendarTable();
+            createVelocityTable();
+            createAnomalyTables();
+            createSketchTable();
+            createForecastTable();
+            ShardManager.upgradeShards();
 
         } catch (SQLException e) {
             System.err.println("Error resetting database: " + e.getMessage());
@@ -83,6 +113,7 @@ public class DatabaseHelper {
                 "subcategory TEXT, " +
                 "price REAL, " +
                 "rec_status TEXT DEFAULT 'Active', " +
+                "category_id INTEGER REFERENCES Category(id), " +
                 "FOREIGN KEY (category) REFERENCES Category(category)" +
                 ")";
         try (Connection conn = connect();
@@ -103,6 +134,9 @@ public class DatabaseHelper {
                 "from_date DATE, " +
                 "to_date DATE, " +
                 "store TEXT, " +
+                "store_id INTEGER REFERENCES Store(id), " +
+                "from_day INTEGER, " +
+                "to_day INTEGER, " +
                 "FOREIGN KEY (item_number) REFERENCES Product(item_number)" +
                 ")";
         try (Connection conn = connect();
@@ -113,6 +147,51 @@ public class DatabaseHelper {
         }
     }
 
+    // Earlier versions kept monthly totals of archived sales here; the shards keep the daily facts of
+    // their sales instead.
+    private static void dropSalesMonthlyTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS SalesMonthly");
+        } catch (SQLException e) {
+            System.err.println("Error dropping SalesMonthly table: " + e.getMessage());
+        }
+    }
+
+    private static void createSettingTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS Setting (key TEXT PRIMARY KEY, value TEXT)";
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            System.err.println("Error creating Setting table: " + e.getMessage());
+        }
+    }
+
+    public static String getSetting(String key, String defaultValue) {
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT value FROM Setting WHERE key = ?")) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) return rs.getString(1);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading setting " + key + ": " + e.getMessage());
+        }
+        return defaultValue;
+    }
+
+    public static void setSetting(String key, String value) {
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement("INSERT OR REPLACE INTO Setting (key, value) VALUES (?, ?)")) {
+            pstmt.setString(1, key);
+            pstmt.setString(2, value);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error saving setting " + key + ": " + e.getMessage());
+        }
+    }
+
     private static void createCategoryTable() {
         String sql = "CREATE TABLE IF NOT EXISTS Category (" +
                 "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
@@ -127,4 +206,207 @@ public class DatabaseHelper {
             System.err.println("Error creating Category table: " + e.getMessage());
         }
     }
+
+    // Products reference Category by integer id. Older databases only have the category and
+    // subcategory text columns, so add category_id, create any missing Category rows and fill it in.
+    private static void migrateProductCategoryIds() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "Product", "category_id")) {
+                stmt.execute("ALTER TABLE Product ADD COLUMN category_id INTEGER REFERENCES Category(id)");
+            }
+            conn.setAutoCommit(false);
+            stmt.executeUpdate("INSERT OR IGNORE INTO Category (category, subcategory) " +
+                    "SELECT DISTINCT category, COALESCE(subcategory, '') FROM Product " +
+                    "WHERE category_id IS NULL AND category IS NOT NULL");
+            int updated = stmt.executeUpdate("UPDATE Product SET category_id = (" +
+                    "SELECT c.id FROM Category c WHERE c.category = Product.category " +
+                    "AND c.subcategory = COALESCE(Product.subcategory, '')) " +
+                    "WHERE category_id IS NULL AND category IS NOT NULL");
+            conn.commit();
+            conn.setAutoCommit(true);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_product_category_id ON Product(category_id)");
+            if (updated > 0) {
+                System.out.println("Linked " + updated + " products to Category ids.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error migrating product categories: " + e.getMessage());
+        }
+    }
+
+    // Sales reference Store by id. Older databases only have the free-text store column, so add
+    // store_id, create a Store row for every store name that has none and fill it in.
+    private static void migrateSalesStoreIds() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "Sales", "store_id")) {
+                stmt.execute("ALTER TABLE Sales ADD COLUMN store_id INTEGER REFERENCES Store(id)");
+            }
+            conn.setAutoCommit(false);
+            stmt.executeUpdate("INSERT INTO Store (store_name, location) " +
+                    "SELECT DISTINCT s.store, 'Unknown' FROM Sales s " +
+                    "WHERE s.store_id IS NULL AND s.store IS NOT NULL AND s.store <> '' " +
+                    "AND NOT EXISTS (SELECT 1 FROM Store st WHERE st.store_name = s.store)");
+            int updated = stmt.executeUpdate("UPDATE Sales SET store_id = (" +
+                    "SELECT MIN(st.id) FROM Store st WHERE st.store_name = Sales.store) " +
+                    "WHERE store_id IS NULL AND store IS NOT NULL AND store <> ''");
+            conn.commit();
+            conn.setAutoCommit(true);
+            if (updated > 0) {
+                System.out.println("Linked " + updated + " sales to Store ids.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error migrating sales stores: " + e.getMessage());
+        }
+    }
+
+    // WAL lets the pooled readers run alongside each other and alongside writes. The mode is stored
+    // in the database file, so this only has an effect the first time.
+    private static void enableWriteAheadLog() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode=WAL")) {
+            if (rs.next() && !"wal".equalsIgnoreCase(rs.getString(1))) {
+                System.err.println("Could not enable WAL mode, journal mode is " + rs.getString(1));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error enabling WAL mode: " + e.getMessage());
+        }
+    }
+
+    // Sales carry their dates as epoch days too (from_day, to_day), which the interval overlap
+    // queries in SalesWindow run on.
+    private static void migrateSalesDays() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "Sales", "from_day")) {
+                stmt.execute("ALTER TABLE Sales ADD COLUMN from_day INTEGER");
+                stmt.execute("ALTER TABLE Sales ADD COLUMN to_day INTEGER");
+            }
+            int updated = stmt.executeUpdate("UPDATE Sales SET " +
+                    "from_day = " + epochDay("from_date") + ", to_day = " + epochDay("to_date") + " " +
+                    "WHERE from_day IS NULL AND from_date IS NOT NULL");
+            stmt.execute("DROP INDEX IF EXISTS idx_sales_store_id");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_sales_from_day ON Sales(from_day)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_sales_store_day ON Sales(store_id, from_day)");
+            if (updated > 0) {
+                SalesWindow.recordSpan(conn, SalesWindow.measureSpan(conn, "Sales"));
+                System.out.println("Added day ranges to " + updated + " sales.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error migrating sales days: " + e.getMessage());
+        }
+    }
+
+    // Per-day facts for every live sale; existing sales are expanded once when the table is new.
+    private static void createSalesDailyTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(DailyFacts.createTableSql("SalesDaily"));
+            DailyFacts.createIndexes(stmt, null);
+            int expanded = DailyFacts.backfill(conn, "Sales", "SalesDaily");
+            if (expanded > 0) {
+                System.out.println("Expanded " + expanded + " sales into daily facts.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating SalesDaily table: " + e.getMessage());
+        }
+    }
+
+    private static void createCalendarTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            CalendarDimension.createTable(stmt);
+            int written = CalendarDimension.populate(conn);
+            if (written > 0) {
+                System.out.println("Calendar filled with " + written + " days.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating Calendar table: " + e.getMessage());
+        }
+    }
+
+    // Velocity rings are built from the daily facts once, when the table is new or empty.
+    private static void createVelocityTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            VelocityTracker.createTable(stmt);
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM SalesVelocity)")) {
+                if (rs.next() && rs.getInt(1) == 1) return;
+            }
+            int rings = VelocityTracker.rebuild(conn);
+            if (rings > 0) {
+                System.out.println("Built sales velocity for " + rings + " items and stores.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating SalesVelocity table: " + e.getMessage());
+        }
+    }
+
+    // Detector state is warmed up from the sales history once, when the state table is new or empty.
+    private static void createAnomalyTables() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            AnomalyDetector.createTable(stmt);
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM SalesAnomalyState)")) {
+                if (rs.next() && rs.getInt(1) == 1) return;
+            }
+            int states = AnomalyDetector.rebuild(conn);
+            if (states > 0) {
+                System.out.println("Built anomaly statistics for " + states + " items and stores.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating anomaly tables: " + e.getMessage());
+        }
+    }
+
+    // Day sketches are built from the daily facts once, when the table is new or empty.
+    private static void createSketchTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            SalesSketches.createTable(stmt);
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM SalesSketch)")) {
+                if (rs.next() && rs.getInt(1) == 1) return;
+            }
+            int days = SalesSketches.rebuild(conn);
+            if (days > 0) {
+                System.out.println("Built sales sketches for " + days + " days and stores.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating SalesSketch table: " + e.getMessage());
+        }
+    }
+
+    // Forecasts are fitted for every item once, when the table is new or empty.
+    private static void createForecastTable() {
+        try (Connection conn = connect();
+             Statement stmt = conn.createStatement()) {
+            DemandForecast.createTable(stmt);
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM SalesForecast)")) {
+                if (rs.next() && rs.getInt(1) == 1) return;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error creating SalesForecast table: " + e.getMessage());
+            return;
+        }
+        int models = DemandForecast.refit(null);
+        if (models > 0) {
+            System.out.println("Fitted demand forecasts for " + models + " items.");
+        }
+    }
+
+    // SQL for the local-time epoch day of a date column stored by setDate (epoch milliseconds).
+    static String epochDay(String column) {
+        return "CAST(julianday(date(" + column + " / 1000, 'unixepoch', 'localtime')) - 2440587.5 AS INTEGER)";
+    }
+
+    public static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
 }
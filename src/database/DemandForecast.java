@@ -0,0 +1,330 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Daily unit forecasts per item (all stores together), fitted on the SalesDaily totals and cached
+// in the SalesForecast table. Each item gets either a damped additive Holt-Winters model with a
+// weekly season or a seasonal naive model (last week repeated), whichever had the lower one-step
+// error over its history. Fits run in parallel across items. Imports roll the cached models forward
+// through the new days with the fitted parameters; an item is refitted only when an import changed
+// days it had already seen or REFIT_DAYS have passed since its last fit.
+public class DemandForecast {
+    public static final String HOLT_WINTERS = "holt_winters";
+    public static final String SEASONAL_NAIVE = "seasonal_naive";
+    public static final int SEASON = 7;
+
+    private static final int FIT_DAYS = 365;
+    // Longer item lists are read or fitted as "every item" instead of being bound one by one
+    private static final int MAX_LISTED = 900;
+    private static final int REFIT_DAYS = 28;
+    private static final double PHI = 0.98;
+    private static final double[] ALPHAS = {0.05, 0.1, 0.2, 0.3, 0.5};
+    private static final double[] BETAS = {0.0, 0.05, 0.1};
+    private static final double[] GAMMAS = {0.05, 0.1, 0.3};
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS SalesForecast (" +
+                "item_number INTEGER PRIMARY KEY, " +
+                "model TEXT, " +
+                "alpha REAL, " +
+                "beta REAL, " +
+                "gamma REAL, " +
+                "level REAL, " +
+                "trend REAL, " +
+                "season BLOB, " +
+                "end_day INTEGER, " +
+                "fit_day INTEGER, " +
+                "mae REAL" +
+                ")");
+    }
+
+    // A fitted model and its state after end_day. Season slot day % SEASON belongs to that weekday.
+    public static class Model {
+        private final String type;
+        private final double alpha;
+        private final double beta;
+        private final double gamma;
+        private double level;
+        private double trend;
+        private final double[] season;
+        private int endDay;
+        private final int fitDay;
+        private final double mae;
+
+        private Model(String type, double alpha, double beta, double gamma, double level, double trend,
+                      double[] season, int endDay, int fitDay, double mae) {
+            this.type = type;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.gamma = gamma;
+            this.level = level;
+            this.trend = trend;
+            this.season = season;
+            this.endDay = endDay;
+            this.fitDay = fitDay;
+            this.mae = mae;
+        }
+
+        // Feeds the quantity of day endDay + 1.
+        void update(double quantity) {
+            int slot = Math.floorMod(++endDay, SEASON);
+            if (SEASONAL_NAIVE.equals(type)) {
+                season[slot] = quantity;
+                return;
+            }
+            double previous = level;
+            level = alpha * (quantity - season[slot]) + (1 - alpha) * (level + PHI * trend);
+            trend = beta * (level - previous) + (1 - beta) * PHI * trend;
+            season[slot] = gamma * (quantity - level) + (1 - gamma) * season[slot];
+        }
+
+        // Days without sales up to day count as zero.
+        public void advanceTo(int day) {
+            while (endDay < day) update(0);
+        }
+
+        // Forecast for day endDay + h (h >= 1), never negative.
+        public double forecast(int h) {
+            int slot = Math.floorMod(endDay + h, SEASON);
+            if (SEASONAL_NAIVE.equals(type)) return Math.max(0, season[slot]);
+            double damped = 0;
+            double factor = 1;
+            for (int i = 1; i <= h; i++) {
+                factor *= PHI;
+                damped += factor;
+            }
+            return Math.max(0, level + damped * trend + season[slot]);
+        }
+
+        // Total forecast for the days after endDay through endDay + days.
+        public double forecastTotal(int days) {
+            double total = 0;
+            for (int h = 1; h <= days; h++) total += forecast(h);
+            return total;
+        }
+
+        public String getType() { return type; }
+        public int getEndDay() { return endDay; }
+        public double getMae() { return mae; }
+    }
+
+    // Fits one item's daily series, where series[i] is the quantity of day firstDay + i.
+    static Model fit(double[] series, int firstDay, int fitDay) {
+        int n = series.length;
+        Model naive = fitSeasonalNaive(series, firstDay, fitDay);
+        if (n < 2 * SEASON + 1) return naive;
+
+        Model best = null;
+        for (double alpha : ALPHAS) {
+            for (double beta : BETAS) {
+                for (double gamma : GAMMAS) {
+                    Model model = runHoltWinters(series, firstDay, fitDay, alpha, beta, gamma);
+                    if (best == null || model.mae < best.mae) best = model;
+                }
+            }
+        }
+        return best.mae < naive.mae ? best : naive;
+    }
+
+    // Initialised from the first two weeks; the error is measured from the third week on, where the
+    // seasonal naive error is measured too, so the two are comparable.
+    private static Model runHoltWinters(double[] series, int firstDay, int fitDay, double alpha, double beta, double gamma) {
+        double first = 0;
+        double second = 0;
+        for (int i = 0; i < SEASON; i++) {
+            first += series[i];
+            second += series[i + SEASON];
+        }
+        first /= SEASON;
+        second /= SEASON;
+        double[] season = new double[SEASON];
+        for (int i = 0; i < SEASON; i++) {
+            season[Math.floorMod(firstDay + i, SEASON)] = (series[i] + series[i + SEASON]) / 2 - (first + second) / 2;
+        }
+        Model model = new Model(HOLT_WINTERS, alpha, beta, gamma, second, (second - first) / SEASON,
+                season, firstDay + 2 * SEASON - 1, fitDay, 0);
+        double error = 0;
+        for (int i = 2 * SEASON; i < series.length; i++) {
+            error += Math.abs(series[i] - model.forecast(1));
+            model.update(series[i]);
+        }
+        int scored = series.length - 2 * SEASON;
+        return new Model(HOLT_WINTERS, alpha, beta, gamma, model.level, model.trend, model.season,
+                model.endDay, fitDay, scored > 0 ? error / scored : Double.MAX_VALUE);
+    }
+
+    private static Model fitSeasonalNaive(double[] series, int firstDay, int fitDay) {
+        double mean = Arrays.stream(series).average().orElse(0);
+        double[] season = new double[SEASON];
+        Arrays.fill(season, mean);
+        double error = 0;
+        int scored = 0;
+        for (int i = 0; i < series.length; i++) {
+            if (i >= 2 * SEASON) {
+                error += Math.abs(series[i] - series[i - SEASON]);
+                scored++;
+            }
+            season[Math.floorMod(firstDay + i, SEASON)] = series[i];
+        }
+        return new Model(SEASONAL_NAIVE, 0, 0, 0, 0, 0, season, firstDay + series.length - 1, fitDay,
+                scored > 0 ? error / scored : Double.MAX_VALUE);
+    }
+
+    // New daily quantities of an import. apply rolls the cached models of the imported items forward
+    // on the importing connection and returns the items that need a refit after the import commits.
+    public static class Batch {
+        private final Map<Integer, Map<Integer, Long>> days = new HashMap<>();
+
+        public void add(int itemNumber, int fromDay, long[] dailyQuantities) {
+            Map<Integer, Long> byDay = days.computeIfAbsent(itemNumber, k -> new HashMap<>());
+            for (int i = 0; i < dailyQuantities.length; i++) {
+                byDay.merge(fromDay + i, dailyQuantities[i], Long::sum);
+            }
+        }
+
+        public Set<Integer> apply(Connection conn) throws SQLException {
+            Set<Integer> refit = new HashSet<>();
+            if (days.isEmpty()) return refit;
+            Map<Integer, Model> models = read(conn, days.keySet());
+            try (PreparedStatement upsert = conn.prepareStatement(UPSERT)) {
+                for (Map.Entry<Integer, Map<Integer, Long>> entry : days.entrySet()) {
+                    Model model = models.get(entry.getKey());
+                    TreeMap<Integer, Long> byDay = new TreeMap<>(entry.getValue());
+                    if (model == null || byDay.firstKey() <= model.endDay || byDay.lastKey() - model.fitDay >= REFIT_DAYS) {
+                        refit.add(entry.getKey());
+                        continue;
+                    }
+                    for (Map.Entry<Integer, Long> day : byDay.entrySet()) {
+                        model.advanceTo(day.getKey() - 1);
+                        model.update(day.getValue());
+                    }
+                    save(upsert, entry.getKey(), model);
+                }
+                upsert.executeBatch();
+            }
+            days.clear();
+            return refit;
+        }
+    }
+
+    // Refits the given items (every item with sales when null) from their last FIT_DAYS of daily
+    // totals, in parallel, and stores the models. Returns the number of models written.
+    public static int refit(Collection<Integer> items) {
+        if (items != null && items.isEmpty()) return 0;
+        if (items != null && items.size() > MAX_LISTED) items = null;
+        try (Connection conn = DatabaseHelper.connect()) {
+            Integer lastDay = null;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(day) FROM SalesDaily")) {
+                if (rs.next() && rs.getObject(1) != null) lastDay = rs.getInt(1);
+            }
+            if (lastDay == null) return 0;
+            int end = lastDay;
+            int start = end - FIT_DAYS + 1;
+
+            // One scan of the daily facts for every item being fitted
+            Map<Integer, double[]> series = new HashMap<>();
+            Map<Integer, Integer> firstDays = new HashMap<>();
+            String itemFilter = items == null ? "" :
+                    " AND item_number IN (" + String.join(",", Collections.nCopies(items.size(), "?")) + ")";
+            LocalDate from = LocalDate.ofEpochDay(start);
+            LocalDate to = LocalDate.ofEpochDay(end);
+            try (ShardManager.Reading reading = ShardManager.reading();
+                 PreparedStatement pstmt = ShardManager.prepare(conn, "SELECT item_number, day, SUM(quantity) FROM " +
+                    ShardManager.DAILY + " d WHERE day BETWEEN ? AND ?" + itemFilter + " GROUP BY item_number, day", from, to)) {
+                pstmt.setInt(1, start);
+                pstmt.setInt(2, end);
+                if (items != null) {
+                    int paramIndex = 3;
+                    for (Integer item : items) pstmt.setInt(paramIndex++, item);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int item = rs.getInt(1);
+                        int day = rs.getInt(2);
+                        series.computeIfAbsent(item, k -> new double[FIT_DAYS])[day - start] += rs.getLong(3);
+                        firstDays.merge(item, day, Math::min);
+                    }
+                }
+            } finally {
+                for (int year : ShardManager.plan(from, to)) ShardManager.detach(conn, year);
+            }
+
+            Map<Integer, Model> models = new ConcurrentHashMap<>();
+            series.entrySet().parallelStream().forEach(entry -> {
+                int firstDay = firstDays.get(entry.getKey());
+                double[] history = Arrays.copyOfRange(entry.getValue(), firstDay - start, FIT_DAYS);
+                models.put(entry.getKey(), fit(history, firstDay, end));
+            });
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsert = conn.prepareStatement(UPSERT)) {
+                for (Map.Entry<Integer, Model> entry : models.entrySet()) save(upsert, entry.getKey(), entry.getValue());
+                upsert.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return models.size();
+        } catch (SQLException e) {
+            System.err.println("Error fitting forecasts: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Cached models of the given items (every item when null).
+    public static Map<Integer, Model> read(Connection conn, Collection<Integer> items) throws SQLException {
+        Map<Integer, Model> models = new HashMap<>();
+        if (items != null && items.isEmpty()) return models;
+        boolean listed = items != null && items.size() <= MAX_LISTED;
+        String query = "SELECT item_number, model, alpha, beta, gamma, level, trend, season, end_day, fit_day, mae " +
+                "FROM SalesForecast" + (!listed ? "" :
+                " WHERE item_number IN (" + String.join(",", Collections.nCopies(items.size(), "?")) + ")");
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            if (listed) {
+                int paramIndex = 1;
+                for (Integer item : items) pstmt.setInt(paramIndex++, item);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (items != null && !listed && !items.contains(rs.getInt("item_number"))) continue;
+                    double[] season = new double[SEASON];
+                    ByteBuffer buffer = ByteBuffer.wrap(rs.getBytes("season"));
+                    for (int i = 0; i < SEASON; i++) season[i] = buffer.getDouble();
+                    models.put(rs.getInt("item_number"), new Model(rs.getString("model"), rs.getDouble("alpha"),
+                            rs.getDouble("beta"), rs.getDouble("gamma"), rs.getDouble("level"), rs.getDouble("trend"),
+                            season, rs.getInt("end_day"), rs.getInt("fit_day"), rs.getDouble("mae")));
+                }
+            }
+        }
+        return models;
+    }
+
+    private static final String UPSERT = "INSERT OR REPLACE INTO SalesForecast (item_number, model, alpha, beta, " +
+            "gamma, level, trend, season, end_day, fit_day, mae) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static void save(PreparedStatement upsert, int itemNumber, Model model) throws SQLException {
+        ByteBuffer season = ByteBuffer.allocate(SEASON * Double.BYTES);
+        for (double value : model.season) season.putDouble(value);
+        upsert.setInt(1, itemNumber);
+        upsert.setString(2, model.type);
+        upsert.setDouble(3, model.alpha);
+        upsert.setDouble(4, model.beta);
+        upsert.setDouble(5, model.gamma);
+        upsert.setDouble(6, model.level);
+        upsert.setDouble(7, model.trend);
+        upsert.setBytes(8, season.array());
+        upsert.setInt(9, model.endDay);
+        upsert.setInt(10, model.fitDay);
+        upsert.setDouble(11, model.mae);
+        upsert.addBatch();
+    }
+}
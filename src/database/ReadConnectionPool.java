@@ -0,0 +1,119 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// A small pool of read-only connections and worker threads, so independent aggregations (one per
+// store, shard, ...) can run side by side. The database runs in WAL mode, so these readers never
+// block the writer or each other.
+public class ReadConnectionPool {
+    private static final int SIZE = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private static final BlockingQueue<Connection> IDLE = new LinkedBlockingQueue<>();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(SIZE, r -> {
+        Thread thread = new Thread(r, "read-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static int opened = 0;
+
+    @FunctionalInterface
+    public interface ReadTask<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    // Runs the task on a pooled connection on the calling thread.
+    public static <T> T read(ReadTask<T> task) throws SQLException {
+        Connection conn = acquire();
+        try {
+            return task.run(conn);
+        } finally {
+            release(conn);
+        }
+    }
+
+    // Runs all tasks concurrently, each on its own pooled connection, and returns their results in
+    // task order. The first failure is rethrown once every task has finished.
+    public static <T> List<T> readAll(List<ReadTask<T>> tasks) throws SQLException {
+        if (tasks.size() == 1) {
+            List<T> single = new ArrayList<>(1);
+            single.add(read(tasks.get(0)));
+            return single;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (ReadTask<T> task : tasks) {
+            futures.add(WORKERS.submit(() -> read(task)));
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof SQLException sqlException
+                            ? sqlException : new SQLException(e.getCause().getMessage(), e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for query results", e);
+            }
+        }
+        if (failure != null) throw failure;
+        return results;
+    }
+
+    private static Connection acquire() throws SQLException {
+        Connection conn = IDLE.poll();
+        while (conn != null && conn.isClosed()) {
+            synchronized (ReadConnectionPool.class) { opened--; }
+            conn = IDLE.poll();
+        }
+        if (conn != null) return conn;
+
+        synchronized (ReadConnectionPool.class) {
+            if (opened < SIZE) {
+                conn = DatabaseHelper.connectReadOnly();
+                opened++;
+                return conn;
+            }
+        }
+        try {
+            return IDLE.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+    }
+
+    private static void release(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                synchronized (ReadConnectionPool.class) { opened--; }
+                return;
+            }
+        } catch (SQLException e) {
+            synchronized (ReadConnectionPool.class) { opened--; }
+            return;
+        }
+        IDLE.offer(conn);
+    }
+
+    // Closes idle connections, e.g. before the database file is replaced.
+    public static void closeIdle() {
+        Connection conn;
+        while ((conn = IDLE.poll()) != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing read connection: " + e.getMessage());
+            }
+            synchronized (ReadConnectionPool.class) { opened--; }
+        }
+    }
+}
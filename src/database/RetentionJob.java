@@ -0,0 +1,81 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps the live database small: sales older than the retention horizon (whole months, 13 by
+// default) are moved into the year shards together with their daily facts, and the live file is
+// then analyzed and vacuumed. Queries only open the archive when their range starts
+// before the horizon (see ShardManager.plan).
+public class RetentionJob {
+    public static final int DEFAULT_HORIZON_MONTHS = 13;
+    private static final String HORIZON_MONTHS = "retention_months";
+
+    // Held while sales are moved; BackupManager holds it for a whole snapshot.
+    static final ReentrantLock ARCHIVING = new ReentrantLock();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "retention");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public static int getHorizonMonths() {
+        try {
+            return Integer.parseInt(DatabaseHelper.getSetting(HORIZON_MONTHS, String.valueOf(DEFAULT_HORIZON_MONTHS)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_HORIZON_MONTHS;
+        }
+    }
+
+    public static void setHorizonMonths(int months) {
+        if (months < 1) throw new IllegalArgumentException("Retention horizon must be at least one month");
+        DatabaseHelper.setSetting(HORIZON_MONTHS, String.valueOf(months));
+    }
+
+    // First day kept in the live database.
+    public static LocalDate getCutoff(LocalDate today) {
+        return today.withDayOfMonth(1).minusMonths(getHorizonMonths());
+    }
+
+    public static int run() {
+        return run(LocalDate.now());
+    }
+
+    // Runs the job on the retention thread, so archiving and VACUUM don't hold up startup.
+    public static void start() {
+        EXECUTOR.execute(RetentionJob::run);
+    }
+
+    // Returns the number of sales archived.
+    public static int run(LocalDate today) {
+        int moved;
+        ARCHIVING.lock();
+        try {
+            moved = ShardManager.archiveBefore(getCutoff(today));
+        } finally {
+            ARCHIVING.unlock();
+        }
+        if (moved > 0) {
+            compact();
+        }
+        return moved;
+    }
+
+    private static void compact() {
+        ReadConnectionPool.closeIdle();
+        try (Connection conn = DatabaseHelper.connect();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+            stmt.execute("VACUUM");
+        } catch (SQLException e) {
+            System.err.println("Error compacting database: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package database;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Callback for consuming a query cursor one row at a time instead of collecting it into a list.
+@FunctionalInterface
+public interface RowHandler {
+    void handle(ResultSet rs) throws SQLException, IOException;
+}
@@ -0,0 +1,197 @@
+package database;
+
+import utils.CountMinSketch;
+import utils.HyperLogLog;
+import utils.TDigest;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Mergeable per-day summaries of SalesDaily, one SalesSketch row per day and store: exact quantity
+// and revenue sums, a HyperLogLog of the items sold, a count-min sketch of item quantities and
+// t-digests of unit price (weighted by units) and of daily quantity per sale. Any range is answered
+// by merging its day rows, which stay in the live database when sales are archived, so the cost
+// depends on the number of days and not on the number of sales.
+public class SalesSketches {
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS SalesSketch (" +
+                "day INTEGER, " +
+                "store_id INTEGER, " +
+                "quantity INTEGER, " +
+                "sales_cents INTEGER, " +
+                "items BLOB, " +
+                "frequencies BLOB, " +
+                "prices BLOB, " +
+                "quantities BLOB, " +
+                "PRIMARY KEY (day, store_id)" +
+                ")");
+    }
+
+    // The sketches of one day and store, or the merge of several.
+    public static class Sketch {
+        private long quantity;
+        private long salesCents;
+        private final HyperLogLog items;
+        private final CountMinSketch frequencies;
+        private final TDigest prices;
+        private final TDigest quantities;
+
+        public Sketch() {
+            this(0, 0, new HyperLogLog(), new CountMinSketch(), new TDigest(), new TDigest());
+        }
+
+        private Sketch(long quantity, long salesCents, HyperLogLog items, CountMinSketch frequencies,
+                       TDigest prices, TDigest quantities) {
+            this.quantity = quantity;
+            this.salesCents = salesCents;
+            this.items = items;
+            this.frequencies = frequencies;
+            this.prices = prices;
+            this.quantities = quantities;
+        }
+
+        // One SalesDaily row: a sale's quantity and revenue on one day.
+        void add(int itemNumber, long quantity, long cents) {
+            this.quantity += quantity;
+            this.salesCents += cents;
+            if (quantity == 0) return;
+            items.add(itemNumber);
+            frequencies.add(itemNumber, quantity);
+            prices.add(cents / 100.0 / quantity, Math.abs(quantity));
+            quantities.add(quantity, 1);
+        }
+
+        public void merge(Sketch other) {
+            quantity += other.quantity;
+            salesCents += other.salesCents;
+            items.merge(other.items);
+            frequencies.merge(other.frequencies);
+            prices.merge(other.prices);
+            quantities.merge(other.quantities);
+        }
+
+        public long getQuantity() { return quantity; }
+        public double getRevenue() { return salesCents / 100.0; }
+        public HyperLogLog getItems() { return items; }
+        public CountMinSketch getFrequencies() { return frequencies; }
+        public TDigest getPrices() { return prices; }
+        public TDigest getQuantities() { return quantities; }
+    }
+
+    // Daily rows collected during an import and merged into the stored sketches in one go, on the
+    // importing connection so the update is part of the import transaction.
+    public static class Batch {
+        private final Map<Long, Sketch> sketches = new HashMap<>();
+
+        public void add(int itemNumber, Integer storeId, int fromDay, long[] dailyQuantities, long[] dailyCents) {
+            for (int i = 0; i < dailyQuantities.length; i++) {
+                sketches.computeIfAbsent(key(fromDay + i, storeId), k -> new Sketch())
+                        .add(itemNumber, dailyQuantities[i], dailyCents[i]);
+            }
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            if (sketches.isEmpty()) return;
+            try (PreparedStatement select = conn.prepareStatement("SELECT quantity, sales_cents, items, frequencies, " +
+                    "prices, quantities FROM SalesSketch WHERE day = ? AND store_id = ?");
+                 PreparedStatement upsert = conn.prepareStatement(UPSERT)) {
+                for (Map.Entry<Long, Sketch> entry : sketches.entrySet()) {
+                    int day = (int) (entry.getKey() >> 32);
+                    int storeId = (int) entry.getKey().longValue();
+                    Sketch sketch = entry.getValue();
+                    select.setInt(1, day);
+                    select.setInt(2, storeId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        if (rs.next()) sketch.merge(read(rs));
+                    }
+                    save(upsert, day, storeId, sketch);
+                }
+                upsert.executeBatch();
+            }
+            sketches.clear();
+        }
+
+        private static long key(int day, Integer storeId) {
+            return ((long) day << 32) | ((storeId == null ? 0 : storeId) & 0xffffffffL);
+        }
+    }
+
+    private static final String UPSERT = "INSERT OR REPLACE INTO SalesSketch " +
+            "(day, store_id, quantity, sales_cents, items, frequencies, prices, quantities) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Merged sketch of [fromDate, toDate] for the given stores (all stores when empty).
+    public static Sketch read(Connection conn, LocalDate fromDate, LocalDate toDate, List<Integer> storeIds) throws SQLException {
+        String storeFilter = storeIds.isEmpty() ? "" :
+                " AND store_id IN (" + String.join(",", Collections.nCopies(storeIds.size(), "?")) + ")";
+        Sketch merged = new Sketch();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT quantity, sales_cents, items, frequencies, " +
+                "prices, quantities FROM SalesSketch WHERE day BETWEEN ? AND ?" + storeFilter)) {
+            pstmt.setLong(1, fromDate.toEpochDay());
+            pstmt.setLong(2, toDate.toEpochDay());
+            for (int i = 0; i < storeIds.size(); i++) pstmt.setInt(i + 3, storeIds.get(i));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) merged.merge(read(rs));
+            }
+        }
+        return merged;
+    }
+
+    // Builds every day sketch from the daily facts of the live database and all shards; used when
+    // the table is new.
+    static int rebuild(Connection conn) throws SQLException {
+        Batch batch = new Batch();
+        List<Integer> years = ShardManager.plan(null, null);
+        try (ShardManager.Reading reading = ShardManager.reading();
+             PreparedStatement pstmt = ShardManager.prepare(conn, "SELECT item_number, store_id, day, quantity, sales_cents " +
+                "FROM " + ShardManager.DAILY + " d", null, null);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int storeId = rs.getInt(2);
+                batch.add(rs.getInt(1), rs.wasNull() ? null : storeId, rs.getInt(3),
+                        new long[]{rs.getLong(4)}, new long[]{rs.getLong(5)});
+            }
+        } finally {
+            for (int year : years) ShardManager.detach(conn, year);
+        }
+        int days = batch.sketches.size();
+        if (days == 0) return 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            batch.apply(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return days;
+    }
+
+    private static Sketch read(ResultSet rs) throws SQLException {
+        return new Sketch(rs.getLong("quantity"), rs.getLong("sales_cents"),
+                HyperLogLog.fromBytes(rs.getBytes("items")),
+                CountMinSketch.fromBytes(rs.getBytes("frequencies")),
+                TDigest.fromBytes(rs.getBytes("prices")),
+                TDigest.fromBytes(rs.getBytes("quantities")));
+    }
+
+    private static void save(PreparedStatement upsert, int day, int storeId, Sketch sketch) throws SQLException {
+        upsert.setInt(1, day);
+        upsert.setInt(2, storeId);
+        upsert.setLong(3, sketch.quantity);
+        upsert.setLong(4, sketch.salesCents);
+        upsert.setBytes(5, sketch.items.toBytes());
+        upsert.setBytes(6, sketch.frequencies.toBytes());
+        upsert.setBytes(7, sketch.prices.toBytes());
+        upsert.setBytes(8, sketch.quantities.toBytes());
+        upsert.addBatch();
+    }
+}
@@ -0,0 +1,65 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+// Date window of the analytics queries. Every sale covers the epoch days from_day..to_day and is
+// spread over those days in SalesDaily (see DailyFacts), so a window [fromDay, toDay] over the daily
+// facts counts promotions straddling the window edges by their days inside it.
+//
+// Queries start with CTE and filter on "d.day BETWEEN w.from_day AND w.to_day"; bind() fills the
+// window parameters, which come first. The longest sale span is kept as a setting: a sale with days
+// in the window started at most that many days before it, which bounds the shards a range needs
+// (see ShardManager.plan).
+public class SalesWindow {
+    public static final String CTE = "WITH w (from_day, to_day) AS (SELECT ?, ?) ";
+
+    private static final String MAX_SPAN = "max_sale_span_days";
+    private static volatile Integer maxSpan;
+
+    // Binds the window parameters and returns the next parameter index.
+    public static int bind(PreparedStatement pstmt, LocalDate fromDate, LocalDate toDate) throws SQLException {
+        pstmt.setInt(1, (int) fromDate.toEpochDay());
+        pstmt.setInt(2, (int) toDate.toEpochDay());
+        return 3;
+    }
+
+    // Earliest from_date a sale overlapping a window starting at fromDate can have.
+    public static LocalDate earliestStart(LocalDate fromDate) {
+        return fromDate.minusDays(getMaxSpan());
+    }
+
+    public static int getMaxSpan() {
+        if (maxSpan == null) {
+            try {
+                maxSpan = Integer.parseInt(DatabaseHelper.getSetting(MAX_SPAN, "0"));
+            } catch (NumberFormatException e) {
+                maxSpan = 0;
+            }
+        }
+        return maxSpan;
+    }
+
+    // Widens the stored span after an import, on the importing connection so it joins its transaction.
+    public static void recordSpan(Connection conn, int spanDays) throws SQLException {
+        if (spanDays <= getMaxSpan()) return;
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT OR REPLACE INTO Setting (key, value) VALUES (?, ?)")) {
+            pstmt.setString(1, MAX_SPAN);
+            pstmt.setString(2, String.valueOf(spanDays));
+            pstmt.executeUpdate();
+        }
+        maxSpan = spanDays;
+    }
+
+    // Span of the longest sale in the given sales table, for migrations.
+    static int measureSpan(Connection conn, String sales) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(to_day - from_day) FROM " + sales)) {
+            return rs.next() ? Math.max(0, rs.getInt(1)) : 0;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package database;
+
+import java.io.File;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Splits sales history into one database file per year. The main database is the hot shard: it
+// keeps the dimension tables and recent sales, while older sales are moved to
+// shards/sales_<year>.db (see RetentionJob). Sales are filed by the year of their from_date.
+//
+// Queries refer to the sales table as SALES and to the SalesDaily fact table as DAILY. prepare()
+// attaches the shards a date range needs and reads them together with the hot shard; attach() gives
+// a single shard for per-shard fan-out. A shard keeps the daily rows of the sales it holds.
+//
+// Moving sales between files takes the shard lock exclusively. Anything that reads across files
+// holds it shared (see reading()), so it sees every sale in exactly one of them: SQLite does not
+// commit attached files atomically while the main database is in WAL mode, and fan-out reads use a
+// separate connection per shard.
+public class ShardManager {
+    public static final String SALES = "{sales}";
+    public static final String HOT_SALES = "main.Sales";
+    public static final String DAILY = "{daily}";
+    public static final String HOT_DAILY = "main.SalesDaily";
+
+    private static final String ARCHIVED_BEFORE = "archived_before";
+    private static volatile LocalDate archivedBefore;
+    private static final String COLUMNS = "id, item_number, quantity, price, from_date, to_date, store, store_id, from_day, to_day";
+    private static final String DAILY_COLUMNS = "sale_id, day, item_number, store_id, quantity, sales_cents";
+    // SQLITE_MAX_ATTACHED in the bundled SQLite
+    private static final int MAX_ATTACHED = 10;
+    private static final String COPIED_SALES = "temp.shard_sales";
+    private static final String COPIED_DAILY = "temp.shard_daily";
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+
+    // Shared hold on the shard lock, released on close. Taken before planning and held until the
+    // last row has been read; on the thread that closes it.
+    public static final class Reading implements AutoCloseable {
+        private Reading() {
+            LOCK.readLock().lock();
+        }
+
+        @Override
+        public void close() {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    public static Reading reading() {
+        return new Reading();
+    }
+
+    public static File getShardFolder() {
+        return new File(DatabaseHelper.getDatabaseFolder(), "shards");
+    }
+
+    public static File getShardFile(int year) {
+        return new File(getShardFolder(), "sales_" + year + ".db");
+    }
+
+    // Years that have a shard file, ascending.
+    public static List<Integer> getShardYears() {
+        TreeSet<Integer> years = new TreeSet<>();
+        File[] files = getShardFolder().listFiles((dir, name) -> name.matches("sales_\\d{4}\\.db"));
+        if (files != null) {
+            for (File file : files) {
+                years.add(Integer.parseInt(file.getName().substring(6, 10)));
+            }
+        }
+        return new ArrayList<>(years);
+    }
+
+    // Shards a query over [fromDate, toDate] has to read; null dates mean all of them. Sales that
+    // started up to the longest sale span before fromDate can still overlap the range, so the plan
+    // starts there. A range that starts after the archive boundary needs no shards. The hot shard is
+    // always read as well, since it can hold late-imported rows of archived periods.
+    public static List<Integer> plan(LocalDate fromDate, LocalDate toDate) {
+        List<Integer> years = new ArrayList<>();
+        if (fromDate != null) fromDate = SalesWindow.earliestStart(fromDate);
+        LocalDate archived = getArchivedBefore();
+        if (fromDate != null && archived != null && !fromDate.isBefore(archived)) return years;
+        for (int year : getShardYears()) {
+            if ((fromDate == null || year >= fromDate.getYear()) && (toDate == null || year <= toDate.getYear())) {
+                years.add(year);
+            }
+        }
+        return years;
+    }
+
+    // Prepares sql with SALES and DAILY standing for the hot shard plus every shard the range reaches.
+    // SQLite attaches at most MAX_ATTACHED databases to a connection, so when the range reaches more
+    // shards than that, the oldest are first copied into temp tables a batch at a time and only the
+    // newest MAX_ATTACHED stay attached.
+    public static PreparedStatement prepare(Connection conn, String sql, LocalDate fromDate, LocalDate toDate) throws SQLException {
+        List<Integer> years = plan(fromDate, toDate);
+        if (years.isEmpty()) {
+            return conn.prepareStatement(sql.replace(SALES, HOT_SALES).replace(DAILY, HOT_DAILY));
+        }
+        StringBuilder sales = new StringBuilder("(SELECT ").append(COLUMNS).append(" FROM ").append(HOT_SALES);
+        StringBuilder daily = new StringBuilder("(SELECT ").append(DAILY_COLUMNS).append(" FROM ").append(HOT_DAILY);
+        int copied = Math.max(0, years.size() - MAX_ATTACHED);
+        if (copied > 0) {
+            copyShards(conn, years.subList(0, copied));
+            sales.append(" UNION ALL SELECT ").append(COLUMNS).append(" FROM ").append(COPIED_SALES);
+            daily.append(" UNION ALL SELECT ").append(DAILY_COLUMNS).append(" FROM ").append(COPIED_DAILY);
+        }
+        for (int year : years.subList(copied, years.size())) {
+            sales.append(" UNION ALL SELECT ").append(COLUMNS).append(" FROM ").append(attach(conn, year));
+            daily.append(" UNION ALL SELECT ").append(DAILY_COLUMNS).append(" FROM ").append(alias(year)).append(".SalesDaily");
+        }
+        sales.append(")");
+        daily.append(")");
+        return conn.prepareStatement(sql.replace(SALES, sales).replace(DAILY, daily));
+    }
+
+    // Replaces the connection's temp copies with the sales and daily rows of years, attaching at
+    // most MAX_ATTACHED of them at a time.
+    private static void copyShards(Connection conn, List<Integer> years) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            dropCopies(stmt);
+            stmt.execute("CREATE TEMP TABLE " + COPIED_SALES.substring(5) + " AS SELECT " + COLUMNS +
+                    " FROM " + HOT_SALES + " WHERE 0");
+            stmt.execute("CREATE TEMP TABLE " + COPIED_DAILY.substring(5) + " AS SELECT " + DAILY_COLUMNS +
+                    " FROM " + HOT_DAILY + " WHERE 0");
+            for (int i = 0; i < years.size(); i += MAX_ATTACHED) {
+                List<Integer> batch = years.subList(i, Math.min(years.size(), i + MAX_ATTACHED));
+                for (int year : batch) {
+                    String table = attach(conn, year);
+                    stmt.execute("INSERT INTO " + COPIED_SALES + " SELECT " + COLUMNS + " FROM " + table);
+                    stmt.execute("INSERT INTO " + COPIED_DAILY + " SELECT " + DAILY_COLUMNS + " FROM " + dailyTable(table));
+                }
+                for (int year : batch) detach(conn, year);
+            }
+        }
+    }
+
+    private static void dropCopies(Statement stmt) throws SQLException {
+        stmt.execute("DROP TABLE IF EXISTS " + COPIED_SALES);
+        stmt.execute("DROP TABLE IF EXISTS " + COPIED_DAILY);
+    }
+
+    // Attaches one shard (null = the hot shard) and returns its sales table name.
+    public static String attach(Connection conn, Integer year) throws SQLException {
+        if (year == null) return HOT_SALES;
+        String alias = alias(year);
+        if (!isAttached(conn, alias)) {
+            try (PreparedStatement pstmt = conn.prepareStatement("ATTACH DATABASE ? AS " + alias)) {
+                pstmt.setString(1, getShardFile(year).getPath());
+                pstmt.execute();
+            }
+        }
+        return alias + ".Sales";
+    }
+
+    // SalesDaily table of the shard whose sales table attach returned.
+    public static String dailyTable(String salesTable) {
+        return salesTable.substring(0, salesTable.lastIndexOf('.')) + ".SalesDaily";
+    }
+
+    public static void detach(Connection conn, Integer year) {
+        if (year == null) return;
+        try (Statement stmt = conn.createStatement()) {
+            // A shard prepare() copied instead of attaching: free the copies once the query is done
+            if (!isAttached(conn, alias(year))) {
+                dropCopies(stmt);
+                return;
+            }
+            stmt.execute("DETACH DATABASE " + alias(year));
+        } catch (SQLException e) {
+            System.err.println("Error detaching shard " + year + ": " + e.getMessage());
+        }
+    }
+
+    // Moves every sale with a from_date before cutoff, with its daily facts, from the hot shard into
+    // its year shard. Each year is copied and deleted in one transaction, and copies are keyed by id,
+    // so an interrupted run is simply repeated. Returns the number of rows moved.
+    public static int archiveBefore(LocalDate cutoff) {
+        int moved = 0;
+        try (Connection conn = DatabaseHelper.connect()) {
+            List<Integer> years = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(from_date) FROM Sales WHERE from_date < ?")) {
+                pstmt.setDate(1, Date.valueOf(cutoff));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next() && rs.getObject(1) != null) {
+                        for (int year = rs.getDate(1).toLocalDate().getYear(); year <= cutoff.getYear(); year++) {
+                            years.add(year);
+                        }
+                    }
+                }
+            }
+
+            // The boundary moves first: until a year is moved its sales are still read from the hot shard
+            LocalDate archived = getArchivedBefore();
+            if (archived == null || cutoff.isAfter(archived)) {
+                DatabaseHelper.setSetting(ARCHIVED_BEFORE, cutoff.toString());
+                archivedBefore = cutoff;
+            }
+            if (!years.isEmpty()) getShardFolder().mkdirs();
+            for (int year : years) {
+                LocalDate start = LocalDate.of(year, 1, 1);
+                LocalDate end = year == cutoff.getYear() ? cutoff : start.plusYears(1);
+                moved += moveRange(conn, year, start, end);
+            }
+            if (moved > 0) {
+                System.out.println("Moved " + moved + " sales into year shards.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error moving sales into shards: " + e.getMessage());
+        }
+        return moved;
+    }
+
+    // Everything before this date lives in the year shards, except late imports; null if nothing
+    // has been archived yet.
+    public static LocalDate getArchivedBefore() {
+        if (archivedBefore == null) {
+            String value = DatabaseHelper.getSetting(ARCHIVED_BEFORE, null);
+            if (value != null) archivedBefore = LocalDate.parse(value);
+        }
+        return archivedBefore;
+    }
+
+    private static int moveRange(Connection conn, int year, LocalDate from, LocalDate to) throws SQLException {
+        Date start = Date.valueOf(from);
+        Date end = Date.valueOf(to);
+
+        try (PreparedStatement count = conn.prepareStatement(
+                "SELECT COUNT(*) FROM main.Sales WHERE from_date >= ? AND from_date < ?")) {
+            count.setDate(1, start);
+            count.setDate(2, end);
+            try (ResultSet rs = count.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) == 0) return 0;
+            }
+        }
+
+        // The shard is created, filled and the hot rows deleted under the exclusive shard lock, the
+        // move itself in one transaction over both files
+        int moved;
+        LOCK.writeLock().lock();
+        try {
+            String table = attach(conn, year);
+            String alias = alias(year);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " (" +
+                        "id INTEGER PRIMARY KEY, item_number INTEGER, quantity INTEGER, price REAL, " +
+                        "from_date DATE, to_date DATE, store TEXT, store_id INTEGER, from_day INTEGER, to_day INTEGER)");
+                createShardIndexes(stmt, alias);
+                stmt.execute(DailyFacts.createTableSql(alias + ".SalesDaily"));
+                DailyFacts.createIndexes(stmt, alias);
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement copy = conn.prepareStatement("INSERT OR IGNORE INTO " + table + " (" + COLUMNS + ") " +
+                    "SELECT " + COLUMNS + " FROM main.Sales WHERE from_date >= ? AND from_date < ?");
+                 PreparedStatement copyDaily = conn.prepareStatement("INSERT OR IGNORE INTO " + alias + ".SalesDaily " +
+                    "(" + DAILY_COLUMNS + ") SELECT " + DAILY_COLUMNS + " FROM main.SalesDaily WHERE sale_id IN " +
+                    "(SELECT id FROM main.Sales WHERE from_date >= ? AND from_date < ?)");
+                 PreparedStatement deleteDaily = conn.prepareStatement("DELETE FROM main.SalesDaily WHERE sale_id IN " +
+                    "(SELECT id FROM main.Sales WHERE from_date >= ? AND from_date < ?)");
+                 PreparedStatement delete = conn.prepareStatement(
+                    "DELETE FROM main.Sales WHERE from_date >= ? AND from_date < ?")) {
+                for (PreparedStatement pstmt : List.of(copy, copyDaily, deleteDaily, delete)) {
+                    pstmt.setDate(1, start);
+                    pstmt.setDate(2, end);
+                }
+                copy.executeUpdate();
+                copyDaily.executeUpdate();
+                deleteDaily.executeUpdate();
+                moved = delete.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+        detach(conn, year);
+        return moved;
+    }
+
+    private static void createShardIndexes(Statement stmt, String alias) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + alias + ".idx_sales_from_date ON Sales(from_date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + alias + ".idx_sales_from_day ON Sales(from_day)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + alias + ".idx_sales_store_day ON Sales(store_id, from_day)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS " + alias + ".idx_sales_item ON Sales(item_number)");
+    }
+
+    // Brings shards written by older versions up to the current Sales columns and indexes, and
+    // expands their sales into SalesDaily.
+    public static void upgradeShards() {
+        List<Integer> years = getShardYears();
+        if (years.isEmpty()) return;
+        try (Connection conn = DatabaseHelper.connect();
+             Statement stmt = conn.createStatement()) {
+            for (int year : years) {
+                String alias = alias(year);
+                attach(conn, year);
+                boolean hasDays = false;
+                try (ResultSet rs = stmt.executeQuery("PRAGMA " + alias + ".table_info(Sales)")) {
+                    while (rs.next()) {
+                        if ("from_day".equalsIgnoreCase(rs.getString("name"))) hasDays = true;
+                    }
+                }
+                if (!hasDays) {
+                    stmt.execute("ALTER TABLE " + alias + ".Sales ADD COLUMN from_day INTEGER");
+                    stmt.execute("ALTER TABLE " + alias + ".Sales ADD COLUMN to_day INTEGER");
+                    stmt.executeUpdate("UPDATE " + alias + ".Sales SET from_day = " + DatabaseHelper.epochDay("from_date") +
+                            ", to_day = " + DatabaseHelper.epochDay("to_date") + " WHERE from_day IS NULL");
+                    stmt.execute("DROP INDEX IF EXISTS " + alias + ".idx_sales_store_id");
+                    createShardIndexes(stmt, alias);
+                    SalesWindow.recordSpan(conn, SalesWindow.measureSpan(conn, alias + ".Sales"));
+                }
+                stmt.execute(DailyFacts.createTableSql(alias + ".SalesDaily"));
+                DailyFacts.createIndexes(stmt, alias);
+                DailyFacts.backfill(conn, alias + ".Sales", alias + ".SalesDaily");
+                detach(conn, year);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error upgrading shards: " + e.getMessage());
+        }
+    }
+
+    private static boolean isAttached(Connection conn, String alias) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA database_list")) {
+            while (rs.next()) {
+                if (alias.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static String alias(int year) {
+        return "shard_" + year;
+    }
+}
@@ -0,0 +1,193 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Sales velocity per item and store: a ring buffer of the last WINDOW daily quantities with running
+// 7- and 28-day sums, kept in the SalesVelocity table. Imports feed the days they add through a
+// Batch, which updates only the rings it touches, so the averages never have to be recomputed from
+// the sales history and a velocity lookup reads one row per item and store.
+public class VelocityTracker {
+    public static final int WINDOW = 28;
+    public static final int SHORT_WINDOW = 7;
+
+    static void createTable(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS SalesVelocity (" +
+                "item_number INTEGER, " +
+                "store_id INTEGER, " +
+                "end_day INTEGER, " +
+                "ring BLOB, " +
+                "sum7 INTEGER, " +
+                "sum28 INTEGER, " +
+                "PRIMARY KEY (item_number, store_id)" +
+                ")");
+    }
+
+    // Daily quantities of one item and store for the WINDOW days ending at endDay. Slot day % WINDOW
+    // holds the quantity of that day.
+    public static class Ring {
+        private int endDay;
+        private final long[] slots = new long[WINDOW];
+        private long sum7;
+        private long sum28;
+
+        Ring(int endDay) {
+            this.endDay = endDay;
+        }
+
+        // Adds quantity on day; days that already left the window are ignored.
+        void add(int day, long quantity) {
+            if (day > endDay) advanceTo(day);
+            if (day <= endDay - WINDOW) return;
+            slots[Math.floorMod(day, WINDOW)] += quantity;
+            sum28 += quantity;
+            if (day > endDay - SHORT_WINDOW) sum7 += quantity;
+        }
+
+        // Moves the window end forward, dropping the days that fall out of it. Each step touches one
+        // slot, and at most WINDOW steps are needed.
+        void advanceTo(int day) {
+            if (day <= endDay) return;
+            if (day - endDay >= WINDOW) {
+                Arrays.fill(slots, 0);
+                sum7 = 0;
+                sum28 = 0;
+                endDay = day;
+                return;
+            }
+            while (endDay < day) {
+                endDay++;
+                sum7 -= slots[Math.floorMod(endDay - SHORT_WINDOW, WINDOW)];
+                sum28 -= slots[Math.floorMod(endDay, WINDOW)];
+                slots[Math.floorMod(endDay, WINDOW)] = 0;
+            }
+        }
+
+        // Sums as of day without changing the ring: {7-day sum, 28-day sum}. Null when day lies
+        // before the window end, which the ring can no longer answer.
+        public long[] sumsAsOf(int day) {
+            if (day < endDay) return null;
+            if (day == endDay) return new long[]{sum7, sum28};
+            if (day - endDay >= WINDOW) return new long[]{0, 0};
+            long short7 = 0;
+            long long28 = 0;
+            for (int d = day - WINDOW + 1; d <= endDay; d++) {
+                long quantity = slots[Math.floorMod(d, WINDOW)];
+                long28 += quantity;
+                if (d > day - SHORT_WINDOW) short7 += quantity;
+            }
+            return new long[]{short7, long28};
+        }
+
+        byte[] toBytes() {
+            ByteBuffer buffer = ByteBuffer.allocate(WINDOW * Long.BYTES);
+            for (long slot : slots) buffer.putLong(slot);
+            return buffer.array();
+        }
+
+        static Ring fromBytes(int endDay, byte[] bytes, long sum7, long sum28) {
+            Ring ring = new Ring(endDay);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            for (int i = 0; i < WINDOW; i++) ring.slots[i] = buffer.getLong();
+            ring.sum7 = sum7;
+            ring.sum28 = sum28;
+            return ring;
+        }
+    }
+
+    // Daily quantities collected during an import and applied to the stored rings in one go, on the
+    // importing connection so the update is part of the import transaction.
+    public static class Batch {
+        private final Map<Long, Map<Integer, Long>> days = new HashMap<>();
+
+        public void add(int itemNumber, Integer storeId, int fromDay, long[] dailyQuantities) {
+            Map<Integer, Long> byDay = days.computeIfAbsent(key(itemNumber, storeId), k -> new HashMap<>());
+            for (int i = 0; i < dailyQuantities.length; i++) {
+                byDay.merge(fromDay + i, dailyQuantities[i], Long::sum);
+            }
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            if (days.isEmpty()) return;
+            try (PreparedStatement select = conn.prepareStatement(
+                    "SELECT end_day, ring, sum7, sum28 FROM SalesVelocity WHERE item_number = ? AND store_id = ?");
+                 PreparedStatement upsert = conn.prepareStatement("INSERT OR REPLACE INTO SalesVelocity " +
+                         "(item_number, store_id, end_day, ring, sum7, sum28) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<Long, Map<Integer, Long>> entry : days.entrySet()) {
+                    int itemNumber = (int) (entry.getKey() >> 32);
+                    int storeId = (int) entry.getKey().longValue();
+                    Ring ring = load(select, itemNumber, storeId);
+                    for (Map.Entry<Integer, Long> day : entry.getValue().entrySet()) {
+                        if (ring == null) ring = new Ring(day.getKey());
+                        ring.add(day.getKey(), day.getValue());
+                    }
+                    save(upsert, itemNumber, storeId, ring);
+                }
+                upsert.executeBatch();
+            }
+            days.clear();
+        }
+
+        private static long key(int itemNumber, Integer storeId) {
+            return ((long) itemNumber << 32) | ((storeId == null ? 0 : storeId) & 0xffffffffL);
+        }
+    }
+
+    // Rebuilds every ring from the daily facts in the live database; used when the table is new.
+    static int rebuild(Connection conn) throws SQLException {
+        Map<Long, Ring> rings = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT item_number, COALESCE(store_id, 0), day, SUM(quantity) " +
+                     "FROM SalesDaily GROUP BY 1, 2, 3 ORDER BY 1, 2, 3")) {
+            while (rs.next()) {
+                long key = Batch.key(rs.getInt(1), rs.getInt(2));
+                int day = rs.getInt(3);
+                rings.computeIfAbsent(key, k -> new Ring(day)).add(day, rs.getLong(4));
+            }
+        }
+        if (rings.isEmpty()) return 0;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement upsert = conn.prepareStatement("INSERT OR REPLACE INTO SalesVelocity " +
+                "(item_number, store_id, end_day, ring, sum7, sum28) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Map.Entry<Long, Ring> entry : rings.entrySet()) {
+                save(upsert, (int) (entry.getKey() >> 32), (int) entry.getKey().longValue(), entry.getValue());
+            }
+            upsert.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return rings.size();
+    }
+
+    // Ring of a SalesVelocity row (store 0 = sales without a store).
+    public static Ring read(ResultSet rs) throws SQLException {
+        return Ring.fromBytes(rs.getInt("end_day"), rs.getBytes("ring"), rs.getLong("sum7"), rs.getLong("sum28"));
+    }
+
+    private static Ring load(PreparedStatement select, int itemNumber, int storeId) throws SQLException {
+        select.setInt(1, itemNumber);
+        select.setInt(2, storeId);
+        try (ResultSet rs = select.executeQuery()) {
+            return rs.next() ? read(rs) : null;
+        }
+    }
+
+    private static void save(PreparedStatement upsert, int itemNumber, int storeId, Ring ring) throws SQLException {
+        upsert.setInt(1, itemNumber);
+        upsert.setInt(2, storeId);
+        upsert.setInt(3, ring.endDay);
+        upsert.setBytes(4, ring.toBytes());
+        upsert.setLong(5, ring.sum7);
+        upsert.setLong(6, ring.sum28);
+        upsert.addBatch();
+    }
+}
@@ -14,6 +14,10 @@ public class AnalyticsData {
     private final DoubleProperty total_cost;
     private final DoubleProperty total_retail;
     private final IntegerProperty quantity;
+    private final DoubleProperty velocity7 = new SimpleDoubleProperty();
+    private final DoubleProperty velocity28 = new SimpleDoubleProperty();
+    private final DoubleProperty forecast7 = new SimpleDoubleProperty();
+    private final DoubleProperty forecast28 = new SimpleDoubleProperty();
     private Map<String, Integer> weeklySales = new HashMap<>();
 
     public AnalyticsData(int itemNumber, String label, String category, String subcategory,
@@ -53,6 +57,12 @@ public class AnalyticsData {
     public DoubleProperty totalCostProperty() { return total_cost; }
     public DoubleProperty totalRetailProperty() { return total_retail; }
     public IntegerProperty quantityProperty() { return quantity; }
+    // Units per day over the last 7 and 28 days (see AnalyticsService.addVelocity).
+    public DoubleProperty velocity7Property() { return velocity7; }
+    public DoubleProperty velocity28Property() { return velocity28; }
+    // Forecast units over the next 7 and 28 days (see AnalyticsService.addForecasts).
+    public DoubleProperty forecast7Property() { return forecast7; }
+    public DoubleProperty forecast28Property() { return forecast28; }
     public Map<String, Integer> getWeeklySales() { return weeklySales; }
     public void setWeeklySales(Map<String, Integer> weeklySales) { this.weeklySales = weeklySales; }
     public void mergeWeeklySales(Map<String, Integer> newWeeklySales) {
@@ -0,0 +1,26 @@
+package models;
+
+// Levels of the Calendar dimension analytics can group by. Each level is a key column of the
+// Calendar table whose text values sort in date order.
+public enum CalendarLevel {
+    DAY("date", "Day"),
+    ISO_WEEK("iso_week_key", "ISO Week"),
+    MONTH("month", "Month"),
+    FISCAL_WEEK("fiscal_week_key", "Fiscal Week"),
+    FISCAL_PERIOD("fiscal_period_key", "Fiscal Period"),
+    FISCAL_QUARTER("fiscal_quarter_key", "Fiscal Quarter"),
+    FISCAL_YEAR("fiscal_year_key", "Fiscal Year");
+
+    private final String column;
+    private final String displayName;
+
+    CalendarLevel(String column, String displayName) {
+        this.column = column;
+        this.displayName = displayName;
+    }
+
+    public String getColumn() { return column; }
+
+    @Override
+    public String toString() { return displayName; }
+}
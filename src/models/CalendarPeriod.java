@@ -0,0 +1,25 @@
+package models;
+
+import java.time.LocalDate;
+
+// One bucket of a calendar level, clipped to the range it was looked up for.
+public class CalendarPeriod {
+    private final String key;
+    private final LocalDate start;
+    private final LocalDate end;
+
+    public CalendarPeriod(String key, LocalDate start, LocalDate end) {
+        this.key = key;
+        this.start = start;
+        this.end = end;
+    }
+
+    public String getKey() { return key; }
+    public LocalDate getStart() { return start; }
+    public LocalDate getEnd() { return end; }
+
+    @Override
+    public String toString() {
+        return start.equals(end) ? key : key + " (" + start + " to " + end + ")";
+    }
+}
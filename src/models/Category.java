@@ -16,6 +16,10 @@ public class Category {
         this(0, category, subcategory);
     }
 
+    public Category copy() {
+        return new Category(id, category, subcategory);
+    }
+
     public int getId() {
         return id;
     }
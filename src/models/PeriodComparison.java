@@ -0,0 +1,58 @@
+package models;
+
+// Quantity, revenue and cost of one item (or subtotal row, item number -1) over several aligned
+// periods. Period 0 is the current one; deltas and growth compare it against period i.
+public class PeriodComparison {
+    private final int itemNumber;
+    private final String label;
+    private final String category;
+    private final String subcategory;
+    private final int[] quantity;
+    private final double[] revenue;
+    private final double[] cost;
+
+    public PeriodComparison(int itemNumber, String label, String category, String subcategory, int periods) {
+        this.itemNumber = itemNumber;
+        this.label = label;
+        this.category = category;
+        this.subcategory = subcategory;
+        this.quantity = new int[periods];
+        this.revenue = new double[periods];
+        this.cost = new double[periods];
+    }
+
+    public void add(int period, int quantity, double revenue, double cost) {
+        this.quantity[period] += quantity;
+        this.revenue[period] += revenue;
+        this.cost[period] += cost;
+    }
+
+    public void add(PeriodComparison other) {
+        for (int i = 0; i < quantity.length; i++) {
+            add(i, other.quantity[i], other.revenue[i], other.cost[i]);
+        }
+    }
+
+    public int getItemNumber() { return itemNumber; }
+    public String getLabel() { return label; }
+    public String getCategory() { return category; }
+    public String getSubcategory() { return subcategory; }
+    public int getPeriodCount() { return quantity.length; }
+    public int getQuantity(int period) { return quantity[period]; }
+    public double getRevenue(int period) { return Math.round(revenue[period] * 100.0) / 100.0; }
+    public double getCost(int period) { return Math.round(cost[period] * 100.0) / 100.0; }
+    public double getMargin(int period) { return Math.round((revenue[period] - cost[period]) * 100.0) / 100.0; }
+
+    public int getQuantityDelta(int period) { return quantity[0] - quantity[period]; }
+    public double getRevenueDelta(int period) { return Math.round((revenue[0] - revenue[period]) * 100.0) / 100.0; }
+    public double getMarginDelta(int period) { return Math.round((getMargin(0) - getMargin(period)) * 100.0) / 100.0; }
+
+    // Growth of the current period over period i in percent; null when period i had nothing.
+    public Double getQuantityGrowth(int period) {
+        return quantity[period] == 0 ? null : Math.round(getQuantityDelta(period) * 1000.0 / quantity[period]) / 10.0;
+    }
+
+    public Double getRevenueGrowth(int period) {
+        return revenue[period] == 0 ? null : Math.round((revenue[0] - revenue[period]) * 1000.0 / revenue[period]) / 10.0;
+    }
+}
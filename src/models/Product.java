@@ -19,6 +19,11 @@ public class Product {
         this.recStatus = new SimpleStringProperty(recStatus);
     }
 
+    // Plain copy of the current values, safe to hand to a background writer.
+    public Product copy() {
+        return new Product(getItemNumber(), getLabel(), getProductClass(), getSubcategory(), getPrice(), getRecStatus());
+    }
+
     // Getters
     public int getItemNumber() { return itemNumber.get(); }
     public String getLabel() { return label.get(); }
@@ -0,0 +1,24 @@
+package models;
+
+// What Top-N and ABC analysis rank items by: a column of the aggregated item totals.
+public enum RankMetric {
+    QUANTITY("total_quantity", "Quantity"),
+    REVENUE("total_retail", "Revenue");
+
+    private final String column;
+    private final String displayName;
+
+    RankMetric(String column, String displayName) {
+        this.column = column;
+        this.displayName = displayName;
+    }
+
+    public String getColumn() { return column; }
+
+    public double valueOf(AnalyticsData row) {
+        return this == QUANTITY ? row.getQuantity() : row.getTotalRetail();
+    }
+
+    @Override
+    public String toString() { return displayName; }
+}
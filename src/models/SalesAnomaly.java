@@ -0,0 +1,65 @@
+package models;
+
+import javafx.beans.property.*;
+
+// One outlier flagged by the import-time anomaly detector. Sale-level flags (quantity, price)
+// carry the sale id; day total flags have none.
+public class SalesAnomaly {
+    private final int id;
+    private final Long saleId;
+    private final IntegerProperty itemNumber;
+    private final StringProperty label;
+    private final StringProperty store;
+    private final StringProperty date;
+    private final StringProperty metric;
+    private final DoubleProperty value;
+    private final DoubleProperty expected;
+    private final DoubleProperty score;
+    private final BooleanProperty reviewed;
+
+    public SalesAnomaly(int id, Long saleId, int itemNumber, String label, String store, String date,
+                        String metric, double value, double expected, double score, boolean reviewed) {
+        this.id = id;
+        this.saleId = saleId;
+        this.itemNumber = new SimpleIntegerProperty(itemNumber);
+        this.label = new SimpleStringProperty(label);
+        this.store = new SimpleStringProperty(store);
+        this.date = new SimpleStringProperty(date);
+        this.metric = new SimpleStringProperty(metric);
+        this.value = new SimpleDoubleProperty(value);
+        this.expected = new SimpleDoubleProperty(expected);
+        this.score = new SimpleDoubleProperty(score);
+        this.reviewed = new SimpleBooleanProperty(reviewed);
+    }
+
+    public int getId() { return id; }
+    public Long getSaleId() { return saleId; }
+
+    public int getItemNumber() { return itemNumber.get(); }
+    public IntegerProperty itemNumberProperty() { return itemNumber; }
+
+    public String getLabel() { return label.get(); }
+    public StringProperty labelProperty() { return label; }
+
+    public String getStore() { return store.get(); }
+    public StringProperty storeProperty() { return store; }
+
+    public String getDate() { return date.get(); }
+    public StringProperty dateProperty() { return date; }
+
+    public String getMetric() { return metric.get(); }
+    public StringProperty metricProperty() { return metric; }
+
+    public double getValue() { return value.get(); }
+    public DoubleProperty valueProperty() { return value; }
+
+    public double getExpected() { return expected.get(); }
+    public DoubleProperty expectedProperty() { return expected; }
+
+    public double getScore() { return score.get(); }
+    public DoubleProperty scoreProperty() { return score; }
+
+    public boolean isReviewed() { return reviewed.get(); }
+    public void setReviewed(boolean reviewed) { this.reviewed.set(reviewed); }
+    public BooleanProperty reviewedProperty() { return reviewed; }
+}
@@ -0,0 +1,116 @@
+package models;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Column-oriented holder for large sets of sales. Dates are kept as epoch days and
+// store names are dictionary-encoded, so a row costs 28 bytes instead of a Sale object graph.
+public class SalesBatch {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size;
+    private int[] itemNumbers = new int[INITIAL_CAPACITY];
+    private int[] quantities = new int[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private int[] fromDays = new int[INITIAL_CAPACITY];
+    private int[] toDays = new int[INITIAL_CAPACITY];
+    private int[] storeCodes = new int[INITIAL_CAPACITY];
+
+    private final List<String> storeDictionary = new ArrayList<>();
+    private final Map<String, Integer> storeLookup = new HashMap<>();
+
+    public void add(int itemNumber, int quantity, double price, LocalDate fromDate, LocalDate toDate, String store) {
+        add(itemNumber, quantity, price, (int) fromDate.toEpochDay(), (int) toDate.toEpochDay(), encodeStore(store));
+    }
+
+    public void add(int itemNumber, int quantity, double price, int fromDay, int toDay, int storeCode) {
+        if (size == itemNumbers.length) {
+            grow();
+        }
+        itemNumbers[size] = itemNumber;
+        quantities[size] = quantity;
+        prices[size] = price;
+        fromDays[size] = fromDay;
+        toDays[size] = toDay;
+        storeCodes[size] = storeCode;
+        size++;
+    }
+
+    // Returns the dictionary code for a store name, adding it on first use.
+    public int encodeStore(String store) {
+        String key = store == null ? "" : store;
+        Integer code = storeLookup.get(key);
+        if (code == null) {
+            code = storeDictionary.size();
+            storeDictionary.add(key);
+            storeLookup.put(key, code);
+        }
+        return code;
+    }
+
+    public int size() { return size; }
+    public int getItemNumber(int row) { return itemNumbers[row]; }
+    public int getQuantity(int row) { return quantities[row]; }
+    public double getPrice(int row) { return prices[row]; }
+    public int getFromDay(int row) { return fromDays[row]; }
+    public int getToDay(int row) { return toDays[row]; }
+    public int getStoreCode(int row) { return storeCodes[row]; }
+    public String getStore(int row) { return storeDictionary.get(storeCodes[row]); }
+
+    public int getStoreCount() { return storeDictionary.size(); }
+    public String decodeStore(int code) { return storeDictionary.get(code); }
+
+    public Sale toSale(int row) {
+        return new Sale(itemNumbers[row], quantities[row], prices[row],
+                LocalDate.ofEpochDay(fromDays[row]), LocalDate.ofEpochDay(toDays[row]), getStore(row));
+    }
+
+    // Read-only list view; each Sale is built only when the row is actually requested.
+    public List<Sale> asList() {
+        return new AbstractList<>() {
+            @Override
+            public Sale get(int index) { return toSale(index); }
+
+            @Override
+            public int size() { return size; }
+        };
+    }
+
+    // Same as asList(), restricted to the given row numbers (e.g. the result of a filter).
+    public List<Sale> asList(int[] rows, int count) {
+        return new AbstractList<>() {
+            @Override
+            public Sale get(int index) {
+                if (index >= count) throw new IndexOutOfBoundsException(index);
+                return toSale(rows[index]);
+            }
+
+            @Override
+            public int size() { return count; }
+        };
+    }
+
+    public void trimToSize() {
+        itemNumbers = Arrays.copyOf(itemNumbers, size);
+        quantities = Arrays.copyOf(quantities, size);
+        prices = Arrays.copyOf(prices, size);
+        fromDays = Arrays.copyOf(fromDays, size);
+        toDays = Arrays.copyOf(toDays, size);
+        storeCodes = Arrays.copyOf(storeCodes, size);
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, itemNumbers.length + (itemNumbers.length >> 1));
+        itemNumbers = Arrays.copyOf(itemNumbers, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        fromDays = Arrays.copyOf(fromDays, capacity);
+        toDays = Arrays.copyOf(toDays, capacity);
+        storeCodes = Arrays.copyOf(storeCodes, capacity);
+    }
+}
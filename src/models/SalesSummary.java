@@ -0,0 +1,40 @@
+package models;
+
+// Range-level figures for a date range and store selection: distinct items sold, units, revenue
+// and quantiles of daily sale quantity and unit price. Approximate summaries come from the day
+// sketches and carry their error bounds; exact ones have zero error.
+public class SalesSummary {
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final boolean approximate;
+    private final long distinctItems;
+    private final double distinctItemsError;
+    private final long quantity;
+    private final double revenue;
+    private final double[] quantityQuantiles;
+    private final double[] priceQuantiles;
+    private final long millis;
+
+    public SalesSummary(boolean approximate, long distinctItems, double distinctItemsError, long quantity, double revenue,
+                        double[] quantityQuantiles, double[] priceQuantiles, long millis) {
+        this.approximate = approximate;
+        this.distinctItems = distinctItems;
+        this.distinctItemsError = distinctItemsError;
+        this.quantity = quantity;
+        this.revenue = revenue;
+        this.quantityQuantiles = quantityQuantiles;
+        this.priceQuantiles = priceQuantiles;
+        this.millis = millis;
+    }
+
+    public boolean isApproximate() { return approximate; }
+    public long getDistinctItems() { return distinctItems; }
+    // Relative standard error of getDistinctItems (0.023 = 2.3 %).
+    public double getDistinctItemsError() { return distinctItemsError; }
+    public long getQuantity() { return quantity; }
+    public double getRevenue() { return Math.round(revenue * 100.0) / 100.0; }
+    // Quantile i of QUANTILES; NaN when the range has no sales.
+    public double getQuantityQuantile(int i) { return quantityQuantiles[i]; }
+    public double getPriceQuantile(int i) { return priceQuantiles[i]; }
+    public long getMillis() { return millis; }
+}
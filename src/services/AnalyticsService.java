@@ -1,35 +1,122 @@
 package services;
 
 import database.DatabaseHelper;
+import database.DemandForecast;
+import database.ReadConnectionPool;
+import database.SalesWindow;
+import database.ShardManager;
+import database.VelocityTracker;
+import database.RowHandler;
+import database.SalesSketches;
 import models.AnalyticsData;
-
+import models.CalendarLevel;
+import models.CalendarPeriod;
+import models.PeriodComparison;
+import models.RankMetric;
+import models.SalesSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.*;
 import java.sql.Date;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import utils.CountMinSketch;
+import utils.HyperLogLog;
+import utils.TDigest;
 
 public class AnalyticsService {
 
-    public List<AnalyticsData> getAnalyticsData(LocalDate fromDate, LocalDate toDate,
-                                                List<String> categories, List<String> subcategories) {
+    // Average selling price in dollars: sales cents over quantity, rounded to the cent; 0 when the
+    // quantity nets to zero. This is the Retail of every item row, from SQL or the dashboard slice.
+    public static double averagePrice(long cents, long quantity) {
+        return quantity == 0 ? 0 : Math.round((double) cents / quantity) / 100.0;
+    }
+
+    // Sorts item rows once by category and subcategory (quantity descending inside each group) and
+    // runs them through the rollup, which adds the subtotal, category and grand total rows.
+    static List<AnalyticsData> withSubtotals(List<AnalyticsData> analyticsData) {
+        for (AnalyticsData row : analyticsData) {
+            row.totalCostProperty().set(round2(row.getTotalCost()));
+            row.totalRetailProperty().set(round2(row.getTotalRetail()));
+        }
+        analyticsData.sort(RollupAggregator.ORDER);
+
+        List<AnalyticsData> finalData = new ArrayList<>(analyticsData.size() * 5 / 4 + 1);
+        RollupAggregator rollup = new RollupAggregator(finalData::add);
+        try {
+            for (AnalyticsData row : analyticsData) rollup.add(row);
+            rollup.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // the list sink never throws
+        }
+        return finalData;
+    }
+
+    private static double round2(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @FunctionalInterface
+    interface StoreQuery<T> {
+        T run(Connection conn, String sales, Integer storeId) throws SQLException;
+    }
+
+    // Runs the query for every (store, shard) pair the range needs, concurrently on pooled read
+    // connections. Results come back per store in store order, each with one partial per shard.
+    // An empty store list runs it once for all stores (storeId null).
+    static <T> List<List<T>> fanOut(LocalDate fromDate, LocalDate toDate, List<Integer> storeIds,
+                                            StoreQuery<T> query) throws SQLException {
+        List<Integer> stores = new ArrayList<>();
+        if (storeIds == null || storeIds.isEmpty()) {
+            stores.add(null);
+        } else {
+            stores.addAll(new LinkedHashSet<>(storeIds));
+        }
+        // The shard lock is held by this thread while the tasks run, so no sale moves between shards
+        // in the meantime
+        List<Integer> shards = new ArrayList<>();
+        List<T> results;
+        try (ShardManager.Reading reading = ShardManager.reading()) {
+            shards.add(null);
+            shards.addAll(ShardManager.plan(fromDate, toDate));
+
+            List<ReadConnectionPool.ReadTask<T>> tasks = new ArrayList<>();
+            for (Integer storeId : stores) {
+                for (Integer shard : shards) {
+                    tasks.add(conn -> {
+                        try {
+                            return query.run(conn, ShardManager.attach(conn, shard), storeId);
+                        } finally {
+                            ShardManager.detach(conn, shard);
+                        }
+                    });
+                }
+            }
+            results = ReadConnectionPool.readAll(tasks);
+        }
 
-        List<AnalyticsData> analyticsData = new ArrayList<>();
+        List<List<T>> byStore = new ArrayList<>();
+        for (int i = 0; i < stores.size(); i++) {
+            byStore.add(results.subList(i * shards.size(), (i + 1) * shards.size()));
+        }
+        return byStore;
+    }
 
+    private static void appendCategoryFilter(StringBuilder filterClause, List<String> queryParams,
+                                             List<String> categories, List<String> subcategories) {
         boolean selectAllCats = categories.contains("ALL");
         boolean selectAllSubcats = subcategories.contains("ALL");
 
-        StringBuilder filterClause = new StringBuilder();
-        List<String> queryParams = new ArrayList<>();
-
         if (!selectAllCats && !selectAllSubcats) {
             List<String> conditions = new ArrayList<>();
             for (String cat : categories) {
                 for (String sub : subcategories) {
-                    conditions.add("(p.category = ? AND p.subcategory = ?)");
+                    conditions.add("(c.category = ? AND c.subcategory = ?)");
                     queryParams.add(cat);
                     queryParams.add(sub);
                 }
@@ -37,404 +124,650 @@ public class AnalyticsService {
             filterClause.append("AND (").append(String.join(" OR ", conditions)).append(")");
         } else if (!selectAllCats) {
             String placeholders = String.join(",", Collections.nCopies(categories.size(), "?"));
-            filterClause.append("AND p.category IN (").append(placeholders).append(")");
+            filterClause.append("AND c.category IN (").append(placeholders).append(")");
             queryParams.addAll(categories);
         } else if (!selectAllSubcats) {
             String placeholders = String.join(",", Collections.nCopies(subcategories.size(), "?"));
-            filterClause.append("AND p.subcategory IN (").append(placeholders).append(")");
+            filterClause.append("AND c.subcategory IN (").append(placeholders).append(")");
             queryParams.addAll(subcategories);
         }
+    }
 
-        String query = "SELECT p.item_number, p.label, p.category, p.subcategory, " +
-                "p.price AS cost, s.price AS retail, " +
-                "SUM(s.quantity) AS total_quantity, " +
-                "ROUND(SUM(s.quantity * p.price), 2) AS total_cost, " +
-                "ROUND(SUM(s.quantity * s.price), 2) AS total_retail " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "JOIN Category c on (c.category=p.category AND c.subcategory=p.subcategory) " +
-                "WHERE (s.from_date >= ? AND s.to_date <= ?) " + filterClause + " " +
-                "GROUP BY p.item_number " +
-                "ORDER BY total_quantity DESC, p.label, p.category ASC, p.subcategory ASC";
-
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
+    // The n best items by metric, best first. Item totals are read off the cursor into a min-heap
+    // that never holds more than n rows, so nothing else is kept or sorted.
+    public List<AnalyticsData> getTopItems(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                           List<String> subcategories, List<Integer> storeIds, RankMetric metric, int n) {
+        List<AnalyticsData> top = new ArrayList<>();
+        if (n <= 0) return top;
+        Comparator<AnalyticsData> byMetric = Comparator.comparingDouble(metric::valueOf);
+        PriorityQueue<AnalyticsData> heap = new PriorityQueue<>(n + 1, byMetric);
+        try {
+            streamItemTotals(fromDate, toDate, categories, subcategories, storeIds, null, rs -> {
+                AnalyticsData row = readItemTotals(rs);
+                if (heap.size() < n) {
+                    heap.add(row);
+                } else if (byMetric.compare(row, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            });
+        } catch (SQLException | IOException e) {
+            System.err.println("Error fetching top items: " + e.getMessage());
+            return top;
+        }
+        top.addAll(heap);
+        top.sort(byMetric.reversed());
+        return top;
+    }
 
-            int paramIndex = 3;
-            for (String param : queryParams) {
-                pstmt.setString(paramIndex++, param);
-            }
+    // ABC (Pareto) classes by metric: A items make up the first ABC_A share of the total, B items
+    // the share up to ABC_B and C items the rest. Rows come off the cursor best first with the grand
+    // total attached, so each item is classified from the running share as it is read and only the
+    // requested classes are kept. Returns class -> items, best first.
+    public Map<String, List<AnalyticsData>> getAbcClasses(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                                          List<String> subcategories, List<Integer> storeIds,
+                                                          RankMetric metric, Set<String> classes) {
+        Map<String, List<AnalyticsData>> result = new LinkedHashMap<>();
+        for (String abcClass : List.of("A", "B", "C")) {
+            if (classes.contains(abcClass)) result.put(abcClass, new ArrayList<>());
+        }
+        double[] before = {0};
+        try {
+            streamItemTotals(fromDate, toDate, categories, subcategories, storeIds, metric, rs -> {
+                double grandTotal = rs.getDouble("grand_total");
+                AnalyticsData row = readItemTotals(rs);
+                double share = grandTotal == 0 ? 1 : before[0] / grandTotal;
+                before[0] += metric.valueOf(row);
+                String abcClass = share < ABC_A ? "A" : share < ABC_B ? "B" : "C";
+                List<AnalyticsData> rows = result.get(abcClass);
+                if (rows != null) rows.add(row);
+            });
+        } catch (SQLException | IOException e) {
+            System.err.println("Error classifying items: " + e.getMessage());
+        }
+        return result;
+    }
 
-            System.out.println("Running SQL: " + query);
-            System.out.println("With Params: " + queryParams);
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                analyticsData.add(new AnalyticsData(
-                        rs.getInt("item_number"),
-                        rs.getString("label"),
-                        rs.getString("category"),
-                        rs.getString("subcategory"),
-                        rs.getDouble("cost"),
-                        rs.getDouble("retail"),
-                        rs.getDouble("total_cost"),
-                        rs.getDouble("total_retail"),
-                        rs.getInt("total_quantity")
-                ));
+    // Summary of [fromDate, toDate]. In approximate mode it is merged from the day sketches, which
+    // reads one row per day and store however many sales there are; category filters are not
+    // sketched, so a filtered selection is always answered exactly from SalesDaily.
+    public SalesSummary getSalesSummary(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                        List<String> subcategories, List<Integer> storeIds, boolean approximate) {
+        long start = System.currentTimeMillis();
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+        boolean filtered = !categories.contains("ALL") || !subcategories.contains("ALL");
+        try {
+            if (approximate && !filtered) {
+                SalesSketches.Sketch sketch = ReadConnectionPool.read(conn -> SalesSketches.read(conn, fromDate, toDate, stores));
+                double[] quantityQuantiles = new double[SalesSummary.QUANTILES.length];
+                double[] priceQuantiles = new double[SalesSummary.QUANTILES.length];
+                for (int i = 0; i < SalesSummary.QUANTILES.length; i++) {
+                    quantityQuantiles[i] = sketch.getQuantities().quantile(SalesSummary.QUANTILES[i]);
+                    priceQuantiles[i] = sketch.getPrices().quantile(SalesSummary.QUANTILES[i]);
+                }
+                return new SalesSummary(true, sketch.getItems().estimate(), HyperLogLog.relativeError(),
+                        sketch.getQuantity(), sketch.getRevenue(), quantityQuantiles, priceQuantiles,
+                        System.currentTimeMillis() - start);
             }
+            return getExactSummary(fromDate, toDate, categories, subcategories, stores, start);
         } catch (SQLException e) {
-            System.err.println("Error fetching analytics data: " + e.getMessage());
+            System.err.println("Error fetching sales summary: " + e.getMessage());
+            return null;
         }
+    }
 
-
-        List<AnalyticsData> finalData = new ArrayList<>();
-        Map<String, List<AnalyticsData>> grouped = analyticsData.stream()
-                .collect(Collectors.groupingBy(a -> a.getCategory() + " - " + a.getSubcategory()));
-
-        for (String key : grouped.keySet().stream().sorted().toList()) {
-            List<AnalyticsData> group = grouped.get(key);
-            group.sort((a, b) -> Integer.compare(b.getQuantity(), a.getQuantity()));
-            finalData.addAll(group);
-
-            int subtotalQty = group.stream().mapToInt(AnalyticsData::getQuantity).sum();
-            double subtotalCost = group.stream().mapToDouble(AnalyticsData::getTotalCost).sum();
-            double subtotalRetail = group.stream().mapToDouble(AnalyticsData::getTotalRetail).sum();
-
-            finalData.add(new AnalyticsData(-1, "Sub Total",
-                    group.get(0).getCategory(),
-                    group.get(0).getSubcategory(),
-                    0.0, 0.0,
-                    BigDecimal.valueOf(subtotalCost).setScale(2, RoundingMode.HALF_UP).doubleValue(),
-                    BigDecimal.valueOf(subtotalRetail).setScale(2, RoundingMode.HALF_UP).doubleValue(),
-                    subtotalQty));
+    private static SalesSummary getExactSummary(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                                List<String> subcategories, List<Integer> stores, long start) throws SQLException {
+        StringBuilder filterClause = new StringBuilder();
+        List<String> queryParams = new ArrayList<>();
+        appendCategoryFilter(filterClause, queryParams, categories, subcategories);
+        String query = "SELECT d.item_number, d.quantity, d.sales_cents FROM " + ShardManager.DAILY + " d " +
+                (filterClause.length() == 0 ? "" : "JOIN Product p ON d.item_number = p.item_number " +
+                        "JOIN Category c ON c.id = p.category_id ") +
+                "WHERE d.day BETWEEN ? AND ? AND d.quantity <> 0 " +
+                (stores.isEmpty() ? "" : "AND d.store_id IN (" + String.join(",", Collections.nCopies(stores.size(), "?")) + ") ") +
+                filterClause;
+
+        Set<Integer> items = new HashSet<>();
+        List<double[]> prices = new ArrayList<>();
+        List<double[]> quantities = new ArrayList<>();
+        long[] quantity = {0};
+        long[] cents = {0};
+        ReadConnectionPool.read(conn -> {
+            try (ShardManager.Reading reading = ShardManager.reading();
+                 PreparedStatement pstmt = ShardManager.prepare(conn, query, fromDate, toDate)) {
+                int paramIndex = 1;
+                pstmt.setLong(paramIndex++, fromDate.toEpochDay());
+                pstmt.setLong(paramIndex++, toDate.toEpochDay());
+                for (Integer storeId : stores) pstmt.setInt(paramIndex++, storeId);
+                for (String param : queryParams) pstmt.setString(paramIndex++, param);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long rowQuantity = rs.getLong(2);
+                        long rowCents = rs.getLong(3);
+                        items.add(rs.getInt(1));
+                        quantity[0] += rowQuantity;
+                        cents[0] += rowCents;
+                        prices.add(new double[]{rowCents / 100.0 / rowQuantity, Math.abs(rowQuantity)});
+                        quantities.add(new double[]{rowQuantity, 1});
+                    }
+                }
+            } finally {
+                for (int year : ShardManager.plan(fromDate, toDate)) ShardManager.detach(conn, year);
+            }
+            return null;
+        });
+
+        double[] quantityQuantiles = new double[SalesSummary.QUANTILES.length];
+        double[] priceQuantiles = new double[SalesSummary.QUANTILES.length];
+        for (int i = 0; i < SalesSummary.QUANTILES.length; i++) {
+            quantityQuantiles[i] = weightedQuantile(quantities, SalesSummary.QUANTILES[i]);
+            priceQuantiles[i] = weightedQuantile(prices, SalesSummary.QUANTILES[i]);
         }
+        return new SalesSummary(false, items.size(), 0, quantity[0], cents[0] / 100.0,
+                quantityQuantiles, priceQuantiles, System.currentTimeMillis() - start);
+    }
 
-        return finalData;
+    // Smallest value whose cumulative weight reaches q of the total; values are {value, weight}.
+    private static double weightedQuantile(List<double[]> values, double q) {
+        if (values.isEmpty()) return Double.NaN;
+        values.sort(Comparator.comparingDouble(value -> value[0]));
+        double total = 0;
+        for (double[] value : values) total += value[1];
+        double cumulative = 0;
+        for (double[] value : values) {
+            cumulative += value[1];
+            if (cumulative >= q * total) return value[0];
+        }
+        return values.get(values.size() - 1)[0];
     }
 
-    public static String buildQueryWithParams(String sql, List<Object> params) {
-        for (Object param : params) {
-            String value = (param instanceof String) ? "'" + param + "'" : String.valueOf(param);
-            sql = sql.replaceFirst("\\?", value);
+    // Approximate top n items by quantity from the day sketches: every product is looked up in the
+    // merged count-min sketch, so no sales are read. Quantities may be overstated by up to
+    // CountMinSketch.errorBound(). Returns item rows with quantity set, best first.
+    public List<AnalyticsData> getTopItemsApproximate(LocalDate fromDate, LocalDate toDate, List<Integer> storeIds, int n) {
+        List<AnalyticsData> top = new ArrayList<>();
+        if (n <= 0) return top;
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+        Comparator<AnalyticsData> byQuantity = Comparator.comparingInt(AnalyticsData::getQuantity);
+        PriorityQueue<AnalyticsData> heap = new PriorityQueue<>(n + 1, byQuantity);
+        try {
+            ReadConnectionPool.read(conn -> {
+                CountMinSketch frequencies = SalesSketches.read(conn, fromDate, toDate, stores).getFrequencies();
+                if (frequencies.getTotal() == 0) return null;
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT p.item_number, p.label, c.category, c.subcategory, p.price " +
+                             "FROM Product p LEFT JOIN Category c ON c.id = p.category_id")) {
+                    while (rs.next()) {
+                        long estimate = frequencies.estimate(rs.getInt("item_number"));
+                        if (estimate <= 0 || (heap.size() == n && estimate <= heap.peek().getQuantity())) continue;
+                        double cost = rs.getDouble("price");
+                        heap.add(new AnalyticsData(rs.getInt("item_number"), rs.getString("label"),
+                                rs.getString("category"), rs.getString("subcategory"), cost, 0.0,
+                                round2(cost * estimate), 0.0, (int) estimate));
+                        if (heap.size() > n) heap.poll();
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error estimating top items: " + e.getMessage());
+            return top;
         }
-        return sql;
+        top.addAll(heap);
+        top.sort(byQuantity.reversed());
+        return top;
     }
 
-    public Map<String, Integer> getQuantityBySubcategory(LocalDate fromDate, LocalDate toDate, List<String> selectedPairs) {
-        Map<String, Integer> distribution = new HashMap<>();
+    // Per-item measures over the SalesDaily rows d of a range, joined to Product p and Category c.
+    // Read rows with readItemTotals, which derives Retail from sales_cents.
+    private static final String ITEM_TOTALS = "p.item_number, p.label, c.category, c.subcategory, p.price AS cost, " +
+            "SUM(d.quantity) AS total_quantity, SUM(d.quantity) * p.price AS total_cost, " +
+            "SUM(d.sales_cents) / 100.0 AS total_retail, SUM(d.sales_cents) AS sales_cents";
 
-        boolean selectAll = selectedPairs.contains("ALL");
-        StringBuilder whereClause = new StringBuilder();
+    private static final double ABC_A = 0.80;
+    private static final double ABC_B = 0.95;
 
-        if (!selectAll && !selectedPairs.isEmpty()) {
-            List<String> conditions = new ArrayList<>();
-            for (int i = 0; i < selectedPairs.size(); i++) {
-                conditions.add("(p.category = ? AND p.subcategory = ?)");
-            }
-            whereClause.append("AND (").append(String.join(" OR ", conditions)).append(")");
+    // Per-item totals across all shards on one pooled connection, handed to the handler off the
+    // cursor. With rankBy set, rows are ordered best first and carry the metric's grand total.
+    private static void streamItemTotals(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                         List<String> subcategories, List<Integer> storeIds, RankMetric rankBy,
+                                         RowHandler handler) throws SQLException, IOException {
+        StringBuilder filterClause = new StringBuilder();
+        List<String> queryParams = new ArrayList<>();
+        appendCategoryFilter(filterClause, queryParams, categories, subcategories);
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+
+        String query = "SELECT " + ITEM_TOTALS +
+                (rankBy == null ? " " : ", SUM(SUM(" + (rankBy == RankMetric.REVENUE ? "d.sales_cents / 100.0" : "d.quantity") +
+                        ")) OVER () AS grand_total ") +
+                "FROM " + ShardManager.DAILY + " d " +
+                "JOIN Product p ON d.item_number = p.item_number " +
+                "JOIN Category c ON c.id = p.category_id " +
+                "WHERE d.day BETWEEN ? AND ? " +
+                (stores.isEmpty() ? "" : "AND d.store_id IN (" + String.join(",", Collections.nCopies(stores.size(), "?")) + ") ") +
+                filterClause + " " +
+                "GROUP BY p.item_number" +
+                (rankBy == null ? "" : " ORDER BY " + rankBy.getColumn() + " DESC, p.item_number");
+
+        try {
+            ReadConnectionPool.read(conn -> {
+                try (ShardManager.Reading reading = ShardManager.reading();
+                     PreparedStatement pstmt = ShardManager.prepare(conn, query, fromDate, toDate)) {
+                    int paramIndex = 1;
+                    pstmt.setLong(paramIndex++, fromDate.toEpochDay());
+                    pstmt.setLong(paramIndex++, toDate.toEpochDay());
+                    for (Integer storeId : stores) pstmt.setInt(paramIndex++, storeId);
+                    for (String param : queryParams) pstmt.setString(paramIndex++, param);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) handler.handle(rs);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    for (int year : ShardManager.plan(fromDate, toDate)) ShardManager.detach(conn, year);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        String query = "SELECT p.subcategory, SUM(s.quantity) AS totalQty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? " +
-                whereClause + " " +
-                "GROUP BY p.subcategory";
-
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+    // Item row of an ITEM_TOTALS result row, with the totals rounded to cents.
+    public static AnalyticsData readItemTotals(ResultSet rs) throws SQLException {
+        long quantity = rs.getLong("total_quantity");
+        return new AnalyticsData(
+                rs.getInt("item_number"),
+                rs.getString("label"),
+                rs.getString("category"),
+                rs.getString("subcategory"),
+                rs.getDouble("cost"),
+                averagePrice(rs.getLong("sales_cents"), quantity),
+                round2(rs.getDouble("total_cost")),
+                round2(rs.getDouble("total_retail")),
+                (int) quantity);
+    }
 
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
+    // Compares aligned periods of the same length as [fromDate, toDate], starting at each of
+    // periodStarts (the first is the current period). One indexed scan of SalesDaily covers every
+    // period, with one conditional SUM per period and measure. Rows come back ordered by category
+    // and subcategory with "Sub Total", "Category Total" and "Grand Total" rows added on the fly.
+    public List<PeriodComparison> comparePeriods(LocalDate fromDate, LocalDate toDate, List<LocalDate> periodStarts,
+                                                 List<String> categories, List<String> subcategories,
+                                                 List<Integer> storeIds) {
+        List<PeriodComparison> rows = new ArrayList<>();
+        int periods = periodStarts.size();
+        if (periods == 0) return rows;
+        long length = toDate.toEpochDay() - fromDate.toEpochDay();
 
-            int paramIndex = 3;
-            if (!selectAll && !selectedPairs.isEmpty()) {
-                for (String pair : selectedPairs) {
-                    String[] parts = pair.split(" - ");
-                    pstmt.setString(paramIndex++, parts[0]); // category
-                    pstmt.setString(paramIndex++, parts[1]); // subcategory
+        StringBuilder filterClause = new StringBuilder();
+        List<String> queryParams = new ArrayList<>();
+        appendCategoryFilter(filterClause, queryParams, categories, subcategories);
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+
+        StringBuilder measures = new StringBuilder();
+        List<String> ranges = new ArrayList<>();
+        for (int i = 0; i < periods; i++) {
+            String inPeriod = "CASE WHEN d.day BETWEEN ? AND ? THEN ";
+            measures.append(", SUM(").append(inPeriod).append("d.quantity ELSE 0 END) AS q").append(i)
+                    .append(", SUM(").append(inPeriod).append("d.sales_cents ELSE 0 END) / 100.0 AS r").append(i)
+                    .append(", SUM(").append(inPeriod).append("d.quantity * p.price ELSE 0 END) AS c").append(i);
+            ranges.add("d.day BETWEEN ? AND ?");
+        }
+        String query = "SELECT p.item_number, p.label, c.category, c.subcategory" + measures + " " +
+                "FROM " + ShardManager.DAILY + " d " +
+                "JOIN Product p ON d.item_number = p.item_number " +
+                "JOIN Category c ON c.id = p.category_id " +
+                "WHERE (" + String.join(" OR ", ranges) + ") " +
+                (stores.isEmpty() ? "" : "AND d.store_id IN (" + String.join(",", Collections.nCopies(stores.size(), "?")) + ") ") +
+                filterClause + " " +
+                "GROUP BY p.item_number " +
+                "ORDER BY c.category, c.subcategory, q0 DESC, p.label";
+
+        LocalDate earliest = Collections.min(periodStarts);
+        LocalDate latest = Collections.max(periodStarts).plusDays(length);
+        try (ShardManager.Reading reading = ShardManager.reading();
+             Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = ShardManager.prepare(conn, query, earliest, latest)) {
+            int paramIndex = 1;
+            for (LocalDate start : periodStarts) {
+                for (int measure = 0; measure < 3; measure++) {
+                    pstmt.setLong(paramIndex++, start.toEpochDay());
+                    pstmt.setLong(paramIndex++, start.toEpochDay() + length);
                 }
             }
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String subcategory = rs.getString("subcategory");
-                int totalQty = rs.getInt("totalQty");
-                distribution.put(subcategory, totalQty);
+            for (LocalDate start : periodStarts) {
+                pstmt.setLong(paramIndex++, start.toEpochDay());
+                pstmt.setLong(paramIndex++, start.toEpochDay() + length);
+            }
+            for (Integer storeId : stores) pstmt.setInt(paramIndex++, storeId);
+            for (String param : queryParams) pstmt.setString(paramIndex++, param);
+
+            PeriodComparison subtotal = null;
+            PeriodComparison categoryTotal = null;
+            PeriodComparison grandTotal = new PeriodComparison(-1, RollupAggregator.GRAND_TOTAL, "", "", periods);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String category = rs.getString("category");
+                    String subcategory = rs.getString("subcategory");
+                    if (categoryTotal != null && !Objects.equals(categoryTotal.getCategory(), category)) {
+                        rows.add(subtotal);
+                        rows.add(categoryTotal);
+                        subtotal = null;
+                        categoryTotal = null;
+                    } else if (subtotal != null && !Objects.equals(subtotal.getSubcategory(), subcategory)) {
+                        rows.add(subtotal);
+                        subtotal = null;
+                    }
+                    if (categoryTotal == null) {
+                        categoryTotal = new PeriodComparison(-1, RollupAggregator.CATEGORY_TOTAL, category, "", periods);
+                    }
+                    if (subtotal == null) {
+                        subtotal = new PeriodComparison(-1, RollupAggregator.SUB_TOTAL, category, subcategory, periods);
+                    }
+
+                    PeriodComparison item = new PeriodComparison(rs.getInt("item_number"), rs.getString("label"),
+                            category, subcategory, periods);
+                    for (int i = 0; i < periods; i++) {
+                        item.add(i, rs.getInt("q" + i), rs.getDouble("r" + i), rs.getDouble("c" + i));
+                    }
+                    rows.add(item);
+                    subtotal.add(item);
+                    categoryTotal.add(item);
+                    grandTotal.add(item);
+                }
+            }
+            if (categoryTotal != null) {
+                rows.add(subtotal);
+                rows.add(categoryTotal);
+                rows.add(grandTotal);
             }
-
         } catch (SQLException e) {
-            System.err.println("Error fetching subcategory quantity distribution: " + e.getMessage());
+            System.err.println("Error comparing periods: " + e.getMessage());
         }
-
-        return distribution;
+        return rows;
     }
 
+    // Fills the 7- and 28-day velocity (units per day up to and including asOf) of the item rows from
+    // the stored velocity rings, one ring per item and store, so the cost does not depend on how
+    // much history there is. Total rows get the sum of the items they cover. Only an asOf before the
+    // latest imported day falls back to summing the daily facts of those 28 days.
+    public void addVelocity(List<AnalyticsData> rows, LocalDate asOf, List<Integer> storeIds) {
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+        String storeFilter = stores.isEmpty() ? "" :
+                "store_id IN (" + String.join(",", Collections.nCopies(stores.size(), "?")) + ")";
+        int day = (int) asOf.toEpochDay();
+        Map<Integer, long[]> sums = new HashMap<>();
+        boolean stale = false;
+
+        try (Connection conn = DatabaseHelper.connect()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT item_number, end_day, ring, sum7, sum28 " +
+                    "FROM SalesVelocity" + (stores.isEmpty() ? "" : " WHERE " + storeFilter))) {
+                for (int i = 0; i < stores.size(); i++) pstmt.setInt(i + 1, stores.get(i));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        long[] itemSums = VelocityTracker.read(rs).sumsAsOf(day);
+                        if (itemSums == null) {
+                            stale = true;
+                            break;
+                        }
+                        long[] total = sums.computeIfAbsent(rs.getInt("item_number"), k -> new long[2]);
+                        total[0] += itemSums[0];
+                        total[1] += itemSums[1];
+                    }
+                }
+            }
 
-    public Map<String, Map<String, Integer>> getSalesTrendByCategory(LocalDate fromDate, LocalDate toDate, String category) {
-        Map<String, Map<String, Integer>> trendData = new HashMap<>();
-        String query = "SELECT p.category, s.from_date, SUM(s.quantity) as qty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? AND p.category = ? " +
-                "GROUP BY p.category, s.from_date " +
-                "ORDER BY p.category, s.from_date";
-
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-            pstmt.setString(3, category);
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String cat = rs.getString("category");
-                LocalDate date = rs.getDate("from_date").toLocalDate();
-                int qty = rs.getInt("qty");
-
-                trendData.computeIfAbsent(cat, k -> new HashMap<>())
-                        .put(date.toString(), qty);
+            if (stale) {
+                sums.clear();
+                try (ShardManager.Reading reading = ShardManager.reading();
+                     PreparedStatement pstmt = ShardManager.prepare(conn, "SELECT item_number, " +
+                        "SUM(CASE WHEN day > ? THEN quantity ELSE 0 END), SUM(quantity) " +
+                        "FROM " + ShardManager.DAILY + " WHERE day BETWEEN ? AND ? " +
+                        (stores.isEmpty() ? "" : "AND " + storeFilter + " ") + "GROUP BY item_number",
+                        asOf.minusDays(VelocityTracker.WINDOW - 1), asOf)) {
+                    pstmt.setInt(1, day - VelocityTracker.SHORT_WINDOW);
+                    pstmt.setInt(2, day - VelocityTracker.WINDOW + 1);
+                    pstmt.setInt(3, day);
+                    for (int i = 0; i < stores.size(); i++) pstmt.setInt(i + 4, stores.get(i));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) sums.put(rs.getInt(1), new long[]{rs.getLong(2), rs.getLong(3)});
+                    }
+                }
             }
         } catch (SQLException e) {
-            System.err.println("Error in getSalesTrendByCategory: " + e.getMessage());
+            System.err.println("Error reading sales velocity: " + e.getMessage());
+            return;
         }
-        return trendData;
-    }
 
-    public Map<String, Map<String, Integer>> getSalesTrendBySubcategory(LocalDate fromDate, LocalDate toDate, String subcategory) {
-        Map<String, Map<String, Integer>> trendData = new HashMap<>();
-        String query = "SELECT p.subcategory, s.from_date, SUM(s.quantity) as qty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? AND p.subcategory = ? " +
-                "GROUP BY p.subcategory, s.from_date " +
-                "ORDER BY p.subcategory, s.from_date";
-
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-            pstmt.setString(3, subcategory);
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String subcat = rs.getString("subcategory");
-                LocalDate date = rs.getDate("from_date").toLocalDate();
-                int qty = rs.getInt("qty");
+        Map<Integer, double[]> perItem = new HashMap<>();
+        sums.forEach((item, itemSums) -> perItem.put(item, new double[]{
+                itemSums[0] / (double) VelocityTracker.SHORT_WINDOW, itemSums[1] / (double) VelocityTracker.WINDOW}));
+        fillWithTotals(rows, perItem, (row, velocity) -> {
+            row.velocity7Property().set(round2(velocity[0]));
+            row.velocity28Property().set(round2(velocity[1]));
+        });
+    }
 
-                trendData.computeIfAbsent(subcat, k -> new HashMap<>())
-                        .put(date.toString(), qty);
+    // Hands every item row its values from perItem (zeros when missing) and every total row the sum
+    // of the items it covers. Totals follow their items in the rollup order, so running sums are enough.
+    private static void fillWithTotals(List<AnalyticsData> rows, Map<Integer, double[]> perItem,
+                                       BiConsumer<AnalyticsData, double[]> setter) {
+        double[] subtotal = new double[2];
+        double[] categoryTotal = new double[2];
+        double[] grandTotal = new double[2];
+        for (AnalyticsData row : rows) {
+            double[] values;
+            if (RollupAggregator.SUB_TOTAL.equals(row.getLabel()) && row.getItemNumber() == -1) {
+                values = subtotal.clone();
+                Arrays.fill(subtotal, 0);
+            } else if (RollupAggregator.CATEGORY_TOTAL.equals(row.getLabel()) && row.getItemNumber() == -1) {
+                values = categoryTotal.clone();
+                Arrays.fill(categoryTotal, 0);
+            } else if (RollupAggregator.GRAND_TOTAL.equals(row.getLabel()) && row.getItemNumber() == -1) {
+                values = grandTotal.clone();
+                Arrays.fill(grandTotal, 0);
+            } else if (row.getItemNumber() == -1) {
+                continue;
+            } else {
+                values = perItem.getOrDefault(row.getItemNumber(), new double[2]);
+                for (double[] total : List.of(subtotal, categoryTotal, grandTotal)) {
+                    total[0] += values[0];
+                    total[1] += values[1];
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("Error in getSalesTrendBySubcategory: " + e.getMessage());
+            setter.accept(row, values);
         }
-        return trendData;
     }
 
+    // Fills the forecast units for the 7 and 28 days after the latest imported day from the cached
+    // demand models (all stores together). Models are rolled over days without sales in memory, so
+    // an item that stopped selling is forecast from its quiet days too.
+    public void addForecasts(List<AnalyticsData> rows) {
+        Set<Integer> items = new HashSet<>();
+        for (AnalyticsData row : rows) {
+            if (row.getItemNumber() != -1) items.add(row.getItemNumber());
+        }
+        Map<Integer, double[]> perItem = new HashMap<>();
+        try {
+            ReadConnectionPool.read(conn -> {
+                Integer lastDay = getLastDay(conn);
+                if (lastDay == null) return null;
+                DemandForecast.read(conn, items).forEach((item, model) -> {
+                    model.advanceTo(lastDay);
+                    perItem.put(item, new double[]{model.forecastTotal(7), model.forecastTotal(28)});
+                });
+                return null;
+            });
+        } catch (SQLException e) {
+            System.err.println("Error reading demand forecasts: " + e.getMessage());
+            return;
+        }
+        fillWithTotals(rows, perItem, (row, forecast) -> {
+            row.forecast7Property().set(Math.round(forecast[0] * 10.0) / 10.0);
+            row.forecast28Property().set(Math.round(forecast[1] * 10.0) / 10.0);
+        });
+    }
 
-    public List<AnalyticsData> getWeeklyAnalyticsData(LocalDate fromDate, LocalDate toDate, List<String> categories, List<String> weekRanges) {
-        List<AnalyticsData> analyticsDataList = new ArrayList<>();
-
-        boolean selectAll = categories.contains("ALL");
-        String categoryFilter = selectAll ? "" :
-                "AND c.category IN (" +
-                        String.join(",", categories.stream().map(c -> "?").toArray(String[]::new)) +
-                        ")";
-
-        String query = "SELECT p.item_number, p.label, c.category, p.price as cost, s.price as retail, " +
-                "s.quantity, s.from_date, s.to_date, " +
-                "ROUND(SUM(s.quantity * p.price), 2) AS total_cost, " +
-                "ROUND(SUM(s.quantity * s.price), 2) AS total_retail " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "JOIN Category c ON p.category = c.category " +
-                "WHERE (s.from_date >= ? AND s.to_date <= ?) " + categoryFilter + " " +
-                "GROUP BY p.item_number, p.label, c.category, p.price, s.quantity, s.from_date, s.to_date " +
-                "ORDER BY s.from_date, p.category, total_quantity DESC";
-
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-
-            int paramIndex = 3;
-            if (!selectAll) {
-                for (String category : categories) {
-                    pstmt.setString(paramIndex++, category);
-                }
-            }
-
-            ResultSet rs = pstmt.executeQuery();
-            Map<Integer, AnalyticsData> dataMap = new HashMap<>();
-
-            while (rs.next()) {
-                int itemNumber = rs.getInt("item_number");
-                String label = rs.getString("label");
-                String category = rs.getString("category");
-                double cost = rs.getDouble("cost");
-                double retail = rs.getDouble("retail");
-                double total_cost = rs.getDouble("total_cost");
-                double total_retail = rs.getDouble("total_retail");
-                int quantity = rs.getInt("quantity");
-                LocalDate saleStartDate = rs.getDate("from_date").toLocalDate();
-                LocalDate saleEndDate = rs.getDate("to_date").toLocalDate();
-
-                // Get week-wise breakdown
-                Map<String, Integer> weeklySales = calculateWeeklySales(saleStartDate, saleEndDate, quantity, weekRanges);
-
-                if (dataMap.containsKey(itemNumber)) {
-                    dataMap.get(itemNumber).mergeWeeklySales(weeklySales);
-                } else {
-                    AnalyticsData analyticsData = new AnalyticsData(itemNumber, label, category, cost, retail, total_cost, total_retail, quantity);
-                    analyticsData.setWeeklySales(weeklySales);
-                    dataMap.put(itemNumber, analyticsData);
+    // Daily forecast for the next days after the latest imported day, one "<name> (forecast)" line
+    // per category, subcategory or product label (groupBy "Category", "Subcategory" or "Product"),
+    // summed over the group's items. names are the categories or subcategories to show; products
+    // are shown for the categories in names.
+    public Map<String, Map<String, Integer>> getForecastTrend(String groupBy, List<String> names, int days) {
+        Map<String, Map<String, Integer>> trendData = new LinkedHashMap<>();
+        if (names.isEmpty()) return trendData;
+        String column = switch (groupBy) {
+            case "Subcategory" -> "c.subcategory";
+            case "Product" -> "p.label";
+            default -> "c.category";
+        };
+        String filterColumn = groupBy.equals("Subcategory") ? "c.subcategory" : "c.category";
+        boolean all = names.contains("ALL");
+        String query = "SELECT p.item_number, " + column + " AS name FROM Product p " +
+                "JOIN Category c ON c.id = p.category_id" +
+                (all ? "" : " WHERE " + filterColumn + " IN (" + String.join(",", Collections.nCopies(names.size(), "?")) + ")");
+        try {
+            ReadConnectionPool.read(conn -> {
+                Integer lastDay = getLastDay(conn);
+                if (lastDay == null) return null;
+                Map<Integer, String> groups = new HashMap<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                    if (!all) {
+                        for (int i = 0; i < names.size(); i++) pstmt.setString(i + 1, names.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) groups.put(rs.getInt("item_number"), rs.getString("name"));
+                    }
                 }
-            }
-
-            analyticsDataList.addAll(dataMap.values());
-
+                Map<String, double[]> totals = new TreeMap<>();
+                DemandForecast.read(conn, groups.keySet()).forEach((item, model) -> {
+                    model.advanceTo(lastDay);
+                    double[] total = totals.computeIfAbsent(groups.get(item), k -> new double[days]);
+                    for (int h = 1; h <= days; h++) total[h - 1] += model.forecast(h);
+                });
+                totals.forEach((name, total) -> {
+                    Map<String, Integer> trend = new LinkedHashMap<>();
+                    for (int h = 1; h <= days; h++) {
+                        trend.put(LocalDate.ofEpochDay(lastDay + h).toString(), (int) Math.round(total[h - 1]));
+                    }
+                    trendData.put(name + " (forecast)", trend);
+                });
+                return null;
+            });
         } catch (SQLException e) {
-            System.err.println("Error fetching weekly analytics data: " + e.getMessage());
+            System.err.println("Error building forecast trend: " + e.getMessage());
         }
-        return analyticsDataList;
+        return trendData;
     }
 
-    private Map<String, Integer> calculateWeeklySales(LocalDate saleStart, LocalDate saleEnd, int totalQuantity, List<String> weekRanges) {
-        Map<String, Integer> weeklySales = new HashMap<>();
-
-        long totalDays = ChronoUnit.DAYS.between(saleStart, saleEnd) + 1;
-        int perDayQty = (totalDays > 0) ? totalQuantity / (int) totalDays : 0;
-
-        for (String week : weekRanges) {
-            String[] dates = week.split(" to ");
-            LocalDate weekStart = LocalDate.parse(dates[0]);
-            LocalDate weekEnd = LocalDate.parse(dates[1]);
-
-            if (!(saleEnd.isBefore(weekStart) || saleStart.isAfter(weekEnd))) {
-                long overlapDays = ChronoUnit.DAYS.between(
-                        saleStart.isBefore(weekStart) ? weekStart : saleStart,
-                        saleEnd.isAfter(weekEnd) ? weekEnd : saleEnd
-                ) + 1;
-
-                weeklySales.put(week, (int) (overlapDays * perDayQty));
-            } else {
-                weeklySales.put(week, 0);
-            }
+    private static Integer getLastDay(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(day) FROM SalesDaily")) {
+            return rs.next() && rs.getObject(1) != null ? rs.getInt(1) : null;
         }
-
-        return weeklySales;
     }
 
-    public Map<String, Integer> getCategoryQuantityDistribution(LocalDate fromDate, LocalDate toDate, String category) {
-        Map<String, Integer> distribution = new HashMap<>();
-        String query = "SELECT p.label, SUM(s.quantity) as totalQty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "JOIN Category c ON p.category = c.category " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? AND c.category = ? " +
-                "GROUP BY p.label";
 
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+    // Same aggregation as getAnalyticsData, but rows are handed to the handler straight off the
+    // cursor, ordered by category, subcategory and quantity so callers can emit subtotals as they go.
+    // Read rows with readItemTotals.
+    public long streamAnalyticsRows(LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                    List<String> subcategories, List<Integer> storeIds,
+                                    RowHandler handler) throws SQLException, IOException {
+        StringBuilder filterClause = new StringBuilder();
+        List<String> queryParams = new ArrayList<>();
+        appendCategoryFilter(filterClause, queryParams, categories, subcategories);
+        List<Object> params = new ArrayList<>();
+        List<Integer> stores = storeIds == null ? List.of() : new ArrayList<>(new LinkedHashSet<>(storeIds));
+        params.addAll(stores);
+        params.addAll(queryParams);
+
+        String query = SalesWindow.CTE +
+                "SELECT " + ITEM_TOTALS + " " +
+                "FROM w CROSS JOIN " + ShardManager.DAILY + " d " +
+                "JOIN Product p ON d.item_number = p.item_number " +
+                "JOIN Category c ON c.id = p.category_id " +
+                "WHERE d.day BETWEEN w.from_day AND w.to_day " +
+                (stores.isEmpty() ? "" : "AND d.store_id IN (" + String.join(",", Collections.nCopies(stores.size(), "?")) + ") ") +
+                filterClause + " " +
+                "GROUP BY p.item_number " +
+                "ORDER BY c.category, c.subcategory, total_quantity DESC, p.label";
 
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-            pstmt.setString(3, category);
+        return streamQuery(query, fromDate, toDate, params, handler);
+    }
 
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String label = rs.getString("label");
-                int totalQty = rs.getInt("totalQty");
-                distribution.put(label, totalQty);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error fetching category quantity distribution: " + e.getMessage());
-        }
-        return distribution;
+    // Quantity and sales per item and calendar period, summed from the SalesDaily facts and ordered
+    // by item so each item can be written before the next one starts.
+    public long streamPeriodSaleRows(LocalDate fromDate, LocalDate toDate, List<String> categories, CalendarLevel level,
+                                     RowHandler handler) throws SQLException, IOException {
+        StringBuilder filterClause = new StringBuilder();
+        List<String> queryParams = new ArrayList<>();
+        appendCategoryFilter(filterClause, queryParams, categories, List.of("ALL"));
+
+        String query = SalesWindow.CTE +
+                "SELECT p.item_number, p.label, c.category, c.subcategory, k." + level.getColumn() + " AS period, " +
+                "SUM(d.quantity) AS quantity, SUM(d.sales_cents) AS sales_cents " +
+                "FROM w CROSS JOIN " + ShardManager.DAILY + " d " +
+                "JOIN Calendar k ON k.day = d.day " +
+                "JOIN Product p ON d.item_number = p.item_number " +
+                "JOIN Category c ON c.id = p.category_id " +
+                "WHERE d.day BETWEEN w.from_day AND w.to_day " + filterClause + " " +
+                "GROUP BY p.item_number, period " +
+                "ORDER BY p.item_number, period";
+
+        return streamQuery(query, fromDate, toDate, new ArrayList<>(queryParams), handler);
     }
 
-    public Map<String, Map<String, Integer>> getSalesTrendByLabel(LocalDate fromDate, LocalDate toDate, String category) {
-        Map<String, Map<String, Integer>> trendData = new HashMap<>();
-        String query = "SELECT p.label, s.from_date, SUM(s.quantity) as qty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "JOIN Category c ON p.category = c.category " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? AND c.category = ? " +
-                "GROUP BY p.label, s.from_date " +
-                "ORDER BY p.label, s.from_date";
+    private long streamQuery(String query, LocalDate fromDate, LocalDate toDate, List<Object> queryParams,
+                             RowHandler handler) throws SQLException, IOException {
+        long rows = 0;
+        try (ShardManager.Reading reading = ShardManager.reading();
+             Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = ShardManager.prepare(conn, query, fromDate, toDate)) {
 
-        try (Connection conn = DatabaseHelper.connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int paramIndex = SalesWindow.bind(pstmt, fromDate, toDate);
+            for (Object param : queryParams) {
+                pstmt.setObject(paramIndex++, param);
+            }
+            pstmt.setFetchSize(1000);
 
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-            pstmt.setString(3, category);
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String label = rs.getString("label");
-                LocalDate saleDate = rs.getDate("from_date").toLocalDate();
-                int qty = rs.getInt("qty");
-                String dateStr = saleDate.toString();
-                Map<String, Integer> dateMap = trendData.getOrDefault(label, new HashMap<>());
-                dateMap.put(dateStr, qty);
-                trendData.put(label, dateMap);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                    rows++;
+                }
             }
-        } catch (SQLException e) {
-            System.err.println("Error fetching sales trend by label: " + e.getMessage());
         }
-        return trendData;
+        return rows;
     }
 
-    public Map<String, Integer> getQuantityByCategory(LocalDate fromDate, LocalDate toDate, List<String> selectedCategories) {
-        Map<String, Integer> distribution = new HashMap<>();
-        boolean selectAll = selectedCategories.contains("ALL");
-
-        String categoryFilter = "";
-        if (!selectAll) {
-            categoryFilter = "AND p.category IN (" +
-                    String.join(",", selectedCategories.stream().map(c -> "?").toArray(String[]::new)) +
-                    ")";
+    public static String buildQueryWithParams(String sql, List<Object> params) {
+        for (Object param : params) {
+            String value = (param instanceof String) ? "'" + param + "'" : String.valueOf(param);
+            sql = sql.replaceFirst("\\?", value);
         }
+        return sql;
+    }
 
-        String query = "SELECT p.category, SUM(s.quantity) AS totalQty " +
-                "FROM Sales s " +
-                "JOIN Product p ON s.item_number = p.item_number " +
-                "WHERE s.from_date >= ? AND s.to_date <= ? " +
-                categoryFilter + " GROUP BY p.category";
-
+    // Periods of the level that touch [fromDate, toDate], in date order, clipped to the range.
+    public List<CalendarPeriod> getPeriods(LocalDate fromDate, LocalDate toDate, CalendarLevel level) {
+        List<CalendarPeriod> periods = new ArrayList<>();
+        String query = "SELECT " + level.getColumn() + " AS period, MIN(day) AS first_day, MAX(day) AS last_day " +
+                "FROM Calendar WHERE day BETWEEN ? AND ? GROUP BY period ORDER BY first_day";
         try (Connection conn = DatabaseHelper.connect();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setDate(1, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(2, java.sql.Date.valueOf(toDate));
-
-            int paramIndex = 3;
-            if (!selectAll) {
-                for (String cat : selectedCategories) {
-                    pstmt.setString(paramIndex++, cat.split(" - ")[0]); // only category part
+            pstmt.setLong(1, fromDate.toEpochDay());
+            pstmt.setLong(2, toDate.toEpochDay());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    periods.add(new CalendarPeriod(rs.getString("period"),
+                            LocalDate.ofEpochDay(rs.getLong("first_day")), LocalDate.ofEpochDay(rs.getLong("last_day"))));
                 }
             }
-
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                String category = rs.getString("category");
-                int quantity = rs.getInt("totalQty");
-                distribution.put(category, quantity);
-            }
-
         } catch (SQLException e) {
-            System.err.println("Error in getQuantityByCategory: " + e.getMessage());
+            System.err.println("Error fetching calendar periods: " + e.getMessage());
         }
-
-        return distribution;
+        return periods;
     }
-
-
 }
@@ -0,0 +1,73 @@
+package services;
+
+import database.DatabaseHelper;
+import models.SalesAnomaly;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnomalyService {
+
+    // Flags written by the import-time detector, newest day and highest score first.
+    public List<SalesAnomaly> getAnomalies(boolean includeReviewed, String metric) {
+        List<SalesAnomaly> anomalies = new ArrayList<>();
+        String query = "SELECT a.id, a.sale_id, a.item_number, p.label, s.store_name, " +
+                "date(a.day * 86400, 'unixepoch') AS date, a.metric, a.value, a.expected, a.score, a.reviewed " +
+                "FROM SalesAnomaly a " +
+                "LEFT JOIN Product p ON p.item_number = a.item_number " +
+                "LEFT JOIN Store s ON s.id = a.store_id " +
+                "WHERE (? = 1 OR a.reviewed = 0) AND (? IS NULL OR a.metric = ?) " +
+                "ORDER BY a.day DESC, a.score DESC";
+
+        try (Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            pstmt.setInt(1, includeReviewed ? 1 : 0);
+            pstmt.setString(2, metric);
+            pstmt.setString(3, metric);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Object saleId = rs.getObject("sale_id");
+                    anomalies.add(new SalesAnomaly(
+                            rs.getInt("id"),
+                            saleId == null ? null : ((Number) saleId).longValue(),
+                            rs.getInt("item_number"),
+                            rs.getString("label"),
+                            rs.getString("store_name"),
+                            rs.getString("date"),
+                            rs.getString("metric"),
+                            rs.getDouble("value"),
+                            Math.round(rs.getDouble("expected") * 100.0) / 100.0,
+                            rs.getDouble("score"),
+                            rs.getInt("reviewed") == 1));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error fetching sales anomalies: " + e.getMessage());
+        }
+
+        return anomalies;
+    }
+
+    public boolean setReviewed(List<SalesAnomaly> anomalies, boolean reviewed) {
+        if (anomalies.isEmpty()) return false;
+        String query = "UPDATE SalesAnomaly SET reviewed = ? WHERE id = ?";
+
+        try (Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            conn.setAutoCommit(false);
+            for (SalesAnomaly anomaly : anomalies) {
+                pstmt.setInt(1, reviewed ? 1 : 0);
+                pstmt.setInt(2, anomaly.getId());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+            for (SalesAnomaly anomaly : anomalies) anomaly.setReviewed(reviewed);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error updating sales anomalies: " + e.getMessage());
+            return false;
+        }
+    }
+}
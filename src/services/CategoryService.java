@@ -72,6 +72,7 @@ public class CategoryService {
                 if (rs.next()) {
                     category.setId(rs.getInt(1));
                 }
+                DashboardContext.invalidate();
                 return true;
             } else {
                 return false;
@@ -84,6 +85,7 @@ public class CategoryService {
 
     // Updates an existing category.
     // This method updates both fields (in case the main category is also allowed to change).
+    // Products reference the row by id, so a rename is this single-row update.
     public boolean updateCategory(Category category) {
         String query = "UPDATE Category SET category = ?, subcategory = ? WHERE id = ?";
         try (Connection conn = DatabaseHelper.connect();
@@ -92,6 +94,7 @@ public class CategoryService {
             pstmt.setString(2, category.getSubcategory());
             pstmt.setInt(3, category.getId());
             int rows = pstmt.executeUpdate();
+            DashboardContext.invalidate();
             return rows > 0;
         } catch (SQLException e) {
             System.out.println("Error updating category: " + e.getMessage());
@@ -99,6 +102,54 @@ public class CategoryService {
         }
     }
 
+    // Updates several categories in one transaction. Returns the categories that matched no row.
+    public List<Category> updateCategories(List<Category> categories) throws SQLException {
+        String query = "UPDATE Category SET category = ?, subcategory = ? WHERE id = ?";
+        List<Category> missing = new ArrayList<>();
+        try (Connection conn = DatabaseHelper.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                for (Category category : categories) {
+                    pstmt.setString(1, category.getCategory());
+                    pstmt.setString(2, category.getSubcategory());
+                    pstmt.setInt(3, category.getId());
+                    pstmt.addBatch();
+                }
+                int[] counts = pstmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) missing.add(categories.get(i));
+                }
+                conn.commit();
+                DashboardContext.invalidate();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return missing;
+    }
+
+    // Looks up the id of a category/subcategory pair on the caller's connection, creating the pair
+    // if it does not exist yet. Returns null when no category is given.
+    public static Integer getOrCreateCategoryId(Connection conn, String category, String subcategory) throws SQLException {
+        if (category == null || category.isEmpty()) return null;
+        String sub = subcategory == null ? "" : subcategory;
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT OR IGNORE INTO Category (category, subcategory) VALUES (?, ?)")) {
+            pstmt.setString(1, category);
+            pstmt.setString(2, sub);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT id FROM Category WHERE category = ? AND subcategory = ?")) {
+            pstmt.setString(1, category);
+            pstmt.setString(2, sub);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
     // Deletes a category based on its id.
     public boolean deleteCategory(int id) {
         String query = "DELETE FROM Category WHERE id = ?";
@@ -106,6 +157,7 @@ public class CategoryService {
              PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, id);
             int rows = pstmt.executeUpdate();
+            DashboardContext.invalidate();
             return rows > 0;
         } catch (SQLException e) {
             System.out.println("Error deleting category: " + e.getMessage());
@@ -0,0 +1,472 @@
+package services;
+
+import database.ReadConnectionPool;
+import database.ShardManager;
+import models.AnalyticsData;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Data shared by the charts and the analytics table. The daily facts of one date range are read
+// once into column arrays, one row per day, item and store, and every pie, line and table view of
+// that range is aggregated from them in memory. Product, category and store names are dictionary
+// codes, so a view is a single pass over the rows.
+//
+// The context also holds the cross-filter: values clicked in one view (a pie slice, a line, a table
+// row) restrict every other view. A view is not restricted by its own dimension, so the clicked
+// slice stays in place next to the others. The slice is dropped when sales, products or categories
+// change (invalidate) or a different range is loaded.
+public class DashboardContext {
+    public static final String NO_STORE = "(none)";
+    // Store ids start at 1
+    private static final int NO_STORE_ID = 0;
+
+    public enum Dimension {
+        CATEGORY("Category"), SUBCATEGORY("Subcategory"), PRODUCT("Product"), STORE("Store");
+
+        private final String label;
+
+        Dimension(String label) {
+            this.label = label;
+        }
+
+        // Dimension of a "View By" choice; Category for anything else.
+        public static Dimension of(String label) {
+            for (Dimension dimension : values()) {
+                if (dimension.label.equals(label)) return dimension;
+            }
+            return CATEGORY;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    // Category, subcategory and store restriction of one view, with the same meaning as the
+    // analytics queries: "ALL" (or null) matches every category or subcategory, both lists given
+    // match the category and subcategory pairs, and no store ids means every store.
+    public static class Filter {
+        private final Set<String> categories;
+        private final Set<String> subcategories;
+        private final Set<Integer> storeIds;
+
+        public Filter(List<String> categories, List<String> subcategories, List<Integer> storeIds) {
+            this.categories = categories == null || categories.contains("ALL") ? null : new HashSet<>(categories);
+            this.subcategories = subcategories == null || subcategories.contains("ALL") ? null : new HashSet<>(subcategories);
+            this.storeIds = storeIds == null || storeIds.isEmpty() ? null : new HashSet<>(storeIds);
+        }
+
+        boolean matches(String category, String subcategory) {
+            return (categories == null || categories.contains(category))
+                    && (subcategories == null || subcategories.contains(subcategory));
+        }
+
+        boolean matchesStore(Integer storeId) {
+            return storeIds == null || storeIds.contains(storeId);
+        }
+    }
+
+    private static final DashboardContext SHARED = new DashboardContext();
+
+    private final Map<Dimension, Set<String>> selection = new EnumMap<>(Dimension.class);
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private int fromDay;
+    private boolean loaded;
+
+    // Fact rows: day offset from fromDay, item index, store index (0 = no store), quantity, cents
+    private int rows;
+    private int[] rowDay = new int[0];
+    private int[] rowItem = new int[0];
+    private int[] rowStore = new int[0];
+    private long[] rowQuantity = new long[0];
+    private long[] rowCents = new long[0];
+
+    // Items by index, with their code in each item dimension
+    private int[] itemNumbers = new int[0];
+    private double[] itemCosts = new double[0];
+    private final int[][] itemCodes = new int[3][];
+    // Store ids by index (index 0 is null), with their STORE code
+    private Integer[] storeIds = new Integer[0];
+    private int[] storeCodes = new int[0];
+    private final List<List<String>> dictionaries = new ArrayList<>();
+
+    public static DashboardContext shared() {
+        return SHARED;
+    }
+
+    // Drops the cached slice; called after sales, products or categories change.
+    public static void invalidate() {
+        synchronized (SHARED) {
+            SHARED.loaded = false;
+        }
+    }
+
+    // Makes sure the slice of [fromDate, toDate] is loaded, reading it when the range changed or the
+    // slice was invalidated. Returns false when it could not be read.
+    public synchronized boolean load(LocalDate fromDate, LocalDate toDate) {
+        if (loaded && fromDate.equals(this.fromDate) && toDate.equals(this.toDate)) return true;
+        loaded = false;
+        try {
+            read(fromDate, toDate);
+        } catch (SQLException e) {
+            System.err.println("Error loading dashboard data: " + e.getMessage());
+            rows = 0;
+            return false;
+        }
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.fromDay = (int) fromDate.toEpochDay();
+        loaded = true;
+        return true;
+    }
+
+    public synchronized boolean isLoaded(LocalDate fromDate, LocalDate toDate) {
+        return loaded && fromDate.equals(this.fromDate) && toDate.equals(this.toDate);
+    }
+
+    // Reads the dimensions, then the facts with one task per (store, shard) pair on the pooled read
+    // connections (see AnalyticsService.fanOut). Sales without a store are read as store id 0.
+    private void read(LocalDate fromDate, LocalDate toDate) throws SQLException {
+        List<Map<Integer, Integer>> dimensions = ReadConnectionPool.read(conn -> List.of(readItems(conn), readStores(conn)));
+        Map<Integer, Integer> items = dimensions.get(0);
+        Map<Integer, Integer> stores = dimensions.get(1);
+        List<Integer> ids = new ArrayList<>(stores.keySet());
+        ids.add(NO_STORE_ID);
+
+        int firstDay = (int) fromDate.toEpochDay();
+        int lastDay = (int) toDate.toEpochDay();
+        List<List<Chunk>> chunks = AnalyticsService.fanOut(fromDate, toDate, ids, (conn, sales, storeId) ->
+                readChunk(conn, ShardManager.dailyTable(sales), firstDay, lastDay, storeId,
+                        items, storeId == NO_STORE_ID ? 0 : stores.get(storeId)));
+
+        int total = 0;
+        for (List<Chunk> storeChunks : chunks) {
+            for (Chunk chunk : storeChunks) total += chunk.size;
+        }
+        rowDay = new int[total];
+        rowItem = new int[total];
+        rowStore = new int[total];
+        rowQuantity = new long[total];
+        rowCents = new long[total];
+        rows = 0;
+        for (List<Chunk> storeChunks : chunks) {
+            for (Chunk chunk : storeChunks) {
+                System.arraycopy(chunk.day, 0, rowDay, rows, chunk.size);
+                System.arraycopy(chunk.item, 0, rowItem, rows, chunk.size);
+                Arrays.fill(rowStore, rows, rows + chunk.size, chunk.store);
+                System.arraycopy(chunk.quantity, 0, rowQuantity, rows, chunk.size);
+                System.arraycopy(chunk.cents, 0, rowCents, rows, chunk.size);
+                rows += chunk.size;
+            }
+        }
+    }
+
+    // Fact rows of one store in one shard's daily table.
+    private static Chunk readChunk(Connection conn, String daily, int firstDay, int lastDay, int storeId,
+                                   Map<Integer, Integer> items, int store) throws SQLException {
+        String query = "SELECT d.day, d.item_number, SUM(d.quantity), SUM(d.sales_cents) FROM " + daily + " d " +
+                "WHERE " + (storeId == NO_STORE_ID ? "d.store_id IS NULL" : "d.store_id = ?") +
+                " AND d.day BETWEEN ? AND ? GROUP BY d.day, d.item_number";
+        Chunk chunk = new Chunk(store);
+        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int paramIndex = 1;
+            if (storeId != NO_STORE_ID) pstmt.setInt(paramIndex++, storeId);
+            pstmt.setInt(paramIndex++, firstDay);
+            pstmt.setInt(paramIndex, lastDay);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // Sales of items that are not in the product table are left out, as in the queries
+                    Integer item = items.get(rs.getInt(2));
+                    if (item != null) chunk.add(rs.getInt(1) - firstDay, item, rs.getLong(3), rs.getLong(4));
+                }
+            }
+        }
+        return chunk;
+    }
+
+    private static class Chunk {
+        final int store;
+        int size;
+        int[] day = new int[256];
+        int[] item = new int[256];
+        long[] quantity = new long[256];
+        long[] cents = new long[256];
+
+        Chunk(int store) {
+            this.store = store;
+        }
+
+        void add(int dayOffset, int itemIndex, long rowQuantity, long rowCents) {
+            if (size == day.length) {
+                day = Arrays.copyOf(day, size * 2);
+                item = Arrays.copyOf(item, size * 2);
+                quantity = Arrays.copyOf(quantity, size * 2);
+                cents = Arrays.copyOf(cents, size * 2);
+            }
+            day[size] = dayOffset;
+            item[size] = itemIndex;
+            quantity[size] = rowQuantity;
+            cents[size] = rowCents;
+            size++;
+        }
+    }
+
+    // Reads the item dimension; returns item number -> item index.
+    private Map<Integer, Integer> readItems(Connection conn) throws SQLException {
+        dictionaries.clear();
+        for (int i = 0; i < Dimension.values().length; i++) dictionaries.add(new ArrayList<>());
+        List<Map<String, Integer>> codes = new ArrayList<>();
+        for (int i = 0; i < Dimension.values().length; i++) codes.add(new HashMap<>());
+
+        Map<Integer, Integer> index = new HashMap<>();
+        List<int[]> itemRows = new ArrayList<>();
+        List<Double> costs = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT p.item_number, p.price, c.category, c.subcategory, p.label " +
+                     "FROM Product p JOIN Category c ON c.id = p.category_id")) {
+            while (rs.next()) {
+                index.put(rs.getInt(1), index.size());
+                costs.add(rs.getDouble(2));
+                itemRows.add(new int[]{rs.getInt(1),
+                        code(codes, Dimension.CATEGORY, rs.getString(3)),
+                        code(codes, Dimension.SUBCATEGORY, rs.getString(4)),
+                        code(codes, Dimension.PRODUCT, rs.getString(5))});
+            }
+        }
+        itemNumbers = new int[itemRows.size()];
+        itemCosts = new double[itemRows.size()];
+        for (int d = 0; d < itemCodes.length; d++) itemCodes[d] = new int[itemRows.size()];
+        for (int i = 0; i < itemRows.size(); i++) {
+            itemNumbers[i] = itemRows.get(i)[0];
+            itemCosts[i] = costs.get(i);
+            for (int d = 0; d < itemCodes.length; d++) itemCodes[d][i] = itemRows.get(i)[d + 1];
+        }
+        return index;
+    }
+
+    // Reads the stores; returns store id -> store index. Index 0 stands for sales without a store.
+    private Map<Integer, Integer> readStores(Connection conn) throws SQLException {
+        List<Map<String, Integer>> codes = new ArrayList<>();
+        for (int i = 0; i < Dimension.values().length; i++) codes.add(new HashMap<>());
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> storeCodeList = new ArrayList<>();
+        ids.add(null);
+        storeCodeList.add(code(codes, Dimension.STORE, NO_STORE));
+
+        Map<Integer, Integer> index = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, store_name FROM Store ORDER BY store_name")) {
+            while (rs.next()) {
+                index.put(rs.getInt(1), ids.size());
+                ids.add(rs.getInt(1));
+                storeCodeList.add(code(codes, Dimension.STORE, rs.getString(2)));
+            }
+        }
+        storeIds = ids.toArray(new Integer[0]);
+        storeCodes = storeCodeList.stream().mapToInt(Integer::intValue).toArray();
+        return index;
+    }
+
+    private int code(List<Map<String, Integer>> codes, Dimension dimension, String value) {
+        String key = value == null ? "" : value;
+        return codes.get(dimension.ordinal()).computeIfAbsent(key, k -> {
+            dictionaries.get(dimension.ordinal()).add(k);
+            return dictionaries.get(dimension.ordinal()).size() - 1;
+        });
+    }
+
+    // === VIEWS ===
+
+    // Quantity per value of dimension, largest first.
+    public synchronized Map<String, Integer> getQuantityBy(Dimension dimension, Filter filter) {
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        if (!loaded) return totals;
+        boolean[] items = itemMask(filter, dimension);
+        boolean[] stores = storeMask(filter, dimension);
+        int size = dictionaries.get(dimension.ordinal()).size();
+        long[] quantity = new long[size];
+        boolean[] seen = new boolean[size];
+        for (int r = 0; r < rows; r++) {
+            if (!items[rowItem[r]] || !stores[rowStore[r]]) continue;
+            int code = codeOf(dimension, r);
+            quantity[code] += rowQuantity[r];
+            seen[code] = true;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int code = 0; code < size; code++) {
+            if (seen[code]) order.add(code);
+        }
+        order.sort((a, b) -> Long.compare(quantity[b], quantity[a]));
+        for (int code : order) totals.put(dictionaries.get(dimension.ordinal()).get(code), (int) quantity[code]);
+        return totals;
+    }
+
+    // Daily quantity ("yyyy-MM-dd" -> quantity) per value of dimension, by name.
+    public synchronized Map<String, Map<String, Integer>> getTrendBy(Dimension dimension, Filter filter) {
+        Map<String, Map<String, Integer>> trends = new TreeMap<>();
+        if (!loaded) return trends;
+        boolean[] items = itemMask(filter, dimension);
+        boolean[] stores = storeMask(filter, dimension);
+        int days = (int) (toDate.toEpochDay() - fromDay + 1);
+        Map<Integer, long[]> byCode = new HashMap<>();
+        Map<Integer, boolean[]> seen = new HashMap<>();
+        for (int r = 0; r < rows; r++) {
+            if (!items[rowItem[r]] || !stores[rowStore[r]]) continue;
+            int code = codeOf(dimension, r);
+            byCode.computeIfAbsent(code, c -> new long[days])[rowDay[r]] += rowQuantity[r];
+            seen.computeIfAbsent(code, c -> new boolean[days])[rowDay[r]] = true;
+        }
+        byCode.forEach((code, quantities) -> {
+            Map<String, Integer> trend = new TreeMap<>();
+            boolean[] hasDay = seen.get(code);
+            for (int day = 0; day < days; day++) {
+                if (hasDay[day]) trend.put(LocalDate.ofEpochDay(fromDay + day).toString(), (int) quantities[day]);
+            }
+            trends.put(dictionaries.get(dimension.ordinal()).get(code), trend);
+        });
+        return trends;
+    }
+
+    // Item rows with subtotals, as AnalyticsService.getAnalyticsData returns them (Retail is the
+    // average selling price, see AnalyticsService.averagePrice).
+    public synchronized List<AnalyticsData> getItemRows(Filter filter) {
+        if (!loaded) return new ArrayList<>();
+        return itemRows(itemMask(filter, null), storeMask(filter, null));
+    }
+
+    // Item rows with subtotals per store, keyed by store name in name order; stores without sales
+    // in the slice are left out.
+    public synchronized Map<String, List<AnalyticsData>> getItemRowsByStore(Filter filter) {
+        Map<String, List<AnalyticsData>> byStore = new LinkedHashMap<>();
+        if (!loaded) return byStore;
+        boolean[] items = itemMask(filter, null);
+        boolean[] stores = storeMask(filter, null);
+        for (int store = 1; store < storeIds.length; store++) {
+            if (!stores[store]) continue;
+            boolean[] only = new boolean[storeIds.length];
+            only[store] = true;
+            List<AnalyticsData> storeRows = itemRows(items, only);
+            if (!storeRows.isEmpty()) {
+                byStore.put(dictionaries.get(Dimension.STORE.ordinal()).get(storeCodes[store]), storeRows);
+            }
+        }
+        return byStore;
+    }
+
+    private List<AnalyticsData> itemRows(boolean[] items, boolean[] stores) {
+        long[] quantity = new long[itemNumbers.length];
+        long[] cents = new long[itemNumbers.length];
+        boolean[] seen = new boolean[itemNumbers.length];
+        for (int r = 0; r < rows; r++) {
+            int item = rowItem[r];
+            if (!items[item] || !stores[rowStore[r]]) continue;
+            quantity[item] += rowQuantity[r];
+            cents[item] += rowCents[r];
+            seen[item] = true;
+        }
+        List<AnalyticsData> data = new ArrayList<>();
+        for (int item = 0; item < itemNumbers.length; item++) {
+            if (!seen[item]) continue;
+            double retail = AnalyticsService.averagePrice(cents[item], quantity[item]);
+            data.add(new AnalyticsData(itemNumbers[item],
+                    valueOf(Dimension.PRODUCT, item), valueOf(Dimension.CATEGORY, item), valueOf(Dimension.SUBCATEGORY, item),
+                    itemCosts[item], retail, quantity[item] * itemCosts[item], cents[item] / 100.0, (int) quantity[item]));
+        }
+        return data.isEmpty() ? data : AnalyticsService.withSubtotals(data);
+    }
+
+    private int codeOf(Dimension dimension, int row) {
+        return dimension == Dimension.STORE ? storeCodes[rowStore[row]] : itemCodes[dimension.ordinal()][rowItem[row]];
+    }
+
+    private String valueOf(Dimension dimension, int item) {
+        return dictionaries.get(dimension.ordinal()).get(itemCodes[dimension.ordinal()][item]);
+    }
+
+    // Items passing the view filter and the cross-filter of every item dimension except skip.
+    private boolean[] itemMask(Filter filter, Dimension skip) {
+        boolean[][] selected = new boolean[3][];
+        for (Dimension dimension : List.of(Dimension.CATEGORY, Dimension.SUBCATEGORY, Dimension.PRODUCT)) {
+            if (dimension != skip) selected[dimension.ordinal()] = selectedCodes(dimension);
+        }
+        boolean[] mask = new boolean[itemNumbers.length];
+        for (int item = 0; item < mask.length; item++) {
+            boolean match = filter == null
+                    || filter.matches(valueOf(Dimension.CATEGORY, item), valueOf(Dimension.SUBCATEGORY, item));
+            for (int d = 0; d < selected.length && match; d++) {
+                if (selected[d] != null) match = selected[d][itemCodes[d][item]];
+            }
+            mask[item] = match;
+        }
+        return mask;
+    }
+
+    // Store indexes passing the view filter and, unless skip is STORE, the store cross-filter.
+    private boolean[] storeMask(Filter filter, Dimension skip) {
+        boolean[] selected = skip == Dimension.STORE ? null : selectedCodes(Dimension.STORE);
+        boolean[] mask = new boolean[storeIds.length];
+        for (int store = 0; store < mask.length; store++) {
+            boolean match = filter == null || filter.storeIds == null
+                    || (storeIds[store] != null && filter.matchesStore(storeIds[store]));
+            mask[store] = match && (selected == null || selected[storeCodes[store]]);
+        }
+        return mask;
+    }
+
+    // Codes selected in dimension, or null when nothing is selected there.
+    private boolean[] selectedCodes(Dimension dimension) {
+        Set<String> values = selection.get(dimension);
+        if (values == null || values.isEmpty()) return null;
+        List<String> dictionary = dictionaries.get(dimension.ordinal());
+        boolean[] codes = new boolean[dictionary.size()];
+        for (int code = 0; code < codes.length; code++) codes[code] = values.contains(dictionary.get(code));
+        return codes;
+    }
+
+    // === CROSS-FILTER ===
+
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    // Selects value in dimension, or unselects it when it was selected, and notifies the views.
+    public void toggle(Dimension dimension, String value) {
+        synchronized (this) {
+            Set<String> values = selection.computeIfAbsent(dimension, d -> new LinkedHashSet<>());
+            if (!values.remove(value)) values.add(value);
+            if (values.isEmpty()) selection.remove(dimension);
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    public void clearSelection() {
+        synchronized (this) {
+            if (selection.isEmpty()) return;
+            selection.clear();
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    public synchronized boolean hasSelection(Dimension dimension) {
+        return selection.containsKey(dimension);
+    }
+
+    public synchronized boolean isSelected(Dimension dimension, String value) {
+        Set<String> values = selection.get(dimension);
+        return values != null && values.contains(value);
+    }
+
+    // "Category: Beer, Wine; Store: HUB", or "" when nothing is selected.
+    public synchronized String describeSelection() {
+        List<String> parts = new ArrayList<>();
+        selection.forEach((dimension, values) -> parts.add(dimension + ": " + String.join(", ", values)));
+        return String.join("; ", parts);
+    }
+}
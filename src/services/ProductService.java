@@ -11,10 +11,9 @@ public class ProductService {
     public List<Product> getAllProducts() {
         List<Product> products = new ArrayList<>();
         // Updated query: retrieve main category (as productClass) and subcategory.
-        String query = "SELECT p.item_number, p.label, p.category as productClass, p.subcategory, " +
-                "p.price, p.rec_status " +
-                "FROM Product p LEFT JOIN Category c ON " +
-                "p.category = c.category";
+        String query = "SELECT p.item_number, p.label, COALESCE(c.category, p.category) as productClass, " +
+                "COALESCE(c.subcategory, p.subcategory) as subcategory, p.price, p.rec_status " +
+                "FROM Product p LEFT JOIN Category c ON c.id = p.category_id";
         try (Connection conn = DatabaseHelper.connect();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
@@ -39,9 +38,9 @@ public class ProductService {
     public List<Product> getProducts(int limit, int offset, String filterQuery, List<Object> filterParams) {
         List<Product> products = new ArrayList<>();
         // Updated query to include subcategory
-        String query = "SELECT p.item_number, p.label, p.category as productClass, p.subcategory, " +
-                "p.price, p.rec_status " +
-                "FROM Product p LEFT JOIN Category c ON p.category = c.category " +
+        String query = "SELECT p.item_number, p.label, COALESCE(c.category, p.category) as productClass, " +
+                "COALESCE(c.subcategory, p.subcategory) as subcategory, p.price, p.rec_status " +
+                "FROM Product p LEFT JOIN Category c ON c.id = p.category_id " +
                 "WHERE 1=1 " + filterQuery + " " +
                 "ORDER BY p.item_number LIMIT ? OFFSET ?";
         try (Connection conn = DatabaseHelper.connect();
@@ -75,7 +74,7 @@ public class ProductService {
     public boolean updateProduct(Product product) {
         String query = "UPDATE Product SET label = ?, " +
                 "category = ?, " +
-                "subcategory = ?, price = ?, rec_status = ? " +
+                "subcategory = ?, price = ?, rec_status = ?, category_id = ? " +
                 "WHERE item_number = ?";
         try (Connection conn = DatabaseHelper.connect();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
@@ -85,8 +84,10 @@ public class ProductService {
             pstmt.setString(3, product.getSubcategory());
             pstmt.setDouble(4, product.getPrice());
             pstmt.setString(5, product.getRecStatus());
-            pstmt.setInt(6, product.getItemNumber());
+            pstmt.setObject(6, CategoryService.getOrCreateCategoryId(conn, product.getProductClass(), product.getSubcategory()));
+            pstmt.setInt(7, product.getItemNumber());
             pstmt.executeUpdate();
+            DashboardContext.invalidate();
             return true;
         } catch (SQLException e) {
             System.out.println("Error updating product: " + e.getMessage());
@@ -94,10 +95,44 @@ public class ProductService {
         return false;
     }
 
+    // Updates several products in one transaction. Returns the products that matched no row.
+    public List<Product> updateProducts(List<Product> products) throws SQLException {
+        String query = "UPDATE Product SET label = ?, " +
+                "category = ?, " +
+                "subcategory = ?, price = ?, rec_status = ?, category_id = ? " +
+                "WHERE item_number = ?";
+        List<Product> missing = new ArrayList<>();
+        try (Connection conn = DatabaseHelper.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                for (Product product : products) {
+                    pstmt.setString(1, product.getLabel());
+                    pstmt.setString(2, product.getProductClass());
+                    pstmt.setString(3, product.getSubcategory());
+                    pstmt.setDouble(4, product.getPrice());
+                    pstmt.setString(5, product.getRecStatus());
+                    pstmt.setObject(6, CategoryService.getOrCreateCategoryId(conn, product.getProductClass(), product.getSubcategory()));
+                    pstmt.setInt(7, product.getItemNumber());
+                    pstmt.addBatch();
+                }
+                int[] counts = pstmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) missing.add(products.get(i));
+                }
+                conn.commit();
+                DashboardContext.invalidate();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        return missing;
+    }
+
     // Inserts a new product record.
     public boolean insertProduct(Product product) {
-        String query = "INSERT INTO Product (category, subcategory, item_number, label, price, rec_status) " +
-                "VALUES (?, ?, ?, ?, ?, ?)";
+        String query = "INSERT INTO Product (category, subcategory, item_number, label, price, rec_status, category_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (Connection conn = DatabaseHelper.connect();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setString(1, product.getProductClass());
@@ -106,7 +141,9 @@ public class ProductService {
             pstmt.setString(4, product.getLabel());
             pstmt.setDouble(5, product.getPrice());
             pstmt.setString(6, product.getRecStatus());
+            pstmt.setObject(7, CategoryService.getOrCreateCategoryId(conn, product.getProductClass(), product.getSubcategory()));
             int rows = pstmt.executeUpdate();
+            DashboardContext.invalidate();
             return rows > 0;
         } catch (SQLException e) {
             System.out.println("Error inserting product: " + e.getMessage());
@@ -121,10 +158,114 @@ public class ProductService {
              PreparedStatement pstmt = conn.prepareStatement(query)) {
             pstmt.setInt(1, itemNumber);
             int rows = pstmt.executeUpdate();
+            DashboardContext.invalidate();
             return rows > 0;
         } catch (SQLException e) {
             System.out.println("Error deleting product: " + e.getMessage());
             return false;
         }
     }
+
+    // === BULK OPERATIONS ===
+    // Each method runs as a single transaction: the *Items variants use one prepared batch over the
+    // selected item numbers, the *Matching variants one set-based statement over the same filter
+    // clause getProducts() takes. They return the number of affected products, or -1 on error.
+
+    public int adjustPricesForItems(List<Integer> itemNumbers, double amount, boolean percent) {
+        return executeForItems("UPDATE Product SET price = " + priceExpression(percent) + " WHERE item_number = ?",
+                itemNumbers, amount);
+    }
+
+    public int adjustPricesMatching(String filterQuery, List<Object> filterParams, double amount, boolean percent) {
+        return executeMatching("UPDATE Product SET price = " + priceExpression(percent) + " WHERE item_number IN ",
+                filterQuery, filterParams, amount);
+    }
+
+    public int setStatusForItems(List<Integer> itemNumbers, String status) {
+        return executeForItems("UPDATE Product SET rec_status = ? WHERE item_number = ?", itemNumbers, status);
+    }
+
+    public int setStatusMatching(String filterQuery, List<Object> filterParams, String status) {
+        return executeMatching("UPDATE Product SET rec_status = ? WHERE item_number IN ", filterQuery, filterParams, status);
+    }
+
+    public int deleteProducts(List<Integer> itemNumbers) {
+        return executeForItems("DELETE FROM Product WHERE item_number = ?", itemNumbers, null);
+    }
+
+    // Number of products the filter matches, or -1 on error.
+    public int countProductsMatching(String filterQuery, List<Object> filterParams) {
+        String query = "SELECT COUNT(*) FROM Product p LEFT JOIN Category c ON c.id = p.category_id WHERE 1=1 " + filterQuery;
+        try (Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int paramIndex = 1;
+            if (filterParams != null) {
+                for (Object param : filterParams) {
+                    pstmt.setObject(paramIndex++, param);
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error counting products: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    public int deleteProductsMatching(String filterQuery, List<Object> filterParams) {
+        return executeMatching("DELETE FROM Product WHERE item_number IN ", filterQuery, filterParams, null);
+    }
+
+    private static String priceExpression(boolean percent) {
+        return percent ? "ROUND(MAX(price * (1 + ? / 100.0), 0), 2)" : "ROUND(MAX(price + ?, 0), 2)";
+    }
+
+    private int executeForItems(String query, List<Integer> itemNumbers, Object value) {
+        try (Connection conn = DatabaseHelper.connect()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+                for (int itemNumber : itemNumbers) {
+                    int paramIndex = 1;
+                    if (value != null) pstmt.setObject(paramIndex++, value);
+                    pstmt.setInt(paramIndex, itemNumber);
+                    pstmt.addBatch();
+                }
+                int affected = 0;
+                for (int count : pstmt.executeBatch()) {
+                    affected += Math.max(count, 0);
+                }
+                conn.commit();
+                DashboardContext.invalidate();
+                return affected;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.out.println("Error in bulk product update: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private int executeMatching(String statement, String filterQuery, List<Object> filterParams, Object value) {
+        String query = statement + "(SELECT p.item_number FROM Product p " +
+                "LEFT JOIN Category c ON c.id = p.category_id WHERE 1=1 " + filterQuery + ")";
+        try (Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            int paramIndex = 1;
+            if (value != null) pstmt.setObject(paramIndex++, value);
+            if (filterParams != null) {
+                for (Object param : filterParams) {
+                    pstmt.setObject(paramIndex++, param);
+                }
+            }
+            int rows = pstmt.executeUpdate();
+            DashboardContext.invalidate();
+            return rows;
+        } catch (SQLException e) {
+            System.out.println("Error in bulk product update: " + e.getMessage());
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,112 @@
+package services;
+
+import models.AnalyticsData;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Comparator;
+import java.util.Objects;
+
+// Single-pass rollup over item rows that arrive sorted by category and subcategory. Every item row
+// is passed straight through; a "Sub Total" row follows each subcategory, a "Category Total" row
+// each category and a "Grand Total" row the whole input, emitted the moment the group closes.
+// Only the three running totals are kept, so any number of rows streams in constant memory.
+public class RollupAggregator {
+    public static final String SUB_TOTAL = "Sub Total";
+    public static final String CATEGORY_TOTAL = "Category Total";
+    public static final String GRAND_TOTAL = "Grand Total";
+
+    // Order the rollup expects: category, subcategory, then quantity descending and label.
+    public static final Comparator<AnalyticsData> ORDER = Comparator
+            .comparing(AnalyticsData::getCategory, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(AnalyticsData::getSubcategory, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Comparator.comparingInt(AnalyticsData::getQuantity).reversed())
+            .thenComparing(AnalyticsData::getLabel, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    @FunctionalInterface
+    public interface RowSink {
+        void accept(AnalyticsData row) throws IOException;
+    }
+
+    private final RowSink sink;
+    private final Total subcategoryTotal = new Total();
+    private final Total categoryTotal = new Total();
+    private final Total grandTotal = new Total();
+    private String category;
+    private String subcategory;
+    private boolean started;
+
+    public RollupAggregator(RowSink sink) {
+        this.sink = sink;
+    }
+
+    public void add(AnalyticsData item) throws IOException {
+        boolean newCategory = !started || !Objects.equals(category, item.getCategory());
+        if (started && newCategory) {
+            closeSubcategory();
+            closeCategory();
+        } else if (started && !Objects.equals(subcategory, item.getSubcategory())) {
+            closeSubcategory();
+        }
+        started = true;
+        category = item.getCategory();
+        subcategory = item.getSubcategory();
+
+        sink.accept(item);
+        subcategoryTotal.add(item);
+        categoryTotal.add(item);
+        grandTotal.add(item);
+    }
+
+    // Closes the open groups and emits the grand total; nothing is emitted for empty input.
+    public void finish() throws IOException {
+        if (!started) return;
+        closeSubcategory();
+        closeCategory();
+        sink.accept(grandTotal.toRow(GRAND_TOTAL, "", ""));
+        grandTotal.reset();
+        started = false;
+    }
+
+    public static boolean isTotal(AnalyticsData row) {
+        return row.getItemNumber() == -1 && (SUB_TOTAL.equals(row.getLabel())
+                || CATEGORY_TOTAL.equals(row.getLabel()) || GRAND_TOTAL.equals(row.getLabel()));
+    }
+
+    private void closeSubcategory() throws IOException {
+        sink.accept(subcategoryTotal.toRow(SUB_TOTAL, category, subcategory));
+        subcategoryTotal.reset();
+    }
+
+    private void closeCategory() throws IOException {
+        sink.accept(categoryTotal.toRow(CATEGORY_TOTAL, category, ""));
+        categoryTotal.reset();
+    }
+
+    private static class Total {
+        private int quantity;
+        private double cost;
+        private double retail;
+
+        void add(AnalyticsData item) {
+            quantity += item.getQuantity();
+            cost += item.getTotalCost();
+            retail += item.getTotalRetail();
+        }
+
+        AnalyticsData toRow(String label, String category, String subcategory) {
+            return new AnalyticsData(-1, label, category, subcategory, 0.0, 0.0, round2(cost), round2(retail), quantity);
+        }
+
+        void reset() {
+            quantity = 0;
+            cost = 0;
+            retail = 0;
+        }
+    }
+
+    private static double round2(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+}
@@ -1,20 +1,29 @@
 package services;
 
 import database.DatabaseHelper;
+import database.ShardManager;
 import models.Sale;
+import models.SalesBatch;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class SalesService {
+    private static final String BATCH_QUERY = "SELECT s.item_number, s.quantity, s.price, s.from_date, s.to_date, " +
+            "s.store_id, COALESCE(st.store_name, s.store) FROM " + ShardManager.SALES + " s LEFT JOIN Store st ON st.id = s.store_id";
+
     public List<Sale> getAllSales() {
         List<Sale> sales = new ArrayList<>();
-        String query = "SELECT item_number, quantity, price, from_date, to_date, store FROM Sales";
+        String query = "SELECT s.item_number, s.quantity, s.price, s.from_date, s.to_date, " +
+                "COALESCE(st.store_name, s.store) AS store FROM " + ShardManager.SALES + " s LEFT JOIN Store st ON st.id = s.store_id";
 
-        try (Connection conn = DatabaseHelper.connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        try (ShardManager.Reading reading = ShardManager.reading();
+             Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = ShardManager.prepare(conn, query, null, null);
+             ResultSet rs = pstmt.executeQuery()) {
 
             while (rs.next()) {
                 sales.add(new Sale(
@@ -31,5 +40,60 @@ public class SalesService {
         }
         return sales;
     }
-}
 
+    public SalesBatch getSalesBatch() {
+        SalesBatch batch = new SalesBatch();
+        loadSalesBatch(batch);
+        batch.trimToSize();
+        return batch;
+    }
+
+    // Streams every sale straight into the batch columns without building Sale objects.
+    public void loadSalesBatch(SalesBatch batch) {
+        loadSalesBatch(batch, BATCH_QUERY, null, null);
+    }
+
+    // Sales inside [fromDate, toDate], ordered by from_date. Compared by day, since to_date holds
+    // the end of the last day.
+    public SalesBatch getSalesBatch(LocalDate fromDate, LocalDate toDate) {
+        SalesBatch batch = new SalesBatch();
+        loadSalesBatch(batch, BATCH_QUERY + " WHERE s.from_day >= ? AND s.to_day <= ? ORDER BY s.from_day",
+                fromDate, toDate);
+        batch.trimToSize();
+        return batch;
+    }
+
+    private void loadSalesBatch(SalesBatch batch, String query, LocalDate fromDate, LocalDate toDate) {
+        try (ShardManager.Reading reading = ShardManager.reading();
+             Connection conn = DatabaseHelper.connect();
+             PreparedStatement pstmt = ShardManager.prepare(conn, query, fromDate, toDate)) {
+            if (fromDate != null) {
+                pstmt.setInt(1, (int) fromDate.toEpochDay());
+                pstmt.setInt(2, (int) toDate.toEpochDay());
+            }
+            pstmt.setFetchSize(1000);
+            // Store.id -> batch store code, so the name is only read once per store.
+            Map<Integer, Integer> storeCodes = new HashMap<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int storeId = rs.getInt(6);
+                    Integer storeCode = rs.wasNull() ? null : storeCodes.get(storeId);
+                    if (storeCode == null) {
+                        storeCode = batch.encodeStore(rs.getString(7));
+                        if (storeId != 0) storeCodes.put(storeId, storeCode);
+                    }
+                    batch.add(
+                            rs.getInt(1),
+                            rs.getInt(2),
+                            rs.getDouble(3),
+                            (int) rs.getDate(4).toLocalDate().toEpochDay(),
+                            (int) rs.getDate(5).toLocalDate().toEpochDay(),
+                            storeCode
+                    );
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error fetching sales: " + e.getMessage());
+        }
+    }
+}
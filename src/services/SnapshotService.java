@@ -0,0 +1,171 @@
+package services;
+
+import models.AnalyticsData;
+import models.SalesBatch;
+import utils.ColumnarSnapshot;
+import utils.ColumnarSnapshotWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Saves analytics results and sales ranges as columnar snapshot files and reads them back.
+public class SnapshotService {
+    private static final String KIND_ANALYTICS = "analytics";
+    private static final String KIND_SALES = "sales";
+
+    private final SalesService salesService = new SalesService();
+
+    public void saveAnalytics(File file, LocalDate fromDate, LocalDate toDate, List<AnalyticsData> data) throws IOException {
+        int rows = data.size();
+        int[] itemNumbers = new int[rows];
+        String[] labels = new String[rows];
+        String[] categories = new String[rows];
+        String[] subcategories = new String[rows];
+        double[] costs = new double[rows];
+        double[] retails = new double[rows];
+        double[] totalCosts = new double[rows];
+        double[] totalRetails = new double[rows];
+        int[] quantities = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            AnalyticsData row = data.get(i);
+            itemNumbers[i] = row.getItemNumber();
+            labels[i] = row.getLabel();
+            categories[i] = row.getCategory();
+            subcategories[i] = row.getSubcategory();
+            costs[i] = row.getCost();
+            retails[i] = row.getRetail();
+            totalCosts[i] = row.getTotalCost();
+            totalRetails[i] = row.getTotalRetail();
+            quantities[i] = row.getQuantity();
+        }
+
+        new ColumnarSnapshotWriter(rows)
+                .property("kind", KIND_ANALYTICS)
+                .property("fromDate", fromDate.toString())
+                .property("toDate", toDate.toString())
+                .intColumn("item_number", itemNumbers)
+                .stringColumn("label", labels)
+                .stringColumn("category", categories)
+                .stringColumn("subcategory", subcategories)
+                .doubleColumn("cost", costs)
+                .doubleColumn("retail", retails)
+                .doubleColumn("total_cost", totalCosts)
+                .doubleColumn("total_retail", totalRetails)
+                .intColumn("quantity", quantities)
+                .write(file);
+    }
+
+    public List<AnalyticsData> openAnalytics(File file) throws IOException {
+        ColumnarSnapshot snapshot = openKind(file, KIND_ANALYTICS);
+        int itemNumber = snapshot.column("item_number");
+        int label = snapshot.column("label");
+        int category = snapshot.column("category");
+        int subcategory = snapshot.column("subcategory");
+        int cost = snapshot.column("cost");
+        int retail = snapshot.column("retail");
+        int totalCost = snapshot.column("total_cost");
+        int totalRetail = snapshot.column("total_retail");
+        int quantity = snapshot.column("quantity");
+
+        List<AnalyticsData> data = new ArrayList<>(snapshot.getRowCount());
+        for (int row = 0; row < snapshot.getRowCount(); row++) {
+            data.add(new AnalyticsData(
+                    snapshot.getInt(itemNumber, row),
+                    snapshot.getString(label, row),
+                    snapshot.getString(category, row),
+                    snapshot.getString(subcategory, row),
+                    snapshot.getDouble(cost, row),
+                    snapshot.getDouble(retail, row),
+                    snapshot.getDouble(totalCost, row),
+                    snapshot.getDouble(totalRetail, row),
+                    snapshot.getInt(quantity, row)));
+        }
+        return data;
+    }
+
+    // Date range an analytics snapshot was computed for, as {fromDate, toDate}.
+    public LocalDate[] getSnapshotRange(File file) throws IOException {
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+        return new LocalDate[]{
+                LocalDate.parse(snapshot.getProperty("fromDate")),
+                LocalDate.parse(snapshot.getProperty("toDate"))};
+    }
+
+    public int saveSales(File file, LocalDate fromDate, LocalDate toDate) throws IOException {
+        SalesBatch batch = salesService.getSalesBatch(fromDate, toDate);
+        int rows = batch.size();
+        int[] itemNumbers = new int[rows];
+        int[] quantities = new int[rows];
+        double[] prices = new double[rows];
+        int[] fromDays = new int[rows];
+        int[] toDays = new int[rows];
+        String[] stores = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            itemNumbers[i] = batch.getItemNumber(i);
+            quantities[i] = batch.getQuantity(i);
+            prices[i] = batch.getPrice(i);
+            fromDays[i] = batch.getFromDay(i);
+            toDays[i] = batch.getToDay(i);
+            stores[i] = batch.getStore(i);
+        }
+
+        new ColumnarSnapshotWriter(rows)
+                .property("kind", KIND_SALES)
+                .property("fromDate", fromDate.toString())
+                .property("toDate", toDate.toString())
+                .dateColumn("from_date", fromDays)
+                .dateColumn("to_date", toDays)
+                .intColumn("item_number", itemNumbers)
+                .intColumn("quantity", quantities)
+                .doubleColumn("price", prices)
+                .stringColumn("store", stores)
+                .write(file);
+        return rows;
+    }
+
+    public SalesBatch openSales(File file) throws IOException {
+        ColumnarSnapshot snapshot = openKind(file, KIND_SALES);
+        return readSales(snapshot, 0, snapshot.getRowCount(), Integer.MAX_VALUE);
+    }
+
+    // Only the sales starting inside [fromDate, toDate]; rows are stored by from_date, so the
+    // slice is found from the date runs without scanning the other columns.
+    public SalesBatch openSales(File file, LocalDate fromDate, LocalDate toDate) throws IOException {
+        ColumnarSnapshot snapshot = openKind(file, KIND_SALES);
+        int[] range = snapshot.slice(snapshot.column("from_date"), fromDate, toDate);
+        return readSales(snapshot, range[0], range[1], (int) toDate.toEpochDay());
+    }
+
+    private SalesBatch readSales(ColumnarSnapshot snapshot, int start, int end, int maxToDay) {
+        int fromDate = snapshot.column("from_date");
+        int toDate = snapshot.column("to_date");
+        int itemNumber = snapshot.column("item_number");
+        int quantity = snapshot.column("quantity");
+        int price = snapshot.column("price");
+        int store = snapshot.column("store");
+
+        SalesBatch batch = new SalesBatch();
+        for (int row = start; row < end; row++) {
+            if (snapshot.getEpochDay(toDate, row) > maxToDay) continue;
+            batch.add(snapshot.getInt(itemNumber, row),
+                    snapshot.getInt(quantity, row),
+                    snapshot.getDouble(price, row),
+                    snapshot.getEpochDay(fromDate, row),
+                    snapshot.getEpochDay(toDate, row),
+                    batch.encodeStore(snapshot.getString(store, row)));
+        }
+        batch.trimToSize();
+        return batch;
+    }
+
+    private ColumnarSnapshot openKind(File file, String kind) throws IOException {
+        ColumnarSnapshot snapshot = ColumnarSnapshot.open(file);
+        if (!kind.equals(snapshot.getProperty("kind"))) {
+            throw new IOException(file.getName() + " is not a " + kind + " snapshot");
+        }
+        return snapshot;
+    }
+}
@@ -6,9 +6,14 @@ import models.Store;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class StoreService {
 
+    // Store name -> Store.id, shared by everything that resolves sales to stores.
+    private static final Map<String, Integer> STORE_IDS = new ConcurrentHashMap<>();
+
     public List<Store> getAllStores() {
         List<Store> stores = new ArrayList<>();
         String query = "SELECT id, store_name, location FROM Store ORDER BY store_name";
@@ -63,6 +68,7 @@ public class StoreService {
             pstmt.setString(1, updatedStore.getStoreName());
             pstmt.setString(2, updatedStore.getLocation());
             pstmt.setInt(3, id);
+            STORE_IDS.clear();
             return pstmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
@@ -71,6 +77,39 @@ public class StoreService {
         }
     }
 
+    // Resolves a store name to its id on the caller's connection through the cached dictionary,
+    // creating the store if it is unknown. Returns null for a blank name.
+    public static Integer getOrCreateStoreId(Connection conn, String storeName) throws SQLException {
+        if (storeName == null || storeName.isBlank()) return null;
+        Integer cached = STORE_IDS.get(storeName);
+        if (cached != null) return cached;
+
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(id) FROM Store WHERE store_name = ?")) {
+            pstmt.setString(1, storeName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getObject(1) != null) {
+                    STORE_IDS.put(storeName, rs.getInt(1));
+                    return rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO Store (store_name, location) VALUES (?, 'Unknown')", Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, storeName);
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                rs.next();
+                STORE_IDS.put(storeName, rs.getInt(1));
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // Forgets cached ids, e.g. after a transaction that created stores was rolled back.
+    public static void clearCache() {
+        STORE_IDS.clear();
+    }
+
     public boolean deleteStoreById(int id) {
         String query = "DELETE FROM Store WHERE id = ?";
 
@@ -78,6 +117,7 @@ public class StoreService {
              PreparedStatement pstmt = conn.prepareStatement(query)) {
 
             pstmt.setInt(1, id);
+            STORE_IDS.clear();
             return pstmt.executeUpdate() > 0;
 
         } catch (SQLException e) {
@@ -0,0 +1,100 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Collects row edits and writes them on a background thread. Edits to the same key that arrive
+// before the next flush are merged (the newest copy of the row wins), and each flush writes all
+// pending rows through one BatchWriter call, i.e. one transaction.
+public class WriteBehindQueue<K, V> {
+    private static final List<WriteBehindQueue<?, ?>> QUEUES = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final long delayMillis;
+    private final BatchWriter<V> batchWriter;
+    private final Listener<V> listener;
+    private final ScheduledExecutorService executor;
+    private final Map<K, V> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    @FunctionalInterface
+    public interface BatchWriter<V> {
+        // Writes the rows and returns the ones that could not be saved.
+        List<V> write(List<V> rows) throws Exception;
+    }
+
+    public interface Listener<V> {
+        void saved(int count);
+        void failed(List<V> rows, String message);
+    }
+
+    public WriteBehindQueue(String name, long delayMillis, BatchWriter<V> batchWriter, Listener<V> listener) {
+        this.name = name;
+        this.delayMillis = delayMillis;
+        this.batchWriter = batchWriter;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        QUEUES.add(this);
+    }
+
+    public synchronized void submit(K key, V row) {
+        pending.remove(key);
+        pending.put(key, row);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(this::flushPending, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // Writes whatever is pending and waits for it; used on shutdown.
+    public void flush() {
+        try {
+            executor.submit(this::flushPending).get();
+        } catch (Exception e) {
+            System.err.println("Error flushing " + name + " edits: " + e.getMessage());
+        }
+    }
+
+    public static void flushAll() {
+        for (WriteBehindQueue<?, ?> queue : QUEUES) {
+            queue.flush();
+        }
+    }
+
+    private void flushPending() {
+        List<V> rows;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            rows = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        try {
+            List<V> failed = batchWriter.write(rows);
+            if (failed.size() < rows.size()) {
+                listener.saved(rows.size() - failed.size());
+            }
+            if (!failed.isEmpty()) {
+                listener.failed(failed, failed.size() + " " + name + " edit(s) could not be saved.");
+            }
+        } catch (Exception e) {
+            System.err.println("Error saving " + name + " edits: " + e.getMessage());
+            listener.failed(rows, "Failed to save " + rows.size() + " " + name + " edit(s): " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package utils;
+
+import models.CalendarLevel;
+import models.CalendarPeriod;
+import database.RowHandler;
+import models.AnalyticsData;
+import services.AnalyticsService;
+import services.RollupAggregator;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+// Analytics exports. The date-range overloads stream: rows go from the query cursor straight into the
+// file, so neither the result set nor the formatted output is ever held in memory; BatchReports uses
+// these. The analytics tab instead writes the rows it already shows (see exportAnalytics(File, List,
+// LongConsumer)), which is not streamed. Safe to call off the FX thread.
+public class CSVExporter {
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final AnalyticsService analyticsService = new AnalyticsService();
+
+    // === 1. ANALYTICS REPORT ===
+    // Item rows grouped by category and subcategory, with the rollup's subtotal, category and grand
+    // total rows written as each group closes. Stores empty = all stores.
+    public long exportAnalytics(File file, LocalDate fromDate, LocalDate toDate, List<String> categories,
+                                List<String> subcategories, List<Integer> storeIds,
+                                LongConsumer progress) throws IOException, SQLException {
+        try (CSVWriter writer = CSVWriter.open(file)) {
+            writeAnalyticsHeader(writer);
+
+            RollupAggregator rollup = new RollupAggregator(row -> writeAnalyticsRow(writer, row));
+            long rows = analyticsService.streamAnalyticsRows(fromDate, toDate, categories, subcategories, storeIds,
+                    new RowHandler() {
+                        private long rowsRead;
+
+                        @Override
+                        public void handle(ResultSet rs) throws SQLException, IOException {
+                            rollup.add(AnalyticsService.readItemTotals(rs));
+                            if (++rowsRead % PROGRESS_INTERVAL == 0) progress.accept(rowsRead);
+                        }
+                    });
+            rollup.finish();
+            progress.accept(rows);
+            return rows;
+        }
+    }
+
+    // The same report from rows that already carry their subtotals, such as the analytics table
+    // shows them (see DashboardContext.getItemRows). Not streamed: the rows are in memory already,
+    // and only they carry the cross-filter. Returns the number of item rows.
+    public long exportAnalytics(File file, List<AnalyticsData> rows, LongConsumer progress) throws IOException {
+        long items = 0;
+        try (CSVWriter writer = CSVWriter.open(file)) {
+            writeAnalyticsHeader(writer);
+            for (AnalyticsData row : rows) {
+                writeAnalyticsRow(writer, row);
+                if (!RollupAggregator.isTotal(row) && ++items % PROGRESS_INTERVAL == 0) progress.accept(items);
+            }
+        }
+        progress.accept(items);
+        return items;
+    }
+
+    private static void writeAnalyticsHeader(CSVWriter writer) throws IOException {
+        writer.text("Item Number").text("Label").text("Category").text("Cost").text("Quantity").text("Sales");
+        writer.endRow();
+    }
+
+    private static void writeAnalyticsRow(CSVWriter writer, AnalyticsData row) throws IOException {
+        boolean total = RollupAggregator.isTotal(row);
+        if (total) {
+            writer.empty().text(row.getLabel());
+        } else {
+            writer.number(row.getItemNumber()).text(row.getLabel());
+        }
+        if (!total || RollupAggregator.SUB_TOTAL.equals(row.getLabel())) {
+            writer.text(row.getCategory(), row.getSubcategory());
+        } else {
+            writer.text(row.getCategory());
+        }
+        if (total) {
+            writer.empty();
+        } else {
+            writer.money(row.getRetail());
+        }
+        writer.number(row.getQuantity()).money(row.getTotalRetail());
+        writer.endRow();
+    }
+
+    // === 2. PERIOD REPORT ===
+    // One row per item with price, quantity and sales for each period of a calendar level, summed
+    // from the per-day facts in SalesDaily.
+    public long exportByPeriod(File file, LocalDate fromDate, LocalDate toDate, List<String> categories,
+                               CalendarLevel level, LongConsumer progress) throws IOException, SQLException {
+        List<CalendarPeriod> periods = analyticsService.getPeriods(fromDate, toDate, level);
+        Map<String, Integer> columns = new HashMap<>();
+        for (CalendarPeriod period : periods) columns.put(period.getKey(), columns.size());
+        int periodCount = periods.size();
+
+        try (CSVWriter writer = CSVWriter.open(file)) {
+            writer.text("Item Number").text("Label").text("Category");
+            for (CalendarPeriod period : periods) {
+                writer.text(period.toString()).empty().empty();
+            }
+            writer.endRow();
+            writer.empty().empty().empty();
+            for (int period = 0; period < periodCount; period++) {
+                writer.text("Price").text("Quantity").text("Sales");
+            }
+            writer.endRow();
+
+            PeriodItemState item = new PeriodItemState(periodCount);
+            long rows = analyticsService.streamPeriodSaleRows(fromDate, toDate, categories, level, rs -> {
+                int itemNumber = rs.getInt("item_number");
+                if (itemNumber != item.itemNumber) {
+                    item.writeTo(writer);
+                    item.start(itemNumber, rs.getString("label"), rs.getString("category"), rs.getString("subcategory"));
+                }
+
+                int period = columns.get(rs.getString("period"));
+                item.periodQuantity[period] = rs.getInt("quantity");
+                item.periodCents[period] = rs.getLong("sales_cents");
+
+                if (++item.rowsRead % PROGRESS_INTERVAL == 0) progress.accept(item.rowsRead);
+            });
+            item.writeTo(writer);
+            progress.accept(rows);
+            return rows;
+        }
+    }
+
+    private static class PeriodItemState {
+        private final int[] periodQuantity;
+        private final long[] periodCents;
+        private int itemNumber = Integer.MIN_VALUE;
+        private String label;
+        private String category;
+        private String subcategory;
+        private long rowsRead;
+
+        PeriodItemState(int periodCount) {
+            this.periodQuantity = new int[periodCount];
+            this.periodCents = new long[periodCount];
+        }
+
+        void start(int itemNumber, String label, String category, String subcategory) {
+            this.itemNumber = itemNumber;
+            this.label = label;
+            this.category = category;
+            this.subcategory = subcategory;
+            Arrays.fill(periodQuantity, 0);
+            Arrays.fill(periodCents, 0);
+        }
+
+        // The price column is the item's average price over the whole range.
+        void writeTo(CSVWriter writer) throws IOException {
+            if (itemNumber == Integer.MIN_VALUE) return;
+            long quantity = 0;
+            long cents = 0;
+            for (int period = 0; period < periodQuantity.length; period++) {
+                quantity += periodQuantity[period];
+                cents += periodCents[period];
+            }
+            double price = quantity == 0 ? 0 : cents / 100.0 / quantity;
+            writer.number(itemNumber).text(label).text(category, subcategory);
+            for (int period = 0; period < periodQuantity.length; period++) {
+                writer.money(price).number(periodQuantity[period]).money(periodCents[period] / 100.0);
+            }
+            writer.endRow();
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package utils;
 
+import database.AnomalyDetector;
+import database.DailyFacts;
+import database.DemandForecast;
 import database.DatabaseHelper;
+import database.SalesSketches;
+import database.SalesWindow;
+import database.VelocityTracker;
+import services.CategoryService;
+import services.DashboardContext;
+import services.StoreService;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -13,7 +22,9 @@ import java.util.Set;
 public class CSVImporter {
 
     // === 1. IMPORT PRODUCT DETAILS CSV ===
-    public static void importProductsCSV(String filePath) {
+    // Returns false when the file could not be read or the database failed; skipped rows don't count.
+    public static boolean importProductsCSV(String filePath) {
+        boolean imported = false;
         int addedCount = 0;
         int updatedCount = 0;
         try (Connection conn = DatabaseHelper.connect();
@@ -54,9 +65,12 @@ public class CSVImporter {
             }
 
             System.out.println(addedCount + " products added, " + updatedCount + " products updated.");
+            imported = true;
         } catch (IOException | SQLException e) {
             System.err.println("Error importing Products CSV: " + e.getMessage());
         }
+        DashboardContext.invalidate();
+        return imported;
     }
     private static boolean productExists(Connection conn, int itemNumber) throws SQLException {
         String query = "SELECT COUNT(*) FROM Product WHERE item_number = ?";
@@ -74,15 +88,16 @@ public class CSVImporter {
         String updateSQL = """
         UPDATE Product
         SET category = ?,
-            label = ?, subcategory = ?, price = ?, rec_status = ?
+            label = ?, subcategory = ?, price = ?, rec_status = ?, category_id = ?
         WHERE item_number = ?
         """;
         try (PreparedStatement pstmt = conn.prepareStatement(updateSQL)) {
             pstmt.setString(1, category);
-            pstmt.setString(3, label);
-            pstmt.setString(4, subcategory);
-            pstmt.setDouble(5, price);
-            pstmt.setString(6, recStatus);
+            pstmt.setString(2, label);
+            pstmt.setString(3, subcategory);
+            pstmt.setDouble(4, price);
+            pstmt.setString(5, recStatus);
+            pstmt.setObject(6, CategoryService.getOrCreateCategoryId(conn, category, subcategory));
             pstmt.setInt(7, itemNumber);
             pstmt.executeUpdate();
         }
@@ -90,10 +105,9 @@ public class CSVImporter {
 
     private static void insertProduct(Connection conn, String category, String subcategory,
                                       int itemNumber, String label, double price, String recStatus) throws SQLException {
-//        String categoryId = getCategoryId(conn, category, subcategory);
         String insertSQL = """
-        INSERT INTO Product (category, item_number, label, subcategory, price, rec_status)
-        VALUES (?, ?, ?, ?, ?, ?)
+        INSERT INTO Product (category, item_number, label, subcategory, price, rec_status, category_id)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
         """;
         try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
             pstmt.setString(1, category);
@@ -102,84 +116,123 @@ public class CSVImporter {
             pstmt.setString(4, subcategory);
             pstmt.setDouble(5, price);
             pstmt.setString(6, recStatus);
+            pstmt.setObject(7, CategoryService.getOrCreateCategoryId(conn, category, subcategory));
             pstmt.executeUpdate();
         }
     }
 
-
-    private static String getCategoryId(Connection conn, String category, String subcategory) throws SQLException {
-        String query = "SELECT id FROM Category WHERE category = ? AND subcategory = ?";
-        try (PreparedStatement pstmt = conn.prepareStatement(query)) {
-            pstmt.setString(1, category);
-            pstmt.setString(2, subcategory);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getString("id");
-            }
-        }
-        // If category doesn't exist, insert it.
-        String insertSQL = "INSERT INTO Category (category, subcategory) VALUES (?, ?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSQL, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, category);
-            pstmt.setString(2, subcategory);
-            pstmt.executeUpdate();
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                return rs.getString(1);
-            }
-        }
-        return "NA";
-    }
-
     // === 2. IMPORT SALES CSV ===
     // Assume new format: Item Number, Quantity, Price, From Date, To Date, Store
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("M/d/yyyy");
 
-    public static void importSalesCSV(String filePath) {
+    // The whole file is imported in one transaction: every sale is written together with its
+    // per-day rows in SalesDaily, so the fact table never disagrees with Sales. A row that fails is
+    // rolled back on its own and skipped; any other error rolls back the whole import. The velocity
+    // rings of the imported items are brought up to date in the same transaction, and every sale is
+    // checked for outliers as it is written (see AnomalyDetector). The day sketches of approximate
+    // analytics are updated alongside, and the demand forecasts of the imported items are rolled
+    // forward, or refitted once the import has committed. Returns false when the import was rolled
+    // back.
+    public static boolean importSalesCSV(String filePath) {
+        boolean imported = false;
         int addedCount = 0;
+        int maxSpan = 0;
+        VelocityTracker.Batch velocity = new VelocityTracker.Batch();
+        AnomalyDetector.Batch anomalies = new AnomalyDetector.Batch();
+        SalesSketches.Batch sketches = new SalesSketches.Batch();
+        DemandForecast.Batch forecasts = new DemandForecast.Batch();
+        Set<Integer> refit = new HashSet<>();
         try (Connection conn = DatabaseHelper.connect();
              BufferedReader br = Files.newBufferedReader(Paths.get(filePath))) {
-            String line;
-            boolean firstLine = true;
-            while ((line = br.readLine()) != null) {
-                if (firstLine) {
-                    firstLine = false;
-                    continue;
-                }
-                String[] values = line.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
-                if (values.length < 6) {
-                    System.err.println("Skipping invalid row: " + line);
-                    continue;
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertSale = conn.prepareStatement(INSERT_SALE, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertDaily = conn.prepareStatement(String.format(DailyFacts.INSERT, "SalesDaily"))) {
+                String line;
+                boolean firstLine = true;
+                while ((line = br.readLine()) != null) {
+                    if (firstLine) {
+                        firstLine = false;
+                        continue;
+                    }
+                    String[] values = line.split(",(?=([^\"]*\"[^\"]*\")*[^\"]*$)");
+                    if (values.length < 6) {
+                        System.err.println("Skipping invalid row: " + line);
+                        continue;
+                    }
+                    Savepoint row = null;
+                    try {
+                        int itemNumber = Integer.parseInt(values[0].trim());
+                        int quantity = Integer.parseInt(values[1].trim());
+                        double price = Double.parseDouble(values[2].replace("$", "").trim());
+                        LocalDate fromDate = LocalDate.parse(values[3].trim(), DATE_FORMATTER);
+                        LocalDate toDate = LocalDate.parse(values[4].trim(), DATE_FORMATTER);
+                        String store = values[5].trim();
+                        row = conn.setSavepoint();
+                        Integer storeId = StoreService.getOrCreateStoreId(conn, store);
+                        long saleId = insertSale(insertSale, itemNumber, quantity, price, fromDate, toDate, store, storeId);
+                        int fromDay = (int) fromDate.toEpochDay();
+                        long[] daily = DailyFacts.addSale(insertDaily, saleId, itemNumber, storeId,
+                                fromDay, (int) toDate.toEpochDay(), quantity, price);
+                        insertDaily.executeBatch();
+                        anomalies.add(conn, saleId, itemNumber, storeId, fromDay, quantity, price, daily);
+                        conn.releaseSavepoint(row);
+                        velocity.add(itemNumber, storeId, fromDay, daily);
+                        sketches.add(itemNumber, storeId, fromDay, daily, DailyFacts.splitCents(daily, quantity, price));
+                        forecasts.add(itemNumber, fromDay, daily);
+                        maxSpan = Math.max(maxSpan, (int) (toDate.toEpochDay() - fromDate.toEpochDay()));
+                        addedCount++;
+                    } catch (Exception e) {
+                        if (row != null) {
+                            insertDaily.clearBatch();
+                            conn.rollback(row);
+                            StoreService.clearCache();
+                        }
+                        System.err.println("Skipping row due to error: " + line + " | Error: " + e.getMessage());
+                    }
                 }
-                try {
-                    int itemNumber = Integer.parseInt(values[0].trim());
-                    int quantity = Integer.parseInt(values[1].trim());
-                    double price = Double.parseDouble(values[2].replace("$", "").trim());
-                    LocalDate fromDate = LocalDate.parse(values[3].trim(), DATE_FORMATTER);
-                    LocalDate toDate = LocalDate.parse(values[4].trim(), DATE_FORMATTER);
-                    String store = values[5].trim();
-                    insertSale(conn, itemNumber, quantity, price, fromDate, toDate, store);
-                    addedCount++;
-                } catch (Exception e) {
-                    System.err.println("Skipping row due to error: " + line + " | Error: " + e.getMessage());
+                SalesWindow.recordSpan(conn, maxSpan);
+                velocity.apply(conn);
+                int flagged = anomalies.apply(conn);
+                sketches.apply(conn);
+                refit.addAll(forecasts.apply(conn));
+                conn.commit();
+                imported = true;
+                System.out.println(addedCount + " sales records added.");
+                if (flagged > 0) {
+                    System.out.println(flagged + " sales anomalies flagged for review.");
                 }
+            } catch (IOException | SQLException e) {
+                conn.rollback();
+                StoreService.clearCache();
+                throw e;
             }
-            System.out.println(addedCount + " sales records added.");
         } catch (IOException | SQLException e) {
             System.err.println("Error importing Sales CSV: " + e.getMessage());
         }
+        DemandForecast.refit(refit);
+        DashboardContext.invalidate();
+        return imported;
     }
 
-    private static void insertSale(Connection conn, int itemNumber, int quantity, double price, LocalDate fromDate, LocalDate toDate, String store) throws SQLException {
-        String insertSQL = "INSERT INTO Sales (item_number, quantity, price, from_date, to_date, store) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
-            pstmt.setInt(1, itemNumber);
-            pstmt.setInt(2, quantity);
-            pstmt.setDouble(3, price);
-            pstmt.setDate(4, java.sql.Date.valueOf(fromDate));
-            pstmt.setDate(5, java.sql.Date.valueOf(toDate));
-            pstmt.setString(6, store);
-            pstmt.executeUpdate();
+    private static final String INSERT_SALE = "INSERT INTO Sales (item_number, quantity, price, from_date, to_date, store, store_id, from_day, to_day) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Inserts one sale and returns its id.
+    private static long insertSale(PreparedStatement pstmt, int itemNumber, int quantity, double price,
+                                   LocalDate fromDate, LocalDate toDate, String store, Integer storeId) throws SQLException {
+        pstmt.setInt(1, itemNumber);
+        pstmt.setInt(2, quantity);
+        pstmt.setDouble(3, price);
+        pstmt.setDate(4, java.sql.Date.valueOf(fromDate));
+        pstmt.setDate(5, java.sql.Date.valueOf(toDate));
+        pstmt.setString(6, store);
+        pstmt.setObject(7, storeId);
+        pstmt.setLong(8, fromDate.toEpochDay());
+        pstmt.setLong(9, toDate.toEpochDay());
+        pstmt.executeUpdate();
+        try (ResultSet rs = pstmt.getGeneratedKeys()) {
+            rs.next();
+            return rs.getLong(1);
         }
     }
 
@@ -0,0 +1,116 @@
+package utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+// Buffered UTF-8 CSV writer that quotes every cell, matching the format of the existing exports.
+// Numbers are written digit by digit into a scratch buffer, so no String is built per cell.
+public class CSVWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final char[] digits = new char[20];
+    private boolean firstCell = true;
+
+    public CSVWriter(Writer out) {
+        this.out = out;
+    }
+
+    // Files ending in ".gz" are gzip-compressed on the fly.
+    public static CSVWriter open(File file) throws IOException {
+        OutputStream stream = new FileOutputStream(file, false);
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write('\uFEFF'); // UTF-8 BOM for Excel compatibility
+        return new CSVWriter(writer);
+    }
+
+    public CSVWriter text(String value) throws IOException {
+        startCell();
+        writeEscaped(value);
+        out.write('"');
+        return this;
+    }
+
+    // Writes "first - second" as one cell without concatenating the strings first.
+    public CSVWriter text(String first, String second) throws IOException {
+        startCell();
+        writeEscaped(first);
+        out.write(" - ");
+        writeEscaped(second);
+        out.write('"');
+        return this;
+    }
+
+    public CSVWriter number(long value) throws IOException {
+        startCell();
+        writeLong(value);
+        out.write('"');
+        return this;
+    }
+
+    // Fixed two decimals, rounded half up like "%.2f".
+    public CSVWriter money(double value) throws IOException {
+        startCell();
+        long cents = Math.round(Math.abs(value) * 100.0);
+        if (value < 0 && cents != 0) out.write('-');
+        writeLong(cents / 100);
+        out.write('.');
+        long fraction = cents % 100;
+        out.write((char) ('0' + fraction / 10));
+        out.write((char) ('0' + fraction % 10));
+        out.write('"');
+        return this;
+    }
+
+    public CSVWriter empty() throws IOException {
+        startCell();
+        out.write('"');
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        out.write('\n');
+        firstCell = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void startCell() throws IOException {
+        if (!firstCell) out.write(',');
+        firstCell = false;
+        out.write('"');
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        if (value == null) return;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+}
@@ -0,0 +1,88 @@
+package utils;
+
+import models.CalendarLevel;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Keeps line charts bounded: daily series are regrouped into days, ISO weeks or months depending on
+// the length of the range, and each series is then thinned with Largest-Triangle-Three-Buckets to
+// a point budget, which keeps the peaks and dips that a plain stride would drop.
+public class ChartSampler {
+    private static final int MAX_DAYS = 92;
+    private static final int MAX_WEEKS = 104;
+
+    // Day for up to a quarter, ISO week for up to two years, month beyond that.
+    public static CalendarLevel granularityFor(LocalDate fromDate, LocalDate toDate) {
+        long days = toDate.toEpochDay() - fromDate.toEpochDay() + 1;
+        if (days <= MAX_DAYS) return CalendarLevel.DAY;
+        if (days <= MAX_WEEKS * 7L) return CalendarLevel.ISO_WEEK;
+        return CalendarLevel.MONTH;
+    }
+
+    // Key of date at level, formatted like the matching Calendar column so keys sort in date order.
+    public static String bucketOf(LocalDate date, CalendarLevel level) {
+        return switch (level) {
+            case ISO_WEEK -> String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH -> date.toString().substring(0, 7);
+            default -> date.toString();
+        };
+    }
+
+    // Sums a series keyed by ISO date into the buckets of level, in key order.
+    public static TreeMap<String, Integer> regroup(Map<String, Integer> daily, CalendarLevel level) {
+        TreeMap<String, Integer> grouped = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : daily.entrySet()) {
+            String key = level == CalendarLevel.DAY ? entry.getKey() : bucketOf(LocalDate.parse(entry.getKey()), level);
+            grouped.merge(key, entry.getValue(), Integer::sum);
+        }
+        return grouped;
+    }
+
+    // Indices of the points Largest-Triangle-Three-Buckets keeps out of (x[i], y[i]), x ascending:
+    // the first and last point, plus one point per bucket forming the largest triangle with the
+    // point kept before it and the average of the next bucket.
+    public static int[] lttb(double[] x, double[] y, int threshold) {
+        int n = x.length;
+        if (threshold >= n || threshold < 3) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+        int[] kept = new int[threshold];
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        kept[0] = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+
+            int start = (int) Math.floor(i * every) + 1;
+            int end = (int) Math.floor((i + 1) * every) + 1;
+            double maxArea = -1;
+            int best = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    best = j;
+                }
+            }
+            kept[i + 1] = best;
+            a = best;
+        }
+        kept[threshold - 1] = n - 1;
+        return kept;
+    }
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+// Read side of the snapshot format described in ColumnarSnapshotWriter. The file is memory mapped
+// and values are read in place; only string dictionaries and date run boundaries are decoded on open.
+public class ColumnarSnapshot {
+    private final MappedByteBuffer buffer;
+    private final int rowCount;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final byte[] types;
+    private final int[] offsets;
+    private final String[][] dictionaries;
+    private final int[] codeOffsets;
+    private final int[][] runStarts;
+    private final int[][] runDays;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    private ColumnarSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        int size = buffer.limit();
+        int magicLength = ColumnarSnapshotWriter.MAGIC.length;
+        if (size < magicLength * 2 + 8 || !hasMagic(0) || !hasMagic(size - magicLength)) {
+            throw new IOException("Not a snapshot file");
+        }
+
+        ByteBuffer footer = buffer.duplicate();
+        footer.position((int) buffer.getLong(size - magicLength - 8));
+        rowCount = footer.getInt();
+        int columnCount = footer.getInt();
+        types = new byte[columnCount];
+        offsets = new int[columnCount];
+        dictionaries = new String[columnCount][];
+        codeOffsets = new int[columnCount];
+        runStarts = new int[columnCount][];
+        runDays = new int[columnCount][];
+
+        for (int col = 0; col < columnCount; col++) {
+            columnIndex.put(readString(footer), col);
+            types[col] = footer.get();
+            offsets[col] = (int) footer.getLong();
+            footer.getLong(); // block length, only needed by tools that skip columns
+            if (types[col] == ColumnarSnapshotWriter.TYPE_STRING) {
+                readDictionary(col);
+            } else if (types[col] == ColumnarSnapshotWriter.TYPE_DATE) {
+                readRuns(col);
+            }
+        }
+        int propertyCount = footer.getInt();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(readString(footer), readString(footer));
+        }
+    }
+
+    public static ColumnarSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB: " + file);
+            }
+            return new ColumnarSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getRowCount() { return rowCount; }
+    public String getProperty(String key) { return properties.get(key); }
+    public boolean hasColumn(String name) { return columnIndex.containsKey(name); }
+
+    public int column(String name) {
+        Integer col = columnIndex.get(name);
+        if (col == null) throw new IllegalArgumentException("No column " + name);
+        return col;
+    }
+
+    public int getInt(int col, int row) {
+        return buffer.getInt(offsets[col] + row * 4);
+    }
+
+    public double getDouble(int col, int row) {
+        return buffer.getDouble(offsets[col] + row * 8);
+    }
+
+    public String getString(int col, int row) {
+        return dictionaries[col][buffer.getInt(codeOffsets[col] + row * 4)];
+    }
+
+    public int getEpochDay(int col, int row) {
+        int run = Arrays.binarySearch(runStarts[col], row);
+        if (run < 0) run = -run - 2;
+        return runDays[col][run];
+    }
+
+    public LocalDate getDate(int col, int row) {
+        return LocalDate.ofEpochDay(getEpochDay(col, row));
+    }
+
+    // Row range [start, end) whose dates fall inside [fromDate, toDate]. Only valid for a date
+    // column written in ascending order, which is how sales ranges are saved.
+    public int[] slice(int col, LocalDate fromDate, LocalDate toDate) {
+        int[] starts = runStarts[col];
+        int[] days = runDays[col];
+        int fromDay = (int) fromDate.toEpochDay();
+        int toDay = (int) toDate.toEpochDay();
+        int first = 0;
+        while (first < days.length && days[first] < fromDay) first++;
+        int last = first;
+        while (last < days.length && days[last] <= toDay) last++;
+        int start = first < starts.length ? starts[first] : rowCount;
+        int end = last < starts.length ? starts[last] : rowCount;
+        return new int[]{start, end};
+    }
+
+    private void readDictionary(int col) {
+        int position = offsets[col];
+        int size = buffer.getInt(position);
+        position += 4;
+        String[] dictionary = new String[size];
+        for (int i = 0; i < size; i++) {
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            buffer.get(position + 4, bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+        dictionaries[col] = dictionary;
+        codeOffsets[col] = position;
+    }
+
+    private void readRuns(int col) {
+        int position = offsets[col];
+        int runs = buffer.getInt(position);
+        int[] starts = new int[runs];
+        int[] days = new int[runs];
+        int row = 0;
+        for (int run = 0; run < runs; run++) {
+            days[run] = buffer.getInt(position + 4 + run * 8);
+            starts[run] = row;
+            row += buffer.getInt(position + 8 + run * 8);
+        }
+        runStarts[col] = starts;
+        runDays[col] = days;
+    }
+
+    private boolean hasMagic(int position) {
+        byte[] magic = ColumnarSnapshotWriter.MAGIC;
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(position + i) != magic[i]) return false;
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer footer) {
+        int length = footer.getInt();
+        byte[] bytes = new byte[length];
+        footer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
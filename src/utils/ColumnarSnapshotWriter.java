@@ -0,0 +1,144 @@
+package utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Writes the columnar snapshot format read by ColumnarSnapshot.
+//
+// Layout: MAGIC, then one block per column, then a footer with the column index
+// (name, type, offset, length), the row count and free-form properties. The file ends with
+// the footer offset and MAGIC again, so a reader can jump straight to the index.
+//   INT     row count x 4-byte values
+//   DOUBLE  row count x 8-byte values
+//   STRING  dictionary size, dictionary entries (length + UTF-8), row count x 4-byte codes
+//   DATE    run count, then (epoch day, run length) pairs
+public class ColumnarSnapshotWriter {
+    static final byte[] MAGIC = "SCSNAP01".getBytes(StandardCharsets.US_ASCII);
+    static final byte TYPE_INT = 1;
+    static final byte TYPE_DOUBLE = 2;
+    static final byte TYPE_STRING = 3;
+    static final byte TYPE_DATE = 4;
+
+    private final int rowCount;
+    private final List<String> names = new ArrayList<>();
+    private final List<Byte> types = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final Map<String, String> properties = new LinkedHashMap<>();
+
+    public ColumnarSnapshotWriter(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public ColumnarSnapshotWriter intColumn(String name, int[] column) {
+        return addColumn(name, TYPE_INT, column, column.length);
+    }
+
+    public ColumnarSnapshotWriter doubleColumn(String name, double[] column) {
+        return addColumn(name, TYPE_DOUBLE, column, column.length);
+    }
+
+    public ColumnarSnapshotWriter stringColumn(String name, String[] column) {
+        return addColumn(name, TYPE_STRING, column, column.length);
+    }
+
+    // Epoch days; long runs of equal dates (rows sorted by date) compress to a single pair.
+    public ColumnarSnapshotWriter dateColumn(String name, int[] epochDays) {
+        return addColumn(name, TYPE_DATE, epochDays, epochDays.length);
+    }
+
+    public ColumnarSnapshotWriter property(String key, String value) {
+        properties.put(key, value);
+        return this;
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, false), 1 << 16))) {
+            out.write(MAGIC);
+
+            long[] offsets = new long[names.size()];
+            long[] lengths = new long[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                offsets[i] = out.size();
+                switch (types.get(i)) {
+                    case TYPE_INT -> writeInts(out, (int[]) values.get(i));
+                    case TYPE_DOUBLE -> writeDoubles(out, (double[]) values.get(i));
+                    case TYPE_STRING -> writeStrings(out, (String[]) values.get(i));
+                    case TYPE_DATE -> writeDates(out, (int[]) values.get(i));
+                }
+                lengths[i] = out.size() - offsets[i];
+            }
+
+            long footerOffset = out.size();
+            out.writeInt(rowCount);
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                writeString(out, names.get(i));
+                out.writeByte(types.get(i));
+                out.writeLong(offsets[i]);
+                out.writeLong(lengths[i]);
+            }
+            out.writeInt(properties.size());
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.writeLong(footerOffset);
+            out.write(MAGIC);
+        }
+    }
+
+    private ColumnarSnapshotWriter addColumn(String name, byte type, Object column, int length) {
+        if (length != rowCount) {
+            throw new IllegalArgumentException("Column " + name + " has " + length + " rows, expected " + rowCount);
+        }
+        names.add(name);
+        types.add(type);
+        values.add(column);
+        return this;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] column) throws IOException {
+        for (int value : column) out.writeInt(value);
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] column) throws IOException {
+        for (double value : column) out.writeDouble(value);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] column) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] codes = new int[column.length];
+        for (int row = 0; row < column.length; row++) {
+            String value = column[row] == null ? "" : column[row];
+            codes[row] = dictionary.computeIfAbsent(value, k -> dictionary.size());
+        }
+        out.writeInt(dictionary.size());
+        for (String entry : dictionary.keySet()) {
+            writeString(out, entry);
+        }
+        writeInts(out, codes);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeDates(DataOutputStream out, int[] column) throws IOException {
+        int runs = 0;
+        for (int row = 0; row < column.length; row++) {
+            if (row == 0 || column[row] != column[row - 1]) runs++;
+        }
+        out.writeInt(runs);
+        int row = 0;
+        while (row < column.length) {
+            int start = row;
+            while (row < column.length && column[row] == column[start]) row++;
+            out.writeInt(column[start]);
+            out.writeInt(row - start);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package utils;
+
+import java.nio.ByteBuffer;
+
+// Count-min sketch of item frequencies (DEPTH rows of WIDTH counters). Sketches merge by adding
+// counters. An estimate never undercounts, and overcounts by at most e / WIDTH of the total with
+// probability 1 - e^-DEPTH.
+public class CountMinSketch {
+    public static final int WIDTH = 512;
+    public static final int DEPTH = 4;
+
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch() {
+        this.counters = new long[WIDTH * DEPTH];
+    }
+
+    public void add(long key, long count) {
+        for (int row = 0; row < DEPTH; row++) {
+            counters[row * WIDTH + index(key, row)] += count;
+        }
+        total += count;
+    }
+
+    public void merge(CountMinSketch other) {
+        for (int i = 0; i < counters.length; i++) counters[i] += other.counters[i];
+        total += other.total;
+    }
+
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[row * WIDTH + index(key, row)]);
+        }
+        return estimate;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    // Largest overcount to expect on any estimate.
+    public long errorBound() {
+        return (long) Math.ceil(Math.E / WIDTH * total);
+    }
+
+    public static double confidence() {
+        return 1 - Math.exp(-DEPTH);
+    }
+
+    // Counters are stored as ints; one day of one store never comes near the limit.
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + counters.length * Integer.BYTES);
+        buffer.putLong(total);
+        for (long counter : counters) buffer.putInt((int) counter);
+        return buffer.array();
+    }
+
+    public static CountMinSketch fromBytes(byte[] bytes) {
+        CountMinSketch sketch = new CountMinSketch();
+        if (bytes == null || bytes.length != Long.BYTES + sketch.counters.length * Integer.BYTES) return sketch;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        sketch.total = buffer.getLong();
+        for (int i = 0; i < sketch.counters.length; i++) sketch.counters[i] = buffer.getInt();
+        return sketch;
+    }
+
+    private static int index(long key, int row) {
+        return (int) Math.floorMod(HyperLogLog.mix(key * DEPTH + row), (long) WIDTH);
+    }
+}
@@ -0,0 +1,97 @@
+package utils;
+
+import java.util.Arrays;
+
+// HyperLogLog distinct counter with 2^PRECISION one-byte registers. Two sketches merge by taking
+// the larger register, so per-day sketches add up to the sketch of any range. The relative
+// standard error of the estimate is 1.04 / sqrt(2^PRECISION).
+public class HyperLogLog {
+    public static final int PRECISION = 11;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this.registers = new byte[REGISTERS];
+    }
+
+    private HyperLogLog(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+
+    // Ertl's improved estimator ("New cardinality estimation algorithms for HyperLogLog sketches",
+    // 2017), which stays unbiased across the whole range without empirical bias tables.
+    public long estimate() {
+        int q = 64 - PRECISION;
+        int[] counts = new int[q + 2];
+        for (byte register : registers) counts[register]++;
+        double z = REGISTERS * tau(1 - (double) counts[q + 1] / REGISTERS);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + counts[k]);
+        }
+        z += REGISTERS * sigma((double) counts[0] / REGISTERS);
+        return Math.round(REGISTERS * REGISTERS / (2 * Math.log(2)) / z);
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) return Double.POSITIVE_INFINITY;
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) return 0;
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    public static double relativeError() {
+        return 1.04 / Math.sqrt(REGISTERS);
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length != REGISTERS) return new HyperLogLog();
+        return new HyperLogLog(Arrays.copyOf(bytes, REGISTERS));
+    }
+
+    // SplitMix64 finalizer; spreads small consecutive keys such as item numbers over all bits.
+    static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
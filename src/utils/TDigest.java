@@ -0,0 +1,141 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Merging t-digest for quantiles of a weighted stream. Values are buffered and compressed into at
+// most about COMPRESSION centroids, kept small near the tails so extreme quantiles stay accurate.
+// Digests merge by compressing their centroids together.
+public class TDigest {
+    public static final int COMPRESSION = 100;
+    private static final int BUFFER = 5 * COMPRESSION;
+
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    private final double[] bufferMeans = new double[BUFFER];
+    private final double[] bufferWeights = new double[BUFFER];
+    private int buffered;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value, double weight) {
+        if (weight <= 0 || Double.isNaN(value)) return;
+        if (buffered == BUFFER) compress();
+        bufferMeans[buffered] = value;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.means.length; i++) add(other.means[i], other.weights[i]);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public double getWeight() {
+        compress();
+        double total = 0;
+        for (double weight : weights) total += weight;
+        return total;
+    }
+
+    // Value at quantile q (0..1), interpolated between centroid centers; NaN when empty.
+    public double quantile(double q) {
+        compress();
+        int n = means.length;
+        if (n == 0) return Double.NaN;
+        if (n == 1) return means[0];
+        double total = getWeight();
+        double target = Math.max(0, Math.min(1, q)) * total;
+
+        double cumulative = 0;
+        double previousCenter = 0;
+        double previousMean = min;
+        for (int i = 0; i < n; i++) {
+            double center = cumulative + weights[i] / 2;
+            if (target < center) {
+                double span = center - previousCenter;
+                double t = span == 0 ? 0 : (target - previousCenter) / span;
+                return previousMean + t * (means[i] - previousMean);
+            }
+            cumulative += weights[i];
+            previousCenter = center;
+            previousMean = means[i];
+        }
+        double span = total - previousCenter;
+        double t = span == 0 ? 1 : (target - previousCenter) / span;
+        return previousMean + t * (max - previousMean);
+    }
+
+    // Sorts the buffer into the centroids and merges neighbours while the merged centroid stays
+    // within one unit of the k1 scale function k(q) = COMPRESSION / (2 pi) * asin(2q - 1).
+    private void compress() {
+        if (buffered == 0) return;
+        int n = means.length + buffered;
+        double[] allMeans = Arrays.copyOf(means, n);
+        double[] allWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferMeans, 0, allMeans, means.length, buffered);
+        System.arraycopy(bufferWeights, 0, allWeights, weights.length, buffered);
+        buffered = 0;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(allMeans[a], allMeans[b]));
+        double total = 0;
+        for (double weight : allWeights) total += weight;
+
+        double[] newMeans = new double[n];
+        double[] newWeights = new double[n];
+        int count = 0;
+        double before = 0;
+        double kLeft = k(0);
+        for (int i : order) {
+            if (count > 0 && k((before + newWeights[count - 1] + allWeights[i]) / total) - kLeft <= 1) {
+                double weight = newWeights[count - 1] + allWeights[i];
+                newMeans[count - 1] += (allMeans[i] - newMeans[count - 1]) * allWeights[i] / weight;
+                newWeights[count - 1] = weight;
+            } else {
+                if (count > 0) {
+                    before += newWeights[count - 1];
+                    kLeft = k(before / total);
+                }
+                newMeans[count] = allMeans[i];
+                newWeights[count] = allWeights[i];
+                count++;
+            }
+        }
+        means = Arrays.copyOf(newMeans, count);
+        weights = Arrays.copyOf(newWeights, count);
+    }
+
+    private static double k(double q) {
+        return COMPRESSION / (2 * Math.PI) * Math.asin(2 * Math.max(0, Math.min(1, q)) - 1);
+    }
+
+    public byte[] toBytes() {
+        compress();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 2 * Double.BYTES + means.length * 2 * Double.BYTES);
+        buffer.putInt(means.length).putDouble(min).putDouble(max);
+        for (int i = 0; i < means.length; i++) buffer.putDouble(means[i]).putDouble(weights[i]);
+        return buffer.array();
+    }
+
+    public static TDigest fromBytes(byte[] bytes) {
+        TDigest digest = new TDigest();
+        if (bytes == null || bytes.length < Integer.BYTES + 2 * Double.BYTES) return digest;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int n = buffer.getInt();
+        digest.min = buffer.getDouble();
+        digest.max = buffer.getDouble();
+        digest.means = new double[n];
+        digest.weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            digest.means[i] = buffer.getDouble();
+            digest.weights[i] = buffer.getDouble();
+        }
+        return digest;
+    }
+}